@@ -0,0 +1,71 @@
+package com.serial;
+
+import com.map.Dot;
+import com.serial.Messages.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checksumming packet bodies and of building outgoing messages,
+ * which computes both the packet checksum and the confirmation sum
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+    @Param({"6", "12", "64", "255"})
+    public int length;
+
+    private byte[] content;
+    private PacketView view;
+    private IncrementalChecksum.Accumulator running;
+    private Dot dot;
+
+    @Setup
+    public void setup() {
+        content = new byte[length];
+        new Random(length).nextBytes(content);
+        view = PacketView.wrap(content);
+        running = new Fletcher16().newAccumulator();
+        dot = new Dot(44.98, -93.26, (short) 0);
+    }
+
+    @Benchmark
+    public byte[] fletcher16bytes() {
+        return Serial.fletcher16bytes(content);
+    }
+
+    @Benchmark
+    public int fletcher16View() {
+        return Fletcher16.calc(view);
+    }
+
+    @Benchmark
+    public IncrementalChecksum.Accumulator fletcher16Running() {
+        running.reset();
+        for (byte b : content) {
+            running.update(b);
+        }
+        return running;
+    }
+
+    @Benchmark
+    public Message rawMessage() {
+        return new Message(content);
+    }
+
+    @Benchmark
+    public Message telemetryMessage() {
+        return Message.telemetry((byte) 3, 12.5f);
+    }
+
+    @Benchmark
+    public Message waypointMessage() {
+        return Message.addWaypoint((byte) 1, dot);
+    }
+}
@@ -0,0 +1,65 @@
+package com.serial;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of framing and checksumming an in-memory serial stream. Each
+ * operation decodes one kilobyte of input, so ops/ms reads as MB/s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+    private static final int KILOBYTE = 1024;
+
+    @Param({"telemetry", "mixed", "noisy"})
+    public String traffic;
+
+    private LoopingInputStream input;
+    private Decoder decoder;
+    private Blackhole sink;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        Frames frames = new Frames();
+        switch (traffic) {
+            case "telemetry":
+                for (int i = 0; i < 64; i++) {
+                    frames.frame(Frames.telemetryContent(i % 22, i));
+                }
+                break;
+            case "mixed":
+                frames.session(256, 0);
+                break;
+            default:
+                frames.session(256, 8);
+                break;
+        }
+        input = new LoopingInputStream(frames.toByteArray());
+        sink = blackhole;
+
+        decoder = new Decoder(input, Serial.HEADER, Serial.FOOTER, new Fletcher16());
+        decoder.addPacketReader(new PacketViewReader() {
+            public int claim(byte data) {
+                return 255;
+            }
+
+            public void handle(PacketView packet) {
+                sink.consume(packet.get(0));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KILOBYTE)
+    public void decodeKilobyte() {
+        input.release(KILOBYTE);
+        decoder.update();
+    }
+}
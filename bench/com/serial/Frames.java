@@ -0,0 +1,97 @@
+package com.serial;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Builds framed serial streams for the benchmarks
+ */
+class Frames {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Random rand = new Random(0x1337);
+
+    static byte[] telemetryContent(int index, float value) {
+        return floatContent(Serial.TELEMETRY_DATA, index, value);
+    }
+
+    static byte[] settingContent(int index, float value) {
+        return floatContent(Serial.SETTING_DATA, index, value);
+    }
+
+    static byte[] wordContent(int subtype, int a, int b) {
+        return new byte[]{Serial.buildMessageLabel(Serial.WORD_TYPE, subtype), (byte) a, (byte) b};
+    }
+
+    static byte[] stringContent(String str) {
+        byte[] content = (" " + str).getBytes(StandardCharsets.US_ASCII);
+        content[0] = Serial.buildMessageLabel(Serial.STRING_TYPE, Serial.STATE_STRING);
+        return content;
+    }
+
+    private static byte[] floatContent(int subtype, int index, float value) {
+        int bits = Float.floatToIntBits(value);
+        return new byte[]{
+                Serial.buildMessageLabel(Serial.DATA_TYPE, subtype),
+                (byte) index,
+                (byte) (bits >> 24),
+                (byte) (bits >> 16),
+                (byte) (bits >> 8),
+                (byte) bits};
+    }
+
+    Frames frame(byte[] content) {
+        out.write(Serial.HEADER, 0, Serial.HEADER.length);
+        out.write(content, 0, content.length);
+        byte[] sum = Serial.fletcher16bytes(content);
+        out.write(sum, 0, sum.length);
+        out.write(Serial.FOOTER, 0, Serial.FOOTER.length);
+        return this;
+    }
+
+    /**
+     * Append random bytes salted with footer and header bytes, as seen on a
+     * noisy radio link
+     */
+    Frames noise(int length) {
+        for (int i = 0; i < length; i++) {
+            int r = rand.nextInt(16);
+            if (r == 0) {
+                out.write(Serial.FOOTER[0]);
+            }
+            else if (r == 1) {
+                out.write(Serial.HEADER, 0, Serial.HEADER.length);
+            }
+            else {
+                out.write(rand.nextInt(256));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append one second's worth of a typical rover session: a sweep of
+     * telemetry channels, some confirmations and a state string
+     *
+     * @param noise - bytes of line noise inserted after each packet
+     */
+    Frames session(int channels, int noise) {
+        for (int i = 0; i < channels; i++) {
+            frame(telemetryContent(i, rand.nextFloat() * 100f));
+            noise(noise);
+            if (i % 16 == 0) {
+                frame(wordContent(Serial.CONFIRMATION, rand.nextInt(256), rand.nextInt(256)));
+                noise(noise);
+            }
+            if (i % 64 == 0) {
+                frame(stringContent("Rover state report " + i));
+                noise(noise);
+            }
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
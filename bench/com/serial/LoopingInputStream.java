@@ -0,0 +1,53 @@
+package com.serial;
+
+import java.io.InputStream;
+
+/**
+ * Replays a recorded byte stream forever, a fixed budget of bytes at a time.
+ * Once the budget is spent reads return -1, the same way SerialInputStream
+ * reports an empty OS buffer.
+ */
+class LoopingInputStream extends InputStream {
+    private final byte[] data;
+    private int pos;
+    private int budget;
+
+    LoopingInputStream(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Make the next count bytes of the loop available to read
+     */
+    void release(int count) {
+        budget = count;
+    }
+
+    @Override
+    public int available() {
+        return budget;
+    }
+
+    @Override
+    public int read() {
+        if (budget == 0) {
+            return -1;
+        }
+        budget--;
+        int b = data[pos] & 0xff;
+        pos = (pos + 1) % data.length;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (budget == 0) {
+            return -1;
+        }
+        int count = Math.min(Math.min(len, budget), data.length - pos);
+        System.arraycopy(data, pos, b, off, count);
+        budget -= count;
+        pos = (pos + count) % data.length;
+        return count;
+    }
+}
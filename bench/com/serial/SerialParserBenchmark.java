@@ -0,0 +1,57 @@
+package com.serial;
+
+import com.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end receive cost: framing a session's worth of packets and running
+ * SerialParser's handlers on them, including the pipeline handoff. Needs the
+ * resources directory in the working directory to build a Context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SerialParserBenchmark {
+    private static final int KILOBYTE = 1024;
+
+    @Param({"0", "8"})
+    public int noise;
+
+    private LoopingInputStream input;
+    private Decoder decoder;
+    private PacketPipeline pipeline;
+
+    @Setup
+    public void setup() {
+        Context context = new Context(null);
+        SerialParser parser = new SerialParser(context, context.getWaypointList());
+
+        Frames frames = new Frames();
+        for (int i = 0; i < 256; i++) {
+            frames.frame(Frames.telemetryContent(i % 64, i * 0.5f));
+            frames.noise(noise);
+            if (i % 32 == 0) {
+                frames.frame(Frames.settingContent(i % 16, i));
+                frames.frame(Frames.stringContent("Benchmark state " + i));
+                frames.noise(noise);
+            }
+        }
+
+        input = new LoopingInputStream(frames.toByteArray());
+        decoder = parser.createDecoder(input);
+        pipeline = parser.getPipeline();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KILOBYTE)
+    public void receiveKilobyte() {
+        input.release(KILOBYTE);
+        decoder.update();
+        pipeline.drain();
+    }
+}
@@ -5,10 +5,16 @@ import com.map.Dot;
 import com.map.WaypointList;
 import com.remote.SettingList;
 import com.serial.CommsMonitor;
+import com.serial.JsscTransport;
+import com.serial.LinkMetrics;
 import com.serial.Messages.Message;
+import com.serial.PacketPipeline;
 import com.serial.Serial;
 import com.serial.SerialParser;
 import com.serial.SerialSendManager;
+import com.serial.Transport;
+import com.serial.WaypointSync;
+import com.telemetry.TelemetryDispatcher;
 import com.telemetry.TelemetryLogger;
 import com.telemetry.TelemetryManager;
 import com.ui.Theme;
@@ -19,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import java.awt.geom.Point2D;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
@@ -30,6 +37,8 @@ import static com.map.WaypointList.WaypointListener;
 
 public class Context {
     private final SerialSendManager sendManager;
+    private final WaypointSync waypointSync;
+    private final LinkMetrics linkMetrics;
     private final WaypointList waypoint;
     private final Properties persist;
     private final File persistenceFile;
@@ -44,14 +53,15 @@ public class Context {
     public TelemetryManager telemetry;
     public TelemetryLogger telemLog;
     public CommsMonitor commsMonitor;
-    private SerialPort port;
+    private Transport transport;
+    private boolean playback;
     private ResourceBundle resources;
     private String APMVersion = "x.x.x";
     private Function<String, Void> apmVersionCallback;
 
     public Context(Dashboard dashboard) {
         dash = dashboard;
-        port = null;
+        transport = null;
         connected = false;
 
         Calendar cal = Calendar.getInstance();
@@ -90,11 +100,17 @@ public class Context {
         // Instance these classes after the resources have been loaded
         waypoint = new WaypointList();
         theme = new Theme(this);
+        linkMetrics = new LinkMetrics();
         parser = new SerialParser(this, waypoint);
         sendManager = SerialSendManager.init(this);
+        waypointSync = new WaypointSync(sendManager, waypoint);
+        registerLinkGauges();
         settingList = new SettingList(this);
         telemetry = new TelemetryManager(this);
+        telemetry.setDisplayRate(getDisplayRateProp());
         telemLog = new TelemetryLogger(this, telemetry);
+        telemLog.setRecordEvents(getRecordTelemetryEventsProp());
+        linkMetrics.registerGauge("telemetry record drops", telemLog::getDroppedEvents);
 
         loadHomeLocation();
 
@@ -210,6 +226,70 @@ public class Context {
         return Boolean.parseBoolean(persist.getProperty("enableTileCache", "True"));
     }
 
+    public void setCaptureSerialProp(boolean enabled) {
+        persist.setProperty("captureSerial", Boolean.toString(enabled));
+        saveProps();
+    }
+
+    /**
+     * @return - whether raw received serial bytes are captured to a
+     * replayable .scap file alongside the session's logs
+     */
+    public boolean getCaptureSerialProp() {
+        return Boolean.parseBoolean(persist.getProperty("captureSerial", "False"));
+    }
+
+    public void setSendWindowProp(int size) {
+        persist.setProperty("sendWindow", Integer.toString(size));
+        saveProps();
+    }
+
+    /**
+     * @return - how many confirm required messages the sender keeps in
+     * flight; 1 for stop-and-wait
+     */
+    public int getSendWindowProp() {
+        try {
+            return Integer.parseInt(persist.getProperty("sendWindow", "1"));
+        }
+        catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    public void setDisplayRateProp(int hz) {
+        persist.setProperty("displayRate", Integer.toString(hz));
+        saveProps();
+        telemetry.setDisplayRate(hz);
+    }
+
+    /**
+     * @return - how many times a second telemetry widgets are redrawn
+     */
+    public int getDisplayRateProp() {
+        try {
+            return Integer.parseInt(persist.getProperty("displayRate",
+                    Integer.toString(TelemetryDispatcher.DEFAULT_FRAME_RATE)));
+        }
+        catch (NumberFormatException e) {
+            return TelemetryDispatcher.DEFAULT_FRAME_RATE;
+        }
+    }
+
+    public void setRecordTelemetryEventsProp(boolean enabled) {
+        persist.setProperty("recordTelemetryEvents", Boolean.toString(enabled));
+        saveProps();
+        telemLog.setRecordEvents(enabled);
+    }
+
+    /**
+     * @return - whether the telemetry log records every update as it
+     * arrives, rather than a snapshot each log period
+     */
+    public boolean getRecordTelemetryEventsProp() {
+        return Boolean.parseBoolean(persist.getProperty("recordTelemetryEvents", "False"));
+    }
+
     private void saveProps() {
         try (FileOutputStream file = new FileOutputStream(persistenceFile)) {
             persist.store(file, "");
@@ -237,21 +317,62 @@ public class Context {
     }
 
     public void updatePort(SerialPort newPort) {
+        updateTransport(new JsscTransport(newPort));
+    }
+
+    /**
+     * Start talking to a rover over the given link, which may be a serial
+     * port or a simulator
+     */
+    public void updateTransport(Transport newTransport) {
         closePort();
-        port = newPort;
+        transport = newTransport;
         sendManager.start();
         parser.updatePort();
         connected = true;
     }
 
+    /**
+     * Replay a recorded link. Only the parser is attached: nothing is sent,
+     * the recording's requests go unanswered and connected stays false
+     */
+    public void playTransport(Transport recording) {
+        closePort();
+        transport = recording;
+        playback = true;
+        parser.updatePort();
+    }
+
+    /**
+     * Stop talking to the rover and close the link, so a link with a
+     * thread of its own stops delivering data to the parser
+     */
     public void closePort() {
+        waypointSync.cancel();
         sendManager.stop();
-        port = null;
+        if (transport != null) {
+            try {
+                transport.close();
+            }
+            catch (IOException ex) {
+                ioerr.error("Error closing " + transport.getName(), ex);
+            }
+        }
+        parser.closePort();
+        transport = null;
         connected = false;
+        playback = false;
+    }
+
+    public Transport transport() {
+        return transport;
     }
 
-    public SerialPort port() {
-        return port;
+    /**
+     * @return - whether the link is a recording being played back
+     */
+    public boolean isPlayback() {
+        return playback;
     }
 
     public String getInstanceLogName() {
@@ -293,6 +414,34 @@ public class Context {
         return waypoint;
     }
 
+    public WaypointSync getWaypointSync() {
+        return waypointSync;
+    }
+
+    public LinkMetrics getLinkMetrics() {
+        return linkMetrics;
+    }
+
+    //queue figures that tell a slow dashboard from a bad radio link
+    private void registerLinkGauges() {
+        PacketPipeline pipeline = parser.getPipeline();
+        linkMetrics.registerGauge("send queue depth", sendManager::getPendingCount);
+        linkMetrics.registerGauge("smoothed rtt us",
+                () -> sendManager.getSmoothedRttNanos() / 1000);
+        linkMetrics.registerGauge("retransmit timeout us",
+                () -> sendManager.getRetransmitTimeoutNanos() / 1000);
+        linkMetrics.registerGauge("resends before giving up", sendManager::getFailureLimit);
+        linkMetrics.registerGauge("receive queue depth", pipeline::getQueueDepth);
+        linkMetrics.registerGauge("receive drops", pipeline::getDropCount);
+        linkMetrics.registerGauge("receive queue max us",
+                () -> pipeline.getMaxQueueNanos() / 1000);
+        linkMetrics.registerGauge("receive handle max us",
+                () -> pipeline.getMaxHandleNanos() / 1000);
+        linkMetrics.registerGauge("missed heartbeat polls",
+                () -> CommsMonitor.getInstance().getMissedHeartbeats());
+        linkMetrics.start();
+    }
+
     public void sendSetting(int index) {
         settingList.pushSetting(index);
     }
@@ -309,6 +458,17 @@ public class Context {
         telemetry.updateTelemetry(id, value);
     }
 
+    /**
+     * Apply telemetry values that arrived in one batch
+     *
+     * @param ids    - telemetry ids, the first count are used
+     * @param values - value for the id at the same position
+     * @param count  - number of values
+     */
+    public void setTelemetry(int[] ids, float[] values, int count) {
+        telemetry.update(ids, values, count);
+    }
+
     public float getTelemetry(int id) {
         return (float) telemetry.getTelemetry(id);
     }
@@ -155,7 +155,16 @@ public class Dashboard implements Runnable {
 
         SerialEventListener connectActions = new SerialEventListener() {
             public void connectionEstablished(SerialPort port) {
-                context.updatePort(port);
+                connectionEstablished(new JsscTransport(port));
+            }
+
+            public void connectionEstablished(Transport transport) {
+                if (transport instanceof SimulatedRover) {
+                    Point2D home = context.getHomeProp();
+                    ((SimulatedRover) transport).setOrigin(home.getX(), home.getY());
+                }
+
+                context.updateTransport(transport);
                 seriallog.info("Port opened");
                 SerialSendManager.getInstance().sendSync();
                 CommsMonitor.getInstance().startHeartbeatTimer();
@@ -171,6 +180,7 @@ public class Dashboard implements Runnable {
 
         serialPanel = new SerialConnectPanel(connectActions);
         serialPanel.showBaudSelector(true);
+        serialPanel.showSimulator(true);
 
         JPanel messageBox = createAlertBox();
 
@@ -202,15 +212,15 @@ public class Dashboard implements Runnable {
 
     private void registerHorizonListeners(ArtificialHorizon ah, boolean sideBars) {
         final float[] lastPitch = new float[1];
-        context.telemetry.registerListener(Serial.PITCH, pitch -> lastPitch[0] = (float) Math.toRadians(pitch));
-        context.telemetry.registerListener(Serial.ROLL, roll -> ah.setAngles(lastPitch[0], (float) Math.toRadians(-roll)));
+        context.telemetry.registerDisplayListener(Serial.PITCH, pitch -> lastPitch[0] = (float) Math.toRadians(pitch));
+        context.telemetry.registerDisplayListener(Serial.ROLL, roll -> ah.setAngles(lastPitch[0], (float) Math.toRadians(-roll)));
 
         if (sideBars) {
             ah.setEnabled(DataAxis.TOP, true);
-            context.telemetry.registerListener(Serial.HEADING, yaw -> ah.set(DataAxis.TOP, (float) yaw));
+            context.telemetry.registerDisplayListener(Serial.HEADING, yaw -> ah.set(DataAxis.TOP, (float) yaw));
 
             ah.setEnabled(DataAxis.RIGHT, true);
-            context.telemetry.registerListener(Serial.DELTAALTITUDE, alt -> ah.set(DataAxis.RIGHT, (float) alt));
+            context.telemetry.registerDisplayListener(Serial.DELTAALTITUDE, alt -> ah.set(DataAxis.RIGHT, (float) alt));
         }
     }
 
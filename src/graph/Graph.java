@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 public class Graph extends JPanel {
     private final static float ZOOM_FACTOR = 0.05f;
@@ -19,6 +20,7 @@ public class Graph extends JPanel {
     private final static int REPAINT_INTERVAL = 50; //milliseconds
     private final static int NUM_HORZ_RULES = 4; //creates 2^NUM_VERT_RULES horizontal rulers
     private final static int NUM_VERT_RULES = 16; //creates x evenly spaces vertical rulers
+    private final static long DEFAULT_SPAN = TimeUnit.MINUTES.toNanos(1);
     /**
      * Graph lines are initial colored by their index mod the number of default
      * paints with these colors. Asside from the initial high contrast colors,
@@ -51,6 +53,11 @@ public class Graph extends JPanel {
     };
     private ViewSpec viewSpec = new RTViewSpec();
     private boolean antiAlias = true; //anti-aliasing render hint
+    private long spanNanos = DEFAULT_SPAN; //time from x = 0.0 to now at x = 1.0
+    //per pixel column history summaries, reused between renders
+    private float[] columnMin = new float[0];
+    private float[] columnMax = new float[0];
+    private float[] columnMean = new float[0];
 
     public Graph(List<DataSource> inputSources, boolean defaultState) {
         sources = new ArrayList<>();
@@ -157,6 +164,20 @@ public class Graph extends JPanel {
         antiAlias = on;
     }
 
+    /**
+     * @return - time shown for sources with a history, in nanoseconds
+     */
+    public long getSpan() {
+        return spanNanos;
+    }
+
+    /**
+     * @param nanos - time to show for sources with a history, ending now
+     */
+    public void setSpan(long nanos) {
+        spanNanos = nanos;
+    }
+
     private void onShow() {
         refreshTimer = new Timer();
         refreshTimer.scheduleAtFixedRate(new RepaintTask(), 0, REPAINT_INTERVAL);
@@ -257,13 +278,19 @@ public class Graph extends JPanel {
         g.setPaint(data.getPaint());
 
         final DataSource source = data.getSource();
-        GeneralPath dataShape = new GeneralPath();
-        dataShape.moveTo(0, 0);
-
-        for (int x = 0; x < v.width(); x++) {
-            final float xData = v.xPixToData(x);
-            final float y = v.yDataToPix((float) source.get(xData));
-            dataShape.lineTo(x, y);
+        GeneralPath dataShape;
+        if (source instanceof HistorySource) {
+            dataShape = historyShape((HistorySource) source, v);
+        }
+        else {
+            dataShape = new GeneralPath();
+            dataShape.moveTo(0, 0);
+
+            for (int x = 0; x < v.width(); x++) {
+                final float xData = v.xPixToData(x);
+                final float y = v.yDataToPix((float) source.get(xData));
+                dataShape.lineTo(x, y);
+            }
         }
 
         g.draw(dataShape);
@@ -271,6 +298,50 @@ public class Graph extends JPanel {
         g.dispose();
     }
 
+    /**
+     * Trace a source's history over the graph's span, one summary per pixel
+     * column: a line through each column's mean, and a vertical stroke
+     * from its min to its max where the column spans several values.
+     */
+    private GeneralPath historyShape(HistorySource source, View v) {
+        final int width = v.width();
+        if (columnMean.length < width) {
+            columnMin = new float[width];
+            columnMax = new float[width];
+            columnMean = new float[width];
+        }
+
+        //x = 1.0 is now, x = 0.0 is one span ago
+        final long now = source.now();
+        final long from = now - (long) ((1.0 - v.xPixToData(0)) * spanNanos);
+        final long to = now - (long) ((1.0 - v.xPixToData(width)) * spanNanos);
+        source.read(from, to, width, columnMin, columnMax, columnMean);
+
+        GeneralPath shape = new GeneralPath();
+        boolean drawing = false;
+        for (int x = 0; x < width; x++) {
+            if (Float.isNaN(columnMean[x])) {
+                drawing = false;
+                continue;
+            }
+
+            final int y = v.yDataToPix(columnMean[x]);
+            if (drawing) {
+                shape.lineTo(x, y);
+            }
+            else {
+                shape.moveTo(x, y);
+                drawing = true;
+            }
+            if (columnMin[x] != columnMax[x]) {
+                shape.moveTo(x, v.yDataToPix(columnMax[x]));
+                shape.lineTo(x, v.yDataToPix(columnMin[x]));
+                shape.moveTo(x, y);
+            }
+        }
+        return shape;
+    }
+
     private void drawLabels(Graphics2D g2d, List<DataConfig> dcs, View v) {
         g2d = (Graphics2D) g2d.create();
         FontMetrics metrics = g2d.getFontMetrics();
@@ -11,9 +11,15 @@ import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 class GraphConfigWindow {
     private static final Dimension SPINNER_SIZE = new Dimension(80, 20);
+    private static final String[] SPAN_NAMES = {"1 Minute", "10 Minutes", "1 Hour"};
+    private static final long[] SPANS = {
+            TimeUnit.MINUTES.toNanos(1),
+            TimeUnit.MINUTES.toNanos(10),
+            TimeUnit.HOURS.toNanos(1)};
     private final Graph subject;
     private final JFrame frame;
     private SpinnerNumberModel strokeModel;
@@ -82,10 +88,23 @@ class GraphConfigWindow {
         spinnerPanel.add(numberSpinner(ycenter, cl));
         spinnerPanel.add(new JLabel(" X Scale:"));
         spinnerPanel.add(numberSpinner(xscale, cl));
+        spinnerPanel.add(new JLabel(" Span:"));
+        spinnerPanel.add(buildSpanBox());
 
         return spinnerPanel;
     }
 
+    private JComboBox<String> buildSpanBox() {
+        JComboBox<String> spanBox = new JComboBox<>(SPAN_NAMES);
+        for (int i = 0; i < SPANS.length; i++) {
+            if (SPANS[i] == subject.getSpan()) {
+                spanBox.setSelectedIndex(i);
+            }
+        }
+        spanBox.addActionListener(e -> subject.setSpan(SPANS[spanBox.getSelectedIndex()]));
+        return spanBox;
+    }
+
     private JComponent buildSourceTable() {
         List<Graph.DataConfig> sources = subject.getSources();
 
@@ -0,0 +1,24 @@
+package com.graph;
+
+/**
+ * A DataSource that keeps a timestamped history, so a graph can show it over
+ * a span of time rather than as a fraction of its samples
+ */
+public interface HistorySource extends DataSource {
+    /**
+     * @return - the current time on the source's clock, in nanoseconds
+     */
+    long now();
+
+    /**
+     * Summarize a time span into equal width columns, as SampleHistory.read
+     *
+     * @param from    - start of the span, on the source's clock
+     * @param to      - end of the span, on the source's clock
+     * @param columns - number of columns to split the span into
+     * @param min     - filled with the lowest value of each column
+     * @param max     - filled with the highest value of each column
+     * @param mean    - filled with the mean of each column
+     */
+    void read(long from, long to, int columns, float[] min, float[] max, float[] mean);
+}
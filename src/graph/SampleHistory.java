@@ -0,0 +1,254 @@
+package com.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamped history of one value, kept for graphing at constant memory.
+ * Every sample goes into a ring of raw samples, and is folded into
+ * min/max/mean buckets of 1 second, 10 seconds and 1 minute, each kept in a
+ * ring of its own: an hour of seconds, three hours of 10 seconds and a day
+ * of minutes.
+ * <p>
+ * A read summarizes a time span into columns, one per pixel of a graph. It
+ * uses the coarsest tier whose entries are no wider than a column and that
+ * still reaches back to the start of the span, so a read costs at most one
+ * tier's length however long the span is. Samples are stored as primitives;
+ * nothing is allocated per sample. Times are in nanoseconds on any clock
+ * that doesn't run backwards, such as System.nanoTime.
+ */
+public class SampleHistory {
+    static final int RAW_SAMPLES = 4096;
+    private static final long[] ROLLUP_WIDTHS = {
+            TimeUnit.SECONDS.toNanos(1),
+            TimeUnit.SECONDS.toNanos(10),
+            TimeUnit.MINUTES.toNanos(1)};
+    private static final int[] ROLLUP_BUCKETS = {3600, 1080, 1440};
+
+    //raw samples, then each rollup from finest to coarsest
+    private final Tier[] tiers = new Tier[ROLLUP_WIDTHS.length + 1];
+    //per column working space for reads, grown as needed
+    private double[] colSum = new double[0];
+    private int[] colCount = new int[0];
+    private float[] colLast = new float[0];
+
+    public SampleHistory() {
+        tiers[0] = new Tier(0, RAW_SAMPLES);
+        for (int i = 0; i < ROLLUP_WIDTHS.length; i++) {
+            tiers[i + 1] = new Tier(ROLLUP_WIDTHS[i], ROLLUP_BUCKETS[i]);
+        }
+    }
+
+    /**
+     * @param nanos - time the value was received at, in nanoseconds;
+     *              samples must be added in time order
+     * @param value - the sample
+     */
+    public synchronized void add(long nanos, float value) {
+        for (Tier tier : tiers) {
+            tier.add(nanos, value);
+        }
+    }
+
+    /**
+     * @return - the latest value at or before the given time, or NaN if
+     * there is none in the history
+     */
+    public synchronized float valueAt(long nanos) {
+        for (Tier tier : tiers) {
+            if (tier.covers(nanos)) {
+                long entry = tier.firstAfter(nanos) - 1;
+                return (entry < tier.oldest()) ? Float.NaN : tier.last[tier.slot(entry)];
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Summarize a time span into equal width columns. Each column gets the
+     * min, max and mean of the samples in it, with the value held coming
+     * into the column counted in its min and max, so adjacent columns
+     * join up. A column with no samples holds the previous value; columns
+     * before the first known value are NaN.
+     *
+     * @param from    - start of the span, in nanoseconds
+     * @param to      - end of the span, in nanoseconds
+     * @param columns - number of columns to split the span into
+     * @param min     - filled with the lowest value of each column
+     * @param max     - filled with the highest value of each column
+     * @param mean    - filled with the mean of each column
+     */
+    public synchronized void read(long from, long to, int columns,
+                                  float[] min, float[] max, float[] mean) {
+        if (columns <= 0) {
+            return;
+        }
+        if (colSum.length < columns) {
+            colSum = new double[columns];
+            colCount = new int[columns];
+            colLast = new float[columns];
+        }
+        Arrays.fill(colSum, 0, columns, 0);
+        Arrays.fill(colCount, 0, columns, 0);
+
+        long span = Math.max(1, to - from);
+        Tier tier = choose(from, span / columns);
+        long entry = tier.firstAfter(from - 1);
+        float held = (entry > tier.oldest()) ? tier.last[tier.slot(entry - 1)] : Float.NaN;
+
+        for (; entry < tier.count; entry++) {
+            int s = tier.slot(entry);
+            long time = tier.times[s];
+            if (time > to) {
+                break;
+            }
+
+            int col = (int) Math.min(columns - 1, (time - from) * columns / span);
+            if (colCount[col] == 0) {
+                min[col] = tier.min(s);
+                max[col] = tier.max(s);
+            }
+            else {
+                min[col] = Math.min(min[col], tier.min(s));
+                max[col] = Math.max(max[col], tier.max(s));
+            }
+            colSum[col] += tier.sum(s);
+            colCount[col] += tier.count(s);
+            colLast[col] = tier.last[s];
+        }
+
+        for (int col = 0; col < columns; col++) {
+            if (colCount[col] == 0) {
+                min[col] = held;
+                max[col] = held;
+                mean[col] = held;
+                continue;
+            }
+
+            mean[col] = (float) (colSum[col] / colCount[col]);
+            if (!Float.isNaN(held)) {
+                min[col] = Math.min(min[col], held);
+                max[col] = Math.max(max[col], held);
+            }
+            held = colLast[col];
+        }
+    }
+
+    //coarsest tier no wider than a column, made coarser until it reaches
+    //back to the start of the span
+    private Tier choose(long from, long columnWidth) {
+        int t = 0;
+        while (t + 1 < tiers.length && tiers[t + 1].width <= columnWidth) {
+            t++;
+        }
+        while (t + 1 < tiers.length && !tiers[t].covers(from)) {
+            t++;
+        }
+        return tiers[t];
+    }
+
+    /**
+     * A ring of entries in time order. Raw samples are entries of zero
+     * width, holding only their value; a rollup bucket holds the min, max,
+     * sum, count and last value of the samples in its width. Entries are
+     * numbered from the first ever added; the newest capacity are kept.
+     */
+    private static class Tier {
+        final long width;
+        final int capacity;
+        final long[] times;
+        final float[] last;
+        final float[] mins;
+        final float[] maxes;
+        final double[] sums;
+        final int[] counts;
+        long count;
+
+        Tier(long width, int capacity) {
+            this.width = width;
+            this.capacity = capacity;
+            times = new long[capacity];
+            last = new float[capacity];
+            boolean rollup = width > 0;
+            mins = rollup ? new float[capacity] : null;
+            maxes = rollup ? new float[capacity] : null;
+            sums = rollup ? new double[capacity] : null;
+            counts = rollup ? new int[capacity] : null;
+        }
+
+        int slot(long entry) {
+            return (int) (entry % capacity);
+        }
+
+        long oldest() {
+            return Math.max(0, count - capacity);
+        }
+
+        //true if nothing at or after the time has been dropped
+        boolean covers(long nanos) {
+            return count <= capacity || times[slot(oldest())] <= nanos;
+        }
+
+        void add(long nanos, float value) {
+            if (width == 0) {
+                int s = slot(count++);
+                times[s] = nanos;
+                last[s] = value;
+                return;
+            }
+
+            long start = Math.floorDiv(nanos, width) * width;
+            if (count > 0) {
+                int s = slot(count - 1);
+                if (start <= times[s]) {
+                    mins[s] = Math.min(mins[s], value);
+                    maxes[s] = Math.max(maxes[s], value);
+                    sums[s] += value;
+                    counts[s]++;
+                    last[s] = value;
+                    return;
+                }
+            }
+
+            int s = slot(count++);
+            times[s] = start;
+            mins[s] = value;
+            maxes[s] = value;
+            sums[s] = value;
+            counts[s] = 1;
+            last[s] = value;
+        }
+
+        //number of the first kept entry later than the time
+        long firstAfter(long nanos) {
+            long lo = oldest();
+            long hi = count;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (times[slot(mid)] <= nanos) {
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        float min(int s) {
+            return (mins == null) ? last[s] : mins[s];
+        }
+
+        float max(int s) {
+            return (maxes == null) ? last[s] : maxes[s];
+        }
+
+        double sum(int s) {
+            return (sums == null) ? last[s] : sums[s];
+        }
+
+        int count(int s) {
+            return (counts == null) ? 1 : counts[s];
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.map.command.*;
 import com.serial.Serial;
 import com.serial.SerialSendManager;
 import com.ui.LogViewer;
+import com.ui.PlaybackWindow;
 import com.ui.SystemConfigWindow;
 import com.ui.Theme;
 import com.ui.ninePatch.NinePatchPanel;
@@ -244,6 +245,22 @@ public class WaypointPanel extends NinePatchPanel {
             gFrame.setVisible(true);
         }
     };
+    private PlaybackWindow playbackWindow;
+    private final Action openPlaybackWindow = new AbstractAction() {
+        {
+            String text = "Playback";
+            putValue(Action.NAME, text);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            if (playbackWindow != null && playbackWindow.getVisible()) {
+                playbackWindow.toFront();
+                return;
+            }
+
+            playbackWindow = new PlaybackWindow(context);
+        }
+    };
     //Panel Buttons
     public JButton tileButton;
     public JButton dataPanel;
@@ -252,6 +269,7 @@ public class WaypointPanel extends NinePatchPanel {
     public JButton looping;
     public JButton config;
     public JButton logPanelButton;
+    public JButton playbackButton;
     //Map Zoom Options
     public JButton zoomInButton;
     public JButton zoomOutButton;
@@ -539,6 +557,7 @@ public class WaypointPanel extends NinePatchPanel {
         looping = theme.makeButton(toggleLooping);
         config = theme.makeButton(openConfigWindow);
         logPanelButton = theme.makeButton(logPanelAction);
+        playbackButton = theme.makeButton(openPlaybackWindow);
 
         //Map Zoom Options
         zoomInButton = theme.makeButton(zoomInAction);
@@ -561,7 +580,7 @@ public class WaypointPanel extends NinePatchPanel {
 
         JComponent[] format = new JComponent[]{
                 tileButton, dataPanel, graphButton, reTarget, looping,
-                config, logPanelButton, setHomeButton, clearWaypoints,
+                config, logPanelButton, playbackButton, setHomeButton, clearWaypoints,
                 enterButton, missionButton
         };
 
@@ -648,6 +667,8 @@ public class WaypointPanel extends NinePatchPanel {
         add(Box.createRigidArea(space));
         add(logPanelButton);
         add(Box.createRigidArea(space));
+        add(playbackButton);
+        add(Box.createRigidArea(space));
         add(new JSeparator(SwingConstants.HORIZONTAL));
         add(Box.createRigidArea(space));
         add(setHomeButton);
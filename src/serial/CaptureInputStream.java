@@ -0,0 +1,210 @@
+package com.serial;
+
+import com.util.PlaybackClock;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Replays a SerialCapture file as a serial input stream. Recorded chunks
+ * become readable once a PlaybackClock reaches their original arrival time,
+ * so replay follows the clock's speed, pauses and seeks forward. Like
+ * SerialInputStream, reads return -1 rather than block when nothing is due
+ * yet; isFinished() tells a real end of capture apart from that.
+ */
+public class CaptureInputStream extends InputStream {
+    /**
+     * Replay speed that releases every recorded byte immediately
+     */
+    public static final double AS_FAST_AS_POSSIBLE = PlaybackClock.AS_FAST_AS_POSSIBLE;
+
+    private final DataInputStream in;
+    private final PlaybackClock clock;
+    private final long captureStartMillis;
+    private byte[] chunk = new byte[256];
+    private int chunkLength;
+    private int chunkPos;
+    //capture time of the current chunk, microseconds from the capture start
+    private long chunkTimeUs;
+    private boolean chunkDue;
+    private boolean finished;
+
+    public CaptureInputStream(File file, double speed) throws IOException {
+        this(new FileInputStream(file), new PlaybackClock(speed));
+    }
+
+    /**
+     * @param capture - stream positioned at the start of a capture file
+     * @param speed   - replay rate relative to real time; 1.0 for real time,
+     *                10.0 for ten times faster, or AS_FAST_AS_POSSIBLE
+     */
+    public CaptureInputStream(InputStream capture, double speed) throws IOException {
+        this(capture, new PlaybackClock(speed));
+    }
+
+    /**
+     * @param capture - stream positioned at the start of a capture file
+     * @param clock   - decides when each chunk is due
+     */
+    public CaptureInputStream(InputStream capture, PlaybackClock clock) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(capture));
+        this.clock = clock;
+
+        byte[] magic = new byte[SerialCapture.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, SerialCapture.MAGIC)) {
+            throw new IOException("Not a serial capture file");
+        }
+        captureStartMillis = in.readLong();
+
+        nextChunk();
+    }
+
+    /**
+     * @return - wall clock time the capture was started, in milliseconds
+     */
+    public long getCaptureStartMillis() {
+        return captureStartMillis;
+    }
+
+    /**
+     * @return - true once every recorded byte has been read
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return - nanoseconds until the next recorded chunk is due, 0 if bytes
+     * are readable now, Long.MAX_VALUE while the clock is paused, or -1 at
+     * the end of the capture
+     */
+    public long nanosUntilNext() {
+        if (finished) {
+            return -1;
+        }
+        if (isDue()) {
+            return 0;
+        }
+        return clock.nanosUntil(chunkTimeUs);
+    }
+
+    private boolean isDue() {
+        if (!chunkDue) {
+            chunkDue = clock.now() >= chunkTimeUs;
+            if (chunkDue) {
+                clock.played(chunkTimeUs);
+            }
+        }
+        return chunkDue;
+    }
+
+    private void nextChunk() throws IOException {
+        long delta;
+        int length;
+
+        try {
+            delta = readVarint(in);
+            length = (int) readVarint(in);
+            //a later session starts at its own wall clock time
+            while (length == 0) {
+                chunkTimeUs = sessionStart(chunkTimeUs, captureStartMillis, in.readLong());
+                delta = readVarint(in);
+                length = (int) readVarint(in);
+            }
+            if (chunk.length < length) {
+                chunk = new byte[Math.max(length, chunk.length * 2)];
+            }
+            in.readFully(chunk, 0, length);
+        }
+        catch (EOFException e) {
+            //end of capture, or a record cut short by a crash while recording
+            finished = true;
+            return;
+        }
+
+        chunkLength = length;
+        chunkPos = 0;
+        chunkTimeUs += delta;
+        chunkDue = false;
+    }
+
+    @Override
+    public int available() {
+        if (finished || !isDue()) {
+            return 0;
+        }
+        return chunkLength - chunkPos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (finished || !isDue()) {
+            return -1;
+        }
+
+        int b = chunk[chunkPos++] & 0xff;
+        if (chunkPos == chunkLength) {
+            nextChunk();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int total = 0;
+        while (total < len && !finished && isDue()) {
+            int count = Math.min(len - total, chunkLength - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off + total, count);
+            chunkPos += count;
+            total += count;
+
+            if (chunkPos == chunkLength) {
+                nextChunk();
+            }
+        }
+
+        return (total == 0) ? -1 : total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @param micros        - capture time of the last record before a session
+     *                      marker
+     * @param captureMillis - wall clock time the capture was started
+     * @param sessionMillis - wall clock time in the session marker
+     * @return - capture time the session starts at, never before the last
+     * record even if the wall clock was set back
+     */
+    static long sessionStart(long micros, long captureMillis, long sessionMillis) {
+        return Math.max(micros, (sessionMillis - captureMillis) * 1000L);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,198 @@
+package com.serial;
+
+import com.util.Playback;
+import com.util.PlaybackClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A link that plays back a SerialCapture file, so a recorded session runs
+ * through the usual parser and drives every widget, state and sensor
+ * displays included, as it did live. Playback follows a PlaybackClock for
+ * speed, pausing and seeking. Seeking back replays the capture from its
+ * start as fast as possible up to the new position, so the dashboard holds
+ * what it held at that point. Bytes written to the link are discarded.
+ */
+public class CaptureTransport implements Transport, Playback {
+    //longest wait before checking for a close or a seek
+    private static final long MAX_WAIT_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Logger seriallog = LoggerFactory.getLogger("d.serial");
+    private final File file;
+    private final PlaybackClock clock;
+    private final long lengthMicros;
+    private final InputStream input = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            return capture.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return capture.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return capture.available();
+        }
+    };
+    private volatile CaptureInputStream capture;
+    private volatile Runnable listener;
+    private volatile boolean running = true;
+    private boolean rewindPending;
+    private Thread replayThread;
+
+    public CaptureTransport(File file, double speed) throws IOException {
+        this.file = file;
+        lengthMicros = measure(file);
+        clock = new PlaybackClock(speed);
+        capture = new CaptureInputStream(new FileInputStream(file), clock);
+    }
+
+    /**
+     * @return - capture time of the last recorded chunk, in microseconds
+     */
+    static long measure(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            in.skipBytes(SerialCapture.MAGIC.length);
+            long startMillis = in.readLong();
+            long micros = 0;
+            long end = 0;
+            while (true) {
+                try {
+                    long delta = CaptureInputStream.readVarint(in);
+                    int length = (int) CaptureInputStream.readVarint(in);
+                    if (length == 0) {
+                        micros = CaptureInputStream.sessionStart(micros, startMillis, in.readLong());
+                        continue;
+                    }
+                    if (in.skipBytes(length) < length) {
+                        return end;
+                    }
+                    micros += delta;
+                    end = micros;
+                }
+                catch (EOFException e) {
+                    return end;
+                }
+            }
+        }
+    }
+
+    public PlaybackClock getClock() {
+        return clock;
+    }
+
+    public long getLengthMicros() {
+        return lengthMicros;
+    }
+
+    public long getPositionMicros() {
+        return Math.min(clock.getPosition(), lengthMicros);
+    }
+
+    public boolean isFinished() {
+        return capture.isFinished();
+    }
+
+    public void seek(long micros) {
+        synchronized (this) {
+            //bytes already parsed can't be taken back; start over
+            rewindPending |= micros < clock.getPosition();
+        }
+        clock.seek(micros);
+    }
+
+    public String getName() {
+        return "Playback of " + file.getName();
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public synchronized void setDataListener(Runnable listener) {
+        this.listener = listener;
+        if (replayThread == null && running) {
+            replayThread = new Thread(this::replayLoop, "capture-playback");
+            replayThread.setDaemon(true);
+            replayThread.start();
+        }
+    }
+
+    public void write(byte[] data, int off, int len) {
+        //nobody is listening to a recording
+    }
+
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = replayThread;
+            replayThread = null;
+        }
+
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        capture.close();
+    }
+
+    private synchronized boolean takeRewind() {
+        boolean rewind = rewindPending;
+        rewindPending = false;
+        return rewind;
+    }
+
+    private void replayLoop() {
+        try {
+            while (running) {
+                if (takeRewind()) {
+                    rewind();
+                }
+
+                long wait = capture.nanosUntilNext();
+                if (wait == 0) {
+                    listener.run();
+                }
+                else if (wait < 0) {
+                    clock.awaitChange(MAX_WAIT_NS);
+                }
+                else {
+                    clock.awaitChange(Math.min(wait, MAX_WAIT_NS));
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            //closed
+        }
+    }
+
+    private void rewind() {
+        try {
+            CaptureInputStream old = capture;
+            capture = new CaptureInputStream(new FileInputStream(file), clock);
+            old.close();
+        }
+        catch (IOException e) {
+            seriallog.error("Can't reopen serial capture " + file, e);
+        }
+    }
+}
@@ -123,6 +123,17 @@ public class CommsMonitor {
         }
     }
 
+    /**
+     * Monitor Type - Heartbeat
+     * Returns the number of heartbeat polls since the last pulse was
+     * received.
+     *
+     * @return - the missed poll count
+     */
+    public int getMissedHeartbeats() {
+        return heartbeatCheckCount;
+    }
+
     /**
      * Monitor Type - Heartbeat
      * Starts the periodic timer for a heartbeat pulse, resets the pulse count,
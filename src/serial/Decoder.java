@@ -2,7 +2,6 @@ package com.serial;
 
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,75 +9,137 @@ import java.util.List;
  * Decodes packets of the form <header+><signifier>data<checksum+><footer+>
  * For the purposes of this decoder, routines that match the header also
  * include the signifier byte
+ * <p>
+ * Incoming bytes are kept in a fixed capacity primitive ring buffer indexed
+ * by their absolute position in the stream, so decoding does no per byte
+ * allocation and never shifts buffered data. Packets are framed as each byte
+ * arrives; an open header whose packet could no longer fit in the ring is
+ * dropped.
+ * <p>
+ * When the Checksum is a ViewChecksum, candidates are verified in place in
+ * the ring, and PacketViewReaders are handed a reused view of the packet
+ * rather than a copy. A copy is only made for plain PacketReaders.
+ * <p>
+ * When the Checksum is also an IncrementalChecksum, every open header keeps a
+ * running sum that is fed each data byte once, so checking a footer against
+ * an open header is O(1) instead of a rescan of the whole candidate.
+ * <p>
+ * If given LinkMetrics, the decoder reports bytes read, packets by type,
+ * bytes discarded between packets, headers that expired, and headers
+ * dropped after their checksum failed to match a footer.
  */
 public class Decoder {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int CHUNK_SIZE = 1024;
+
     private final InputStream input;
     private final byte[] header;
     private final byte[] footer;
     private final Checksum sum;
+    private final ViewChecksum viewSum;
+    private final IncrementalChecksum rollingSum;
     private final List<PacketReader> readers = new LinkedList<>();
+    //readers registered by label; indexed by the signifier byte, so the low
+    //nibble is the message type and the high nibble the subtype
+    private final PacketReader[] labelTable = new PacketReader[256];
+    private final PacketReader[] typeReaders = new PacketReader[16];
+    private final PacketReader[] subtypeReaders = new PacketReader[256];
     private final List<Packet> foundHeaders = new ArrayList<>();
-    private final List<Byte> buffer = new ArrayList<>();
+    private final List<Packet> freePackets = new ArrayList<>();
+    private final byte[] ring;
+    private final int mask;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final PacketView dataView = new PacketView();
+    private final PacketView sumView = new PacketView();
+    //absolute stream position of the next byte to be received
+    private long streamPos = 0;
+    //absolute stream position just past the last dispatched packet
+    private long consumedPos = 0;
+    private LinkMetrics metrics;
 
     public Decoder(InputStream input, byte[] head, byte[] tail, Checksum sum) {
+        this(input, head, tail, sum, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - minimum number of bytes the ring buffer will hold;
+     *                 rounded up to a power of two. Must exceed the longest
+     *                 framed packet any reader will claim.
+     */
+    public Decoder(InputStream input, byte[] head, byte[] tail, Checksum sum,
+                   int capacity) {
         this.input = input;
         this.header = head;
         this.footer = tail;
         this.sum = sum;
+        this.viewSum = (sum instanceof ViewChecksum) ? (ViewChecksum) sum : null;
+        this.rollingSum = (sum instanceof IncrementalChecksum) ? (IncrementalChecksum) sum : null;
+
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        ring = new byte[size];
+        mask = size - 1;
     }
 
     /**
      * Read new bytes from the input stream, dispatching messages as it goes
      */
     public void update() {
-        int oldPos = buffer.size() - 1;
-
         while (true) {
-            int data;
+            int count;
 
             try {
-                data = input.read();
+                count = input.read(chunk, 0, chunk.length);
             }
             catch (Exception e) {
                 e.printStackTrace();
                 break;
             }
 
-            if (data == -1) {
+            if (count <= 0) {
                 break;
             }
+            if (metrics != null) {
+                metrics.recordBytesRead(count);
+            }
 
-            buffer.add((byte) data);
+            for (int i = 0; i < count; i++) {
+                receive(chunk[i]);
+            }
         }
-
-        parse(oldPos);
     }
 
-    private void parse(int oldPos) {
+    //store one byte in the ring and check if it completes a header or footer
+    private void receive(byte data) {
+        long pos = streamPos++;
+        ring[(int) (pos & mask)] = data;
+
+        expireHeaders(pos);
+
+        if (rollingSum != null) {
+            //data bytes are known once a full checksum and footer follow them
+            updateRunningSums(pos - (sum.length() + footer.length));
+        }
+
         //because the header includes one byte beyond the "header" buffer,
         //(Signifier byte) it isn't matched until the header was matched one byte ago
-        for (int i = (oldPos + 1); i < buffer.size(); i++) {
-            if (match(header, (i - 1))) {
-                foundHeader(i);
-            }
-
-            if (match(footer, i)) {
-                foundFooter(i);
-            }
+        if (match(header, (pos - 1))) {
+            foundHeader(pos);
         }
 
-        cleanBuffers();
+        if (match(footer, pos)) {
+            foundFooter(pos);
+        }
     }
 
-    //check if pattern appears in buffer, ending at searchPos
-    private boolean match(byte[] pattern, int searchPos) {
+    //check if pattern appears in the stream, ending at searchPos
+    private boolean match(byte[] pattern, long searchPos) {
 
         if (searchPos < (pattern.length - 1)) {
             return false;
         }
 
         for (int i = 0; i < pattern.length; i++) {
-            if (buffer.get(searchPos - i) != pattern[(pattern.length - 1 - i)]) {
+            if (ring[(int) ((searchPos - i) & mask)] != pattern[(pattern.length - 1 - i)]) {
                 return false;
             }
         }
@@ -88,28 +149,108 @@ public class Decoder {
 
     //see if any reader claims the coming packet
     //if so, add to the header list
-    private void foundHeader(int pos) {
-        byte sig = buffer.get(pos);
+    private void foundHeader(long pos) {
+        byte sig = ring[(int) (pos & mask)];
+
+        PacketReader labelled = labelTable[sig & 0xff];
+        if (labelled != null) {
+            int len = labelled.claim(sig);
+            if (len != -1) {
+                openPacket(pos, len, labelled);
+                return;
+            }
+        }
 
         for (PacketReader r : readers) {
             int len = r.claim(sig);
             if (len != -1) {
-                foundHeaders.add(new Packet(pos, len, r));
+                openPacket(pos, len, r);
                 return;
             }
         }
     }
 
+    private void openPacket(long pos, int len, PacketReader reader) {
+        Packet p;
+        if (freePackets.isEmpty()) {
+            p = new Packet();
+            if (rollingSum != null) {
+                p.running = rollingSum.newAccumulator();
+            }
+        }
+        else {
+            p = freePackets.remove(freePackets.size() - 1);
+        }
+
+        p.startPos = pos;
+        p.maxLength = len;
+        p.claimee = reader;
+        p.failedSum = false;
+        if (p.running != null) {
+            p.running.reset();
+        }
+        foundHeaders.add(p);
+    }
+
+    //the byte at dataPos is now known not to be part of any checksum or
+    //footer that could close an open packet, so add it to their running sums
+    private void updateRunningSums(long dataPos) {
+        if (dataPos < 0) {
+            return;
+        }
+
+        byte data = ring[(int) (dataPos & mask)];
+
+        for (int i = 0; i < foundHeaders.size(); i++) {
+            Packet p = foundHeaders.get(i);
+            if (dataPos >= p.startPos) {
+                p.running.update(data);
+            }
+        }
+    }
+
+    //report the packet opened by the header at index, ending at pos, and
+    //any older headers it closes
+    private void recordPacket(int index, long pos) {
+        if (metrics == null) {
+            return;
+        }
+
+        for (int i = 0; i < index; i++) {
+            if (foundHeaders.get(i).failedSum) {
+                metrics.recordChecksumFailure();
+            }
+        }
+
+        Packet p = foundHeaders.get(index);
+        long frameStart = p.startPos - header.length;
+        if (frameStart > consumedPos) {
+            metrics.recordDiscarded(frameStart - consumedPos);
+        }
+        metrics.recordPacket(ring[(int) (p.startPos & mask)], (int) (pos + 1 - frameStart));
+        consumedPos = pos + 1;
+    }
+
+    //remove the first count open headers, returning them to the pool
+    private void closeHeaders(int count) {
+        List<Packet> closed = foundHeaders.subList(0, count);
+        for (Packet p : closed) {
+            p.claimee = null;
+            freePackets.add(p);
+        }
+        closed.clear();
+    }
+
     //check for valid checksum with possible headers
     //then send to handler on a match
-    private void foundFooter(int pos) {
-        int footerPos = (pos - footer.length);
-        int checksumPos = (footerPos - (sum.length() - 1));
+    private void foundFooter(long pos) {
+        long footerPos = (pos - footer.length);
+        long checksumPos = (footerPos - (sum.length() - 1));
 
         //try and match the footer and checksum to a previous header
         for (int i = 0; i < foundHeaders.size(); i++) {
             Packet p = foundHeaders.get(i);
-            int packLen = (checksumPos - p.startPos);
+            long packLen = (checksumPos - p.startPos);
 
             //packet doesn't have both type byte and checksum
             if (packLen < 0) {
@@ -121,42 +262,90 @@ public class Decoder {
                 continue;
             }
 
-            byte[] data = new byte[packLen];
+            if (viewSum != null || rollingSum != null) {
+                dataView.set(ring, (int) (p.startPos & mask), (int) packLen, mask);
+                sumView.set(ring, (int) (checksumPos & mask), sum.length(), mask);
+
+                boolean valid = (rollingSum != null)
+                        ? p.running.matches(sumView)
+                        : viewSum.matches(dataView, sumView);
+
+                if (valid) {
+                    //remove older headers and call handler
+                    PacketReader reader = p.claimee;
+                    recordPacket(i, pos);
+                    closeHeaders(i + 1);
+                    dispatch(reader, dataView);
+                    return;
+                }
+                p.failedSum = true;
+                continue;
+            }
+
+            byte[] data = new byte[(int) packLen];
 
             for (int b = 0; b < packLen; b++) {
-                data[b] = buffer.get(p.startPos + b);
+                data[b] = ring[(int) ((p.startPos + b) & mask)];
             }
 
             //calculate and match checksum
             byte[] checksum = sum.calc(data);
             if (match(checksum, footerPos)) {
                 //remove older headers and call handler
-                foundHeaders.subList(0, (i + 1)).clear();
-                p.claimee.handle(data);
+                PacketReader reader = p.claimee;
+                recordPacket(i, pos);
+                closeHeaders(i + 1);
+                reader.handle(data);
                 return;
             }
+            p.failedSum = true;
+        }
+    }
+
+    private void dispatch(PacketReader reader, PacketView packet) {
+        if (reader instanceof PacketViewReader) {
+            ((PacketViewReader) reader).handle(packet);
+        }
+        else {
+            reader.handle(packet.toArray());
         }
     }
 
-    private void cleanBuffers() {
-        int removed = Math.max((buffer.size() - header.length), 0);
+    //drop headers whose packet can no longer complete: either the longest
+    //allowed packet has already passed, or its start is about to be
+    //overwritten in the ring
+    private void expireHeaders(long pos) {
+        if (foundHeaders.isEmpty()) {
+            return;
+        }
+
+        long trailer = sum.length() + footer.length;
+        long oldestKept = pos - mask;
+        int expired = 0;
 
-        for (Iterator<Packet> iter = foundHeaders.listIterator(); iter.hasNext(); ) {
-            Packet p = iter.next();
+        for (int i = 0; i < foundHeaders.size(); i++) {
+            Packet p = foundHeaders.get(i);
 
-            if ((buffer.size() - p.startPos) > p.maxLength) {
-                //remove packets past their max length
-                iter.remove();
+            if ((pos - p.startPos) > (p.maxLength + trailer)
+                    || p.startPos < oldestKept) {
+                if (metrics != null && p.failedSum) {
+                    metrics.recordChecksumFailure();
+                }
+                p.claimee = null;
+                freePackets.add(p);
+                expired++;
             }
-            else {
-                removed = Math.min(removed, p.startPos);
+            else if (expired > 0) {
+                foundHeaders.set(i - expired, p);
             }
         }
 
-        buffer.subList(0, removed).clear();
-
-        for (Packet p : foundHeaders) {
-            p.startPos -= removed;
+        if (expired > 0) {
+            foundHeaders.subList(foundHeaders.size() - expired,
+                    foundHeaders.size()).clear();
+            if (metrics != null) {
+                metrics.recordExpiredHeaders(expired);
+            }
         }
     }
 
@@ -169,23 +358,77 @@ public class Decoder {
         }
     }
 
+    /**
+     * Report framing statistics to the given metrics, or stop reporting if
+     * null
+     */
+    public void setMetrics(LinkMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Register a reader that is offered every signifier byte, in the order
+     * readers were added. Readers registered by label are offered first.
+     */
     public void addPacketReader(PacketReader reader) {
         readers.add(reader);
     }
 
+    /**
+     * Register a reader for every packet whose label has the given message
+     * type. Replaces any reader already registered for that type; readers
+     * registered for a specific subtype still take precedence.
+     *
+     * @param type   - message type, the low nibble of the label byte
+     * @param reader - the reader to offer matching packets to
+     */
+    public void addPacketReader(int type, PacketReader reader) {
+        typeReaders[type & 0x0F] = reader;
+        rebuildLabelTable();
+    }
+
+    /**
+     * Register a reader for packets with exactly the given type and
+     * subtype. Replaces any reader already registered for that label.
+     *
+     * @param type    - message type, the low nibble of the label byte
+     * @param subtype - message subtype, the high nibble of the label byte
+     * @param reader  - the reader to offer matching packets to
+     */
+    public void addPacketReader(int type, int subtype, PacketReader reader) {
+        subtypeReaders[Serial.buildMessageLabel(type & 0x0F, subtype & 0x0F) & 0xff] = reader;
+        rebuildLabelTable();
+    }
+
     public void removePacketReader(PacketReader reader) {
         readers.remove(reader);
+
+        for (int i = 0; i < typeReaders.length; i++) {
+            if (typeReaders[i] == reader) {
+                typeReaders[i] = null;
+            }
+        }
+        for (int i = 0; i < subtypeReaders.length; i++) {
+            if (subtypeReaders[i] == reader) {
+                subtypeReaders[i] = null;
+            }
+        }
+        rebuildLabelTable();
+    }
+
+    private void rebuildLabelTable() {
+        for (int label = 0; label < labelTable.length; label++) {
+            PacketReader r = subtypeReaders[label];
+            labelTable[label] = (r != null) ? r : typeReaders[Serial.getMsgType((byte) label)];
+        }
     }
 
     private static class Packet {
-        int startPos;
+        long startPos;
         int maxLength;
         PacketReader claimee;
-
-        Packet(int sPos, int mLen, PacketReader claimer) {
-            startPos = sPos;
-            maxLength = mLen;
-            claimee = claimer;
-        }
+        IncrementalChecksum.Accumulator running;
+        //a footer was found in range but the checksum didn't match
+        boolean failedSum;
     }
 }
@@ -0,0 +1,129 @@
+package com.serial;
+
+/**
+ * The fletcher16 checksum used by the serial protocol
+ */
+public class Fletcher16 implements ViewChecksum, IncrementalChecksum {
+    public byte[] calc(byte[] plaintext) {
+        return Serial.fletcher16bytes(plaintext);
+    }
+
+    public int length() {
+        return 2;
+    }
+
+    public boolean matches(PacketView plaintext, PacketView sum) {
+        int value = calc(plaintext);
+        return sum.length() == 2
+                && (sum.get(0) & 0xff) == (value >> 8)
+                && (sum.get(1) & 0xff) == (value & 0xff);
+    }
+
+    public IncrementalChecksum.Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    /**
+     * Calculate the fletcher16 sum of a view, with the first sum byte in the
+     * high bits
+     */
+    public static int calc(PacketView message) {
+        int aSum = 0xff;
+        int bSum = 0xff;
+        int iterator = 0;
+        int length = message.length();
+
+        while (length > 0) {
+            int tlen = (length > 359) ? 359 : length;
+            length -= tlen;
+
+            do {
+                bSum += aSum += (message.get(iterator++) & 0xff);
+            } while (--tlen > 0);
+
+            aSum = (aSum & 0xff) + (aSum >> 8);
+            bSum = (bSum & 0xff) + (bSum >> 8);
+        }
+
+        aSum = (aSum & 0xff) + (aSum >> 8);
+        bSum = (bSum & 0xff) + (bSum >> 8);
+
+        return ((bSum & 0xff) << 8) | (aSum & 0xff);
+    }
+
+    /**
+     * Calculate the fletcher16 sum of part of an array, with the first sum
+     * byte in the high bits
+     */
+    public static int calc(byte[] message, int offset, int length) {
+        int aSum = 0xff;
+        int bSum = 0xff;
+        int iterator = offset;
+
+        while (length > 0) {
+            int tlen = (length > 359) ? 359 : length;
+            length -= tlen;
+
+            do {
+                bSum += aSum += (message[iterator++] & 0xff);
+            } while (--tlen > 0);
+
+            aSum = (aSum & 0xff) + (aSum >> 8);
+            bSum = (bSum & 0xff) + (bSum >> 8);
+        }
+
+        aSum = (aSum & 0xff) + (aSum >> 8);
+        bSum = (bSum & 0xff) + (bSum >> 8);
+
+        return ((bSum & 0xff) << 8) | (aSum & 0xff);
+    }
+
+    /**
+     * Running fletcher16 sums. This replays the exact block and reduction
+     * schedule of calc, whose final folding is not a strict mod 255
+     * reduction, so results are bit for bit identical.
+     */
+    private static class Accumulator implements IncrementalChecksum.Accumulator {
+        private static final int BLOCK_LENGTH = 359;
+        private int aSum;
+        private int bSum;
+        private int blockCount;
+
+        Accumulator() {
+            reset();
+        }
+
+        public void reset() {
+            aSum = 0xff;
+            bSum = 0xff;
+            blockCount = 0;
+        }
+
+        public void update(byte data) {
+            bSum += aSum += (data & 0xff);
+
+            if (++blockCount == BLOCK_LENGTH) {
+                aSum = (aSum & 0xff) + (aSum >> 8);
+                bSum = (bSum & 0xff) + (bSum >> 8);
+                blockCount = 0;
+            }
+        }
+
+        public boolean matches(PacketView sum) {
+            int a = aSum;
+            int b = bSum;
+
+            if (blockCount > 0) {
+                a = (a & 0xff) + (a >> 8);
+                b = (b & 0xff) + (b >> 8);
+            }
+
+            a = (a & 0xff) + (a >> 8);
+            b = (b & 0xff) + (b >> 8);
+
+            return sum.length() == 2
+                    && sum.get(0) == (byte) b
+                    && sum.get(1) == (byte) a;
+        }
+    }
+}
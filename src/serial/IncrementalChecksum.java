@@ -0,0 +1,31 @@
+package com.serial;
+
+/**
+ * Optional Checksum capability: a running sum that is fed one byte at a time
+ * as packet data arrives, so a candidate can be verified without rescanning
+ * its plaintext.
+ */
+public interface IncrementalChecksum extends Checksum {
+    /**
+     * return a new running sum, reset to the sum of an empty plaintext
+     */
+    Accumulator newAccumulator();
+
+    interface Accumulator {
+        /**
+         * discard all bytes added so far
+         */
+        void reset();
+
+        /**
+         * add the next plaintext byte to the running sum
+         */
+        void update(byte data);
+
+        /**
+         * return true if sum is the checksum of every byte added since the
+         * last reset
+         */
+        boolean matches(PacketView sum);
+    }
+}
@@ -0,0 +1,70 @@
+package com.serial;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Transport over an open jssc serial port
+ */
+public class JsscTransport implements Transport {
+    private final SerialPort port;
+    private final SerialInputStream input;
+
+    public JsscTransport(SerialPort port) {
+        this.port = port;
+        this.input = new SerialInputStream(port);
+    }
+
+    public SerialPort getPort() {
+        return port;
+    }
+
+    public String getName() {
+        return port.getPortName();
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public void setDataListener(Runnable listener) throws IOException {
+        try {
+            port.addEventListener(event -> listener.run());
+        }
+        catch (SerialPortException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void write(byte[] data, int off, int len) throws IOException {
+        //jssc only writes whole arrays
+        byte[] out = (off == 0 && len == data.length)
+                ? data
+                : Arrays.copyOfRange(data, off, off + len);
+
+        try {
+            port.writeBytes(out);
+        }
+        catch (SerialPortException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void close() throws IOException {
+        //closed by both the context and the connect panel
+        if (!port.isOpened()) {
+            return;
+        }
+
+        try {
+            port.closePort();
+        }
+        catch (SerialPortException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.serial;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of link quality and throughput figures for the serial channel.
+ * <p>
+ * The Decoder reports framing: raw bytes read, packets and their bytes by
+ * message type, checksum failures, bytes discarded between packets, and
+ * headers that expired before a footer arrived. The SerialSendManager
+ * reports frames written, retransmits, messages given up on, and the round
+ * trip time of every confirmation. Anything else, such as queue depths, can
+ * be registered as a named gauge that is read when the metrics are shown.
+ * <p>
+ * Counters are cumulative; sample() turns them into per second rates and is
+ * run once a second after start(). Checksum failures, discarded bytes and
+ * retransmits point to the radio, while receive pipeline drops and queue
+ * latency point to the dashboard not keeping up.
+ */
+public class LinkMetrics {
+    public static final int TYPES = 16;
+    private static final long SAMPLE_PERIOD_MS = 1000;
+    //upper bounds of the round trip histogram buckets; the last is open
+    private static final long[] RTT_BOUNDS_MS = {5, 10, 20, 50, 100, 200, 500, 1000, 2000};
+
+    private final Logger seriallog = LoggerFactory.getLogger("d.serial");
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLongArray packets = new AtomicLongArray(TYPES);
+    private final AtomicLongArray packetBytes = new AtomicLongArray(TYPES);
+    private final AtomicLong checksumFailures = new AtomicLong();
+    private final AtomicLong discardedBytes = new AtomicLong();
+    private final AtomicLong expiredHeaders = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong retransmits = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLongArray rttBuckets = new AtomicLongArray(RTT_BOUNDS_MS.length + 1);
+    private final AtomicLong rttCount = new AtomicLong();
+    private final AtomicLong rttTotalNanos = new AtomicLong();
+    private final AtomicLong rttMaxNanos = new AtomicLong();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+
+    //per second rates from the latest sample
+    private final long[] lastPackets = new long[TYPES];
+    private final long[] lastPacketBytes = new long[TYPES];
+    private final double[] packetRate = new double[TYPES];
+    private final double[] packetByteRate = new double[TYPES];
+    private long lastBytesRead;
+    private long lastBytesSent;
+    private double readRate;
+    private double sendRate;
+    private long lastSampleNanos = System.nanoTime();
+    private Timer timer;
+
+    /**
+     * Start computing rates once a second
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+
+        timer = new Timer("link-metrics", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                sample(System.nanoTime());
+            }
+        }, SAMPLE_PERIOD_MS, SAMPLE_PERIOD_MS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    //---------------------------Receive side-----------------------------------
+
+    public void recordBytesRead(int count) {
+        bytesRead.addAndGet(count);
+    }
+
+    /**
+     * @param label      - the packet's label byte
+     * @param frameBytes - the packet's length including header and footer
+     */
+    public void recordPacket(byte label, int frameBytes) {
+        int type = Serial.getMsgType(label);
+        packets.incrementAndGet(type);
+        packetBytes.addAndGet(type, frameBytes);
+    }
+
+    public void recordChecksumFailure() {
+        checksumFailures.incrementAndGet();
+    }
+
+    public void recordDiscarded(long bytes) {
+        discardedBytes.addAndGet(bytes);
+    }
+
+    public void recordExpiredHeaders(int count) {
+        expiredHeaders.addAndGet(count);
+    }
+
+    //-----------------------------Send side------------------------------------
+
+    public void recordSent(int frames, int bytes) {
+        framesSent.addAndGet(frames);
+        bytesSent.addAndGet(bytes);
+    }
+
+    public void recordRetransmit() {
+        retransmits.incrementAndGet();
+    }
+
+    public void recordSendFailure() {
+        sendFailures.incrementAndGet();
+    }
+
+    /**
+     * @param nanos - time from a message's only send to its confirmation
+     */
+    public void recordRoundTrip(long nanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < RTT_BOUNDS_MS.length && ms >= RTT_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+
+        rttBuckets.incrementAndGet(bucket);
+        rttCount.incrementAndGet();
+        rttTotalNanos.addAndGet(nanos);
+        rttMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    //------------------------------Gauges--------------------------------------
+
+    /**
+     * Register a figure that is read whenever the metrics are shown or dumped
+     *
+     * @param name  - label for the figure; replaces any gauge of the same name
+     * @param value - supplies the current value
+     */
+    public synchronized void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return - every registered gauge's current value, in registration order
+     */
+    public synchronized Map<String, Long> readGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    //------------------------------Sampling------------------------------------
+
+    /**
+     * Turn the counters into per second rates over the time since the last
+     * sample
+     *
+     * @param now - the current System.nanoTime
+     */
+    public synchronized void sample(long now) {
+        double seconds = (now - lastSampleNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+        lastSampleNanos = now;
+
+        for (int i = 0; i < TYPES; i++) {
+            long count = packets.get(i);
+            long bytes = packetBytes.get(i);
+            packetRate[i] = (count - lastPackets[i]) / seconds;
+            packetByteRate[i] = (bytes - lastPacketBytes[i]) / seconds;
+            lastPackets[i] = count;
+            lastPacketBytes[i] = bytes;
+        }
+
+        long read = bytesRead.get();
+        long sent = bytesSent.get();
+        readRate = (read - lastBytesRead) / seconds;
+        sendRate = (sent - lastBytesSent) / seconds;
+        lastBytesRead = read;
+        lastBytesSent = sent;
+    }
+
+    public synchronized double getPacketRate(int type) {
+        return packetRate[type];
+    }
+
+    public synchronized double getPacketByteRate(int type) {
+        return packetByteRate[type];
+    }
+
+    public synchronized double getReadRate() {
+        return readRate;
+    }
+
+    public synchronized double getSendRate() {
+        return sendRate;
+    }
+
+    //------------------------------Counters------------------------------------
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getPacketCount(int type) {
+        return packets.get(type);
+    }
+
+    public long getChecksumFailures() {
+        return checksumFailures.get();
+    }
+
+    public long getDiscardedBytes() {
+        return discardedBytes.get();
+    }
+
+    public long getExpiredHeaders() {
+        return expiredHeaders.get();
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getRetransmits() {
+        return retransmits.get();
+    }
+
+    public long getSendFailures() {
+        return sendFailures.get();
+    }
+
+    public long getRoundTripCount() {
+        return rttCount.get();
+    }
+
+    public long getAverageRoundTripNanos() {
+        long count = rttCount.get();
+        return (count == 0) ? 0 : rttTotalNanos.get() / count;
+    }
+
+    public long getMaxRoundTripNanos() {
+        return rttMaxNanos.get();
+    }
+
+    /**
+     * @return - round trip counts per bucket; bucket i holds times below
+     * getRoundTripBounds()[i] ms, and the last bucket everything longer
+     */
+    public long[] getRoundTripHistogram() {
+        long[] counts = new long[rttBuckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = rttBuckets.get(i);
+        }
+        return counts;
+    }
+
+    public static long[] getRoundTripBounds() {
+        return RTT_BOUNDS_MS.clone();
+    }
+
+    //-------------------------------Output-------------------------------------
+
+    /**
+     * Write a plain text report of every figure
+     */
+    public void dump(PrintWriter out) {
+        out.println("Link metrics " + new SimpleDateFormat(
+                "yyyy-MM-dd HH:mm:ss").format(new Date()));
+
+        out.printf("  read %d bytes (%.0f B/s), discarded %d bytes%n",
+                getBytesRead(), getReadRate(), getDiscardedBytes());
+        out.printf("  checksum failures %d, expired headers %d%n",
+                getChecksumFailures(), getExpiredHeaders());
+        for (int i = 0; i < TYPES; i++) {
+            if (getPacketCount(i) == 0) {
+                continue;
+            }
+            out.printf("  type %d: %d packets (%.1f/s, %.0f B/s)%n", i,
+                    getPacketCount(i), getPacketRate(i), getPacketByteRate(i));
+        }
+
+        out.printf("  sent %d frames, %d bytes (%.0f B/s)%n",
+                getFramesSent(), getBytesSent(), getSendRate());
+        out.printf("  retransmits %d, gave up %d%n", getRetransmits(), getSendFailures());
+        out.printf("  round trips %d, mean %.1f ms, max %.1f ms%n", getRoundTripCount(),
+                getAverageRoundTripNanos() / 1e6, getMaxRoundTripNanos() / 1e6);
+
+        long[] histogram = getRoundTripHistogram();
+        StringBuilder line = new StringBuilder("  round trip ms:");
+        for (int i = 0; i < histogram.length; i++) {
+            line.append(' ')
+                    .append(i < RTT_BOUNDS_MS.length ? "<" + RTT_BOUNDS_MS[i] : ">=" + RTT_BOUNDS_MS[i - 1])
+                    .append('=')
+                    .append(histogram[i]);
+        }
+        out.println(line);
+
+        for (Map.Entry<String, Long> gauge : readGauges().entrySet()) {
+            out.printf("  %s %d%n", gauge.getKey(), gauge.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * Append a report to the given file
+     *
+     * @return - true if the report was written
+     */
+    public boolean dump(File file) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            dump(out);
+            return !out.checkError();
+        }
+        catch (IOException ex) {
+            seriallog.error("Can't write link metrics to " + file, ex);
+            return false;
+        }
+    }
+}
@@ -27,6 +27,24 @@ class DataMessage extends Message {
         return (msgType == Serial.SETTING_DATA);
     }
 
+    @Override
+    public Priority getPriority() {
+        switch (msgType) {
+            case Serial.INFO_DATA:
+            case Serial.SENSOR_DATA:
+                return Priority.BACKGROUND;
+        }
+        return Priority.BULK;
+    }
+
+    @Override
+    public int getCoalesceKey() {
+        if (msgType == Serial.SETTING_DATA) {
+            return coalesceKey(content[1]);
+        }
+        return NO_COALESCE;
+    }
+
     @Override
     public String toString() {
         switch (msgType) {
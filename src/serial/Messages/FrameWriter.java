@@ -0,0 +1,82 @@
+package com.serial.Messages;
+
+import com.serial.Transport;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Collects the frames of several messages in a reused buffer so they can go
+ * out in one write. Slow USB serial adapters pay per write, not per byte.
+ * The buffer only grows, so once it has reached its working size adding
+ * and flushing frames does not allocate.
+ */
+public class FrameWriter {
+    private static final int INITIAL_SIZE = 256;
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private Message[] messages = new Message[16];
+    private int length;
+    private int count;
+
+    /**
+     * Queue a message's frame behind any already added
+     */
+    public void add(Message msg) {
+        int needed = length + msg.encodedLength();
+        if (needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+        }
+        if (count == messages.length) {
+            messages = Arrays.copyOf(messages, count * 2);
+        }
+
+        length += msg.encode(buffer, length);
+        messages[count++] = msg;
+    }
+
+    /**
+     * @return - the number of messages waiting to be flushed
+     */
+    public int pending() {
+        return count;
+    }
+
+    /**
+     * @return - the number of bytes waiting to be flushed
+     */
+    public int pendingBytes() {
+        return length;
+    }
+
+    /**
+     * Write every added frame in one write, mark their messages sent, and
+     * empty the buffer. Frames are dropped if the write fails.
+     */
+    public void flush(Transport port) throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        try {
+            port.write(buffer, 0, length);
+
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                messages[i].markSent(now);
+            }
+        }
+        finally {
+            clear();
+        }
+    }
+
+    /**
+     * Drop every added frame without writing it
+     */
+    public void clear() {
+        Arrays.fill(messages, 0, count, null);
+        count = 0;
+        length = 0;
+    }
+}
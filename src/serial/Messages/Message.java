@@ -1,19 +1,30 @@
 package com.serial.Messages;
 
 import com.map.Dot;
+import com.serial.Fletcher16;
+import com.serial.PacketView;
 import com.serial.Serial;
-import jssc.SerialPort;
-import jssc.SerialPortException;
+import com.serial.Transport;
 
-import java.util.Date;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public class Message {
+    public static final long MAX_CONFIRM_WAIT_NS =
+            TimeUnit.MILLISECONDS.toNanos(Serial.MAX_CONFIRM_WAIT_MS);
+    public static final int NO_COALESCE = -1;
+
     protected byte[] content;
-    protected byte[] checkPair;
+    //header, content, checksum and footer, encoded once so sends don't
+    //allocate or make a write per section
+    protected byte[] frame;
     protected int checkSum;
     protected int confirmSum;
     protected int failCount;
-    protected Date sent;
+    //System.nanoTime of the latest send
+    protected long sent;
+    //how long the latest send waits for a confirmation
+    protected long timeout = MAX_CONFIRM_WAIT_NS;
     protected boolean hasBeenSent;
 
     protected Message() { //subclasses must call buildChecksums after making content
@@ -111,20 +122,63 @@ public class Message {
         return new WordMessage(Serial.COMMAND_WORD, Serial.DISABLE_BUMPER_CMD, (byte) 0);
     }
 
+    /**
+     * Ask the rover for the digest of the mission it holds
+     */
+    public static Message requestDigest() {
+        return new WordMessage(Serial.DIGEST_WORD, (byte) 0, (byte) 0);
+    }
+
     public static Message resetSettings() {
         return new WordMessage(Serial.COMMAND_WORD, Serial.SETTINGS_RESET_CMD, (byte) 0);
     }
 
-    public void sendTime(Date date) {
-        sent = (Date) date.clone();
+    /**
+     * Record that this message's frame was written at the given time
+     *
+     * @param nanos - System.nanoTime of the write
+     */
+    public void markSent(long nanos) {
+        sent = nanos;
+        hasBeenSent = true;
     }
 
     public boolean isConfirmedBy(int confirmation) {
         return ((confirmation & 0xFFFF) == (confirmSum & 0xFFFF));
     }
 
-    public boolean isPastExpiration(Date now) {
-        return (now.getTime() - sent.getTime()) > Serial.MAX_CONFIRM_WAIT_MS;
+    /**
+     * @param now - the current System.nanoTime
+     */
+    public boolean isPastExpiration(long now) {
+        return (now - sent) > timeout;
+    }
+
+    /**
+     * Set how long the next send waits for a confirmation before it is
+     * overdue. Defaults to MAX_CONFIRM_WAIT_NS.
+     */
+    public void setTimeout(long nanos) {
+        timeout = nanos;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return - the System.nanoTime of the latest send
+     */
+    public long getSentTime() {
+        return sent;
+    }
+
+    /**
+     * @return - the System.nanoTime after which the latest send is overdue
+     * for a confirmation
+     */
+    public long getExpirationTime() {
+        return sent + timeout + 1;
     }
 
     public void addFailure() {
@@ -143,25 +197,61 @@ public class Message {
         return hasBeenSent;
     }
 
-    public void send(SerialPort port) throws SerialPortException {
-        port.writeBytes(Serial.HEADER);
-        port.writeBytes(content);
-        port.writeBytes(checkPair);
-        port.writeBytes(Serial.FOOTER);
-        sent = new Date();
-        hasBeenSent = true;
+    /**
+     * @return - the label byte, giving the message type and subtype
+     */
+    public byte getLabel() {
+        return content[0];
+    }
+
+    /**
+     * @return - a view of the label and content, as a decoder delivers them
+     */
+    public PacketView contentView() {
+        return PacketView.wrap(content);
     }
 
-    private byte[] concat(byte[] a, byte[] b) {
-        byte[] c = new byte[a.length + b.length];
-        System.arraycopy(a, 0, c, 0, a.length);
-        System.arraycopy(b, 0, c, a.length, b.length);
-        return c;
+    /**
+     * Write this message's frame in a single write
+     */
+    public void send(Transport port) throws IOException {
+        port.write(frame, 0, frame.length);
+        markSent(System.nanoTime());
+    }
+
+    /**
+     * @return - the number of bytes encode will write
+     */
+    public int encodedLength() {
+        return frame.length;
+    }
+
+    /**
+     * Copy this message's full frame into dest
+     *
+     * @param dest   - the buffer to write into
+     * @param offset - where in dest the frame starts
+     * @return - the number of bytes written
+     */
+    public int encode(byte[] dest, int offset) {
+        System.arraycopy(frame, 0, dest, offset, frame.length);
+        return frame.length;
     }
 
     protected void buildChecksum() {
-        checkPair = Serial.fletcher16bytes(content);
-        confirmSum = Serial.fletcher16(concat(content, checkPair)) & 0xffff;
+        int start = Serial.HEADER.length;
+        int end = start + content.length;
+        frame = new byte[end + 2 + Serial.FOOTER.length];
+
+        System.arraycopy(Serial.HEADER, 0, frame, 0, start);
+        System.arraycopy(content, 0, frame, start, content.length);
+        int sum = Fletcher16.calc(content, 0, content.length);
+        frame[end] = (byte) (sum >> 8);
+        frame[end + 1] = (byte) sum;
+        System.arraycopy(Serial.FOOTER, 0, frame, end + 2, Serial.FOOTER.length);
+
+        //confirmations carry the sum of the content and its checksum
+        confirmSum = Fletcher16.calc(frame, start, content.length + 2);
     }
 
     //these should be overridden
@@ -169,6 +259,37 @@ public class Message {
         return false;
     }
 
+    /**
+     * @return - the send lane this message is queued in
+     */
+    public Priority getPriority() {
+        return Priority.BULK;
+    }
+
+    /**
+     * Whether this message depends on the rover having applied every message
+     * sent before it, and every later message depends on it. A windowed
+     * sender won't overlap an ordered message with any other.
+     */
+    public boolean isOrdered() {
+        return false;
+    }
+
+    /**
+     * Messages sharing a coalesce key overwrite the same state on the rover,
+     * so a queued one that hasn't been sent yet can be replaced by a newer
+     * one.
+     *
+     * @return - the key built from type, subtype and index, or NO_COALESCE
+     */
+    public int getCoalesceKey() {
+        return NO_COALESCE;
+    }
+
+    protected int coalesceKey(byte index) {
+        return ((content[0] & 0xff) << 8) | (index & 0xff);
+    }
+
     @Override
     public String toString() {
         return "A message";
@@ -0,0 +1,16 @@
+package com.serial.Messages;
+
+/**
+ * Send priority classes, highest first. SerialSendManager queues each class
+ * in its own lane and always sends from the highest non-empty lane.
+ */
+public enum Priority {
+    //emergency stop and stop driving; never wait behind anything
+    SAFETY,
+    //driving commands such as target, looping and link sync
+    CONTROL,
+    //waypoint and setting transfers
+    BULK,
+    //heartbeats, version requests and other housekeeping
+    BACKGROUND
+}
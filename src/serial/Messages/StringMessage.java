@@ -18,6 +18,11 @@ class StringMessage extends Message {
         buildChecksum();
     }
 
+    @Override
+    public Priority getPriority() {
+        return Priority.BACKGROUND;
+    }
+
     @Override
     public String toString() {
         return "Message: \"" + str + "\"";
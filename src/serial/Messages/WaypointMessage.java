@@ -36,6 +36,25 @@ class WaypointMessage extends Message {
         return true;
     }
 
+    /**
+     * An add is put at an index that counts every add and delete before
+     * it, and the rover drops an add past the end of its list, so adds
+     * can't be overtaken or overlapped by a retransmit
+     */
+    @Override
+    public boolean isOrdered() {
+        return msgType == Serial.ADD_WAYPOINT;
+    }
+
+    @Override
+    public int getCoalesceKey() {
+        //adds shift the waypoints after them, so only alters can be merged
+        if (msgType == Serial.ALTER_WAYPOINT) {
+            return coalesceKey(waypointIndex);
+        }
+        return NO_COALESCE;
+    }
+
     @Override
     public String toString() {
         return "Waypoint " + waypointIndex + " Message";
@@ -28,6 +28,42 @@ public class WordMessage extends Message {
         return msgType == Serial.COMMAND_WORD;
     }
 
+    @Override
+    public Priority getPriority() {
+        if (msgType != Serial.COMMAND_WORD) {
+            return Priority.CONTROL;
+        }
+
+        switch (subType) {
+            case Serial.ESTOP_CMD:
+            case Serial.STOP_CMD:
+                return Priority.SAFETY;
+            case Serial.CLEAR_CMD:
+            case Serial.DELETE_CMD:
+            case Serial.SETTINGS_RESET_CMD:
+                return Priority.BULK;
+        }
+        return Priority.CONTROL;
+    }
+
+    //commands that change the waypoint list's shape, or refer to its indices
+    @Override
+    public boolean isOrdered() {
+        if (msgType != Serial.COMMAND_WORD) {
+            return false;
+        }
+
+        switch (subType) {
+            case Serial.TARGET_CMD:
+            case Serial.LOOPING_CMD:
+            case Serial.CLEAR_CMD:
+            case Serial.DELETE_CMD:
+            case Serial.SETTINGS_RESET_CMD:
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
         switch (msgType) {
@@ -35,6 +71,8 @@ public class WordMessage extends Message {
                 return "Confirmation Message";
             case Serial.SYNC_WORD:
                 return "Syncronization Message";
+            case Serial.DIGEST_WORD:
+                return "Mission Digest Request";
             case Serial.COMMAND_WORD:
                 return nameCommand(this.subType);
         }
@@ -0,0 +1,169 @@
+package com.serial;
+
+import com.map.Dot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The mission a rover holds, rebuilt by applying waypoint and waypoint list
+ * command messages in the order the rover would apply them. Waypoints are
+ * kept in their wire form, latitude, longitude and altitude exactly as a
+ * waypoint message carries them, so two models agree whenever the rover
+ * would see the same mission.
+ * <p>
+ * The mission digest is the CRC-32 of the waypoint count, as 2 bytes, then
+ * every waypoint's 10 wire bytes in order. Fletcher16 can't be used here:
+ * it works mod 255, so it can't tell a 0x00 byte from a 0xFF byte, which
+ * float and altitude bytes often differ by.
+ */
+public class MissionModel {
+    public static final int RECORD_LENGTH = 10;
+    /**
+     * Digest of an invalidated model, which matches no mission
+     */
+    public static final long NO_DIGEST = -1;
+
+    private final List<byte[]> records = new ArrayList<>();
+    private boolean looped;
+    private boolean valid = true;
+
+    /**
+     * Encode a waypoint the way waypoint messages carry it
+     */
+    public static byte[] encode(Dot dot) {
+        int lat = Float.floatToIntBits((float) dot.getLatitude());
+        int lon = Float.floatToIntBits((float) dot.getLongitude());
+        short alt = dot.getAltitude();
+
+        return new byte[]{
+                (byte) (lat >> 24), (byte) (lat >> 16), (byte) (lat >> 8), (byte) lat,
+                (byte) (lon >> 24), (byte) (lon >> 16), (byte) (lon >> 8), (byte) lon,
+                (byte) (alt >> 8), (byte) alt};
+    }
+
+    /**
+     * @return - true if the label is of a message that can change a mission
+     */
+    public static boolean affectsMission(byte label) {
+        int type = Serial.getMsgType(label);
+        return type == Serial.WAYPOINT_TYPE
+                || (type == Serial.WORD_TYPE && Serial.getSubtype(label) == Serial.COMMAND_WORD);
+    }
+
+    /**
+     * Apply a message, given as its label and content without checksum, to
+     * the mission. Messages that don't change a mission are ignored, as are
+     * indices the rover would reject.
+     */
+    public synchronized void apply(PacketView msg) {
+        byte label = msg.get(0);
+        if (!affectsMission(label)) {
+            return;
+        }
+
+        if (Serial.getMsgType(label) == Serial.WAYPOINT_TYPE) {
+            if (msg.length() < RECORD_LENGTH + 2) {
+                return;
+            }
+
+            byte[] record = new byte[RECORD_LENGTH];
+            for (int i = 0; i < RECORD_LENGTH; i++) {
+                record[i] = msg.get(i + 1);
+            }
+            int index = msg.get(RECORD_LENGTH + 1) & 0xff;
+
+            switch (Serial.getSubtype(label)) {
+                case Serial.ADD_WAYPOINT:
+                    if (index <= records.size()) {
+                        records.add(index, record);
+                    }
+                    break;
+                case Serial.ALTER_WAYPOINT:
+                    if (index < records.size()) {
+                        records.set(index, record);
+                    }
+                    break;
+            }
+            return;
+        }
+
+        if (msg.length() < 3) {
+            return;
+        }
+
+        byte command = msg.get(1);
+        int arg = msg.get(2) & 0xff;
+        switch (command) {
+            case Serial.CLEAR_CMD:
+                //after a clear the mission is known again
+                records.clear();
+                valid = true;
+                break;
+            case Serial.DELETE_CMD:
+                if (arg < records.size()) {
+                    records.remove(arg);
+                }
+                break;
+            case Serial.LOOPING_CMD:
+                looped = (arg != 0);
+                break;
+        }
+    }
+
+    /**
+     * @return - the unsigned 32 bit mission digest, or NO_DIGEST if the
+     * model was invalidated
+     */
+    public synchronized long digest() {
+        if (!valid) {
+            return NO_DIGEST;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(records.size() >> 8);
+        crc.update(records.size());
+        for (byte[] record : records) {
+            crc.update(record, 0, RECORD_LENGTH);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Mark the model as no longer known to match the rover, until it is
+     * reset or a clear command is applied
+     */
+    public synchronized void invalidate() {
+        valid = false;
+    }
+
+    public synchronized boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Empty the mission and mark it valid again
+     */
+    public synchronized void reset() {
+        records.clear();
+        looped = false;
+        valid = true;
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public synchronized boolean isLooped() {
+        return looped;
+    }
+
+    /**
+     * @return - true if the waypoint at index has the given wire form
+     */
+    public synchronized boolean matches(int index, byte[] record) {
+        return index < records.size() && Arrays.equals(records.get(index), record);
+    }
+}
@@ -0,0 +1,299 @@
+package com.serial;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands decoded packets from the serial reader thread to a dedicated
+ * dispatch thread so slow packet handlers can't stall byte intake.
+ * <p>
+ * The reader stage (the thread calling Decoder.update) only frames packets
+ * and pushes them into a bounded, lock-free single producer/single consumer
+ * ring. The dispatch stage drains the ring and runs the real handlers. If the
+ * ring is full the newest packet is dropped and counted.
+ * <p>
+ * Packet bytes are copied into buffers owned by each queue slot, so queueing
+ * does not allocate once every slot has seen a packet of a given size.
+ * PacketViewReaders are handed a view of the slot buffer.
+ */
+public class PacketPipeline {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long IDLE_PARK_NS = 10_000_000L;
+    private static final int INITIAL_SLOT_SIZE = 32;
+
+    private final Logger seriallog = LoggerFactory.getLogger("d.serial");
+    private final Slot[] slots;
+    private final PacketView view = new PacketView();
+    private final int mask;
+    //next slot the producer will fill; written only by the reader stage
+    private final AtomicLong tail = new AtomicLong();
+    //next slot the consumer will drain; written only by the dispatch stage
+    private final AtomicLong head = new AtomicLong();
+
+    //reader stage statistics, written only by the producer
+    private volatile long dropped;
+    private volatile long readCount;
+    private volatile long readNanos;
+    private volatile long maxReadNanos;
+
+    //dispatch stage statistics, written only by the consumer
+    private volatile long dispatched;
+    private volatile long queueNanos;
+    private volatile long maxQueueNanos;
+    private volatile long handleNanos;
+    private volatile long maxHandleNanos;
+    private volatile int maxDepth;
+
+    private volatile Thread dispatcher;
+    private volatile boolean consumerParked;
+    private volatile boolean running;
+
+    public PacketPipeline() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - the maximum number of queued packets, rounded up to
+     *                 a power of two
+     */
+    public PacketPipeline(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new Slot[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Start the dispatch thread. Packets queued before this call are held
+     * until it is made.
+     */
+    public synchronized void start() {
+        if (dispatcher != null) {
+            return;
+        }
+
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "serial-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Stop the dispatch thread. Packets still queued are left in place.
+     */
+    public synchronized void stop() {
+        if (dispatcher == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatcher = null;
+    }
+
+    /**
+     * Wrap a reader so its claims are still made on the reader stage, but
+     * its handle calls are queued and run on the dispatch stage.
+     *
+     * @param reader - the reader whose packets should be pipelined
+     * @return - a reader to register with the Decoder in its place
+     */
+    public PacketReader wrap(PacketReader reader) {
+        return new PacketViewReader() {
+            public int claim(byte data) {
+                return reader.claim(data);
+            }
+
+            public void handle(PacketView packet) {
+                offer(reader, packet);
+            }
+        };
+    }
+
+    /**
+     * Record the time the reader stage spent pulling and framing bytes for
+     * one serial event.
+     *
+     * @param nanos - duration of the read in nanoseconds
+     */
+    public void recordRead(long nanos) {
+        readCount++;
+        readNanos += nanos;
+        if (nanos > maxReadNanos) {
+            maxReadNanos = nanos;
+        }
+    }
+
+    private void offer(PacketReader reader, PacketView packet) {
+        long t = tail.get();
+
+        if ((t - head.get()) > mask) {
+            dropped++;
+            return;
+        }
+
+        Slot s = slots[(int) (t & mask)];
+        int len = packet.length();
+        if (s.data.length < len) {
+            s.data = new byte[Math.max(len, s.data.length * 2)];
+        }
+        packet.copyTo(s.data, 0);
+        s.length = len;
+        s.reader = reader;
+        s.queuedAt = System.nanoTime();
+        //full volatile write so the parked check below can't be reordered
+        //ahead of publishing the slot
+        tail.set(t + 1);
+
+        if (consumerParked) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            if (!drain()) {
+                consumerParked = true;
+                if (head.get() == tail.get() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NS);
+                }
+                consumerParked = false;
+            }
+        }
+    }
+
+    /**
+     * Run the handlers for every packet currently queued.
+     *
+     * @return - false if the queue was empty
+     */
+    boolean drain() {
+        long h = head.get();
+        long t = tail.get();
+
+        if (h == t) {
+            return false;
+        }
+
+        int depth = (int) (t - h);
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+
+        for (; h < t; h++) {
+            Slot s = slots[(int) (h & mask)];
+            PacketReader reader = s.reader;
+            long start = System.nanoTime();
+            long waited = start - s.queuedAt;
+
+            try {
+                if (reader instanceof PacketViewReader) {
+                    view.set(s.data, 0, s.length, -1);
+                    ((PacketViewReader) reader).handle(view);
+                }
+                else {
+                    reader.handle(Arrays.copyOf(s.data, s.length));
+                }
+            }
+            catch (Exception e) {
+                seriallog.error("Packet handler failed", e);
+            }
+
+            //release the slot only once its buffer is no longer being read
+            s.reader = null;
+            head.lazySet(h + 1);
+
+            long took = System.nanoTime() - start;
+            dispatched++;
+            queueNanos += waited;
+            handleNanos += took;
+            if (waited > maxQueueNanos) {
+                maxQueueNanos = waited;
+            }
+            if (took > maxHandleNanos) {
+                maxHandleNanos = took;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return - the number of packets waiting for dispatch
+     */
+    public int getQueueDepth() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return - the deepest the queue has been seen by the dispatch stage
+     */
+    public int getMaxQueueDepth() {
+        return maxDepth;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return - packets dropped because the queue was full
+     */
+    public long getDropCount() {
+        return dropped;
+    }
+
+    /**
+     * @return - packets handed to their handler
+     */
+    public long getDispatchCount() {
+        return dispatched;
+    }
+
+    public long getAverageReadNanos() {
+        long count = readCount;
+        return (count == 0) ? 0 : readNanos / count;
+    }
+
+    public long getMaxReadNanos() {
+        return maxReadNanos;
+    }
+
+    public long getAverageQueueNanos() {
+        long count = dispatched;
+        return (count == 0) ? 0 : queueNanos / count;
+    }
+
+    public long getMaxQueueNanos() {
+        return maxQueueNanos;
+    }
+
+    public long getAverageHandleNanos() {
+        long count = dispatched;
+        return (count == 0) ? 0 : handleNanos / count;
+    }
+
+    public long getMaxHandleNanos() {
+        return maxHandleNanos;
+    }
+
+    private static class Slot {
+        PacketReader reader;
+        byte[] data = new byte[INITIAL_SLOT_SIZE];
+        int length;
+        long queuedAt;
+    }
+}
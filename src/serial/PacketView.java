@@ -0,0 +1,87 @@
+package com.serial;
+
+/**
+ * A read-only window onto packet bytes that live in someone else's buffer,
+ * such as the Decoder's ring. Views handed to a PacketViewReader are reused
+ * for the next packet, so a reader that wants to keep the data must copy it
+ * out with toArray or copyTo before returning.
+ */
+public class PacketView {
+    private byte[] array;
+    private int offset;
+    private int length;
+    //indices are masked into the backing array; -1 for a flat array
+    private int mask;
+
+    PacketView() {
+        this(new byte[0], 0, 0, -1);
+    }
+
+    PacketView(byte[] array, int offset, int length, int mask) {
+        set(array, offset, length, mask);
+    }
+
+    /**
+     * Create a view over an entire plain array
+     */
+    public static PacketView wrap(byte[] data) {
+        return new PacketView(data, 0, data.length, -1);
+    }
+
+    void set(byte[] array, int offset, int length, int mask) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+        this.mask = mask;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param index - position within the packet, from 0 to length()-1
+     */
+    public byte get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Packet index " + index
+                    + " out of range for length " + length);
+        }
+        return array[(offset + index) & mask];
+    }
+
+    /**
+     * Read a big endian int starting at index
+     */
+    public int getInt(int index) {
+        return (((get(index) & 0xff) << 24) |
+                ((get(index + 1) & 0xff) << 16) |
+                ((get(index + 2) & 0xff) << 8) |
+                ((get(index + 3) & 0xff)));
+    }
+
+    /**
+     * Read a big endian IEEE float starting at index
+     */
+    public float getFloat(int index) {
+        return Float.intBitsToFloat(getInt(index));
+    }
+
+    /**
+     * Copy the viewed bytes into dest starting at destOffset
+     */
+    public void copyTo(byte[] dest, int destOffset) {
+        for (int i = 0; i < length; i++) {
+            dest[destOffset + i] = array[(offset + i) & mask];
+        }
+    }
+
+    /**
+     * @return - a new array holding a copy of the viewed bytes
+     */
+    public byte[] toArray() {
+        byte[] copy = new byte[length];
+        copyTo(copy, 0);
+        return copy;
+    }
+}
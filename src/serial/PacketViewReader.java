@@ -0,0 +1,17 @@
+package com.serial;
+
+/**
+ * A PacketReader that accepts packets as a reusable PacketView instead of a
+ * freshly copied array. The view is only valid for the duration of the call.
+ */
+public interface PacketViewReader extends PacketReader {
+    /**
+     * When a claimed packet has finished transmitting, a view of it will be
+     * passed to handle. Call packet.toArray() to retain the data.
+     */
+    void handle(PacketView packet);
+
+    default void handle(byte[] data) {
+        handle(PacketView.wrap(data));
+    }
+}
@@ -0,0 +1,125 @@
+package com.serial;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates how long to wait for a confirmation before resending, from the
+ * round trip times measured on the current connection. Follows TCP's
+ * retransmit timer (RFC 6298): a smoothed round trip plus four times its
+ * mean deviation. The timeout is shared by every message; each pass that
+ * finds a confirmation missed doubles it once, and resends wait the backed
+ * off timeout, until the next measured round trip replaces it.
+ * <p>
+ * Until the first round trip is measured the timeout is
+ * Serial.MAX_CONFIRM_WAIT_MS. The number of resends before giving up on a
+ * message is set from each measured timeout, so that the doubling waits
+ * add up to at least as long as the fixed MAX_FAILURES resends of
+ * MAX_CONFIRM_WAIT_MS used to allow: a fast link retries more often, a
+ * slow one waits longer per try.
+ */
+public class RttEstimator {
+    public static final long INITIAL_RTO_NS =
+            TimeUnit.MILLISECONDS.toNanos(Serial.MAX_CONFIRM_WAIT_MS);
+    public static final long MIN_RTO_NS = TimeUnit.MILLISECONDS.toNanos(50);
+    public static final long MAX_RTO_NS = TimeUnit.MILLISECONDS.toNanos(5000);
+    //time a message is retried for before it is given up on
+    public static final long GIVE_UP_NS = INITIAL_RTO_NS * (Serial.MAX_FAILURES + 1);
+    private static final int MAX_RESENDS = 8;
+    private static final long GRANULARITY_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long srtt;
+    private long rttvar;
+    private long rto = INITIAL_RTO_NS;
+    private int failureLimit = Serial.MAX_FAILURES;
+    private long samples;
+
+    /**
+     * Forget every measurement, as for a new connection
+     */
+    public void reset() {
+        srtt = 0;
+        rttvar = 0;
+        samples = 0;
+        updateTimeout(INITIAL_RTO_NS);
+    }
+
+    /**
+     * Add a round trip measured from a message sent only once
+     *
+     * @param nanos - time from the send to its confirmation
+     */
+    public void addSample(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        if (samples == 0) {
+            srtt = nanos;
+            rttvar = nanos / 2;
+        }
+        else {
+            rttvar = (3 * rttvar + Math.abs(srtt - nanos)) / 4;
+            srtt = (7 * srtt + nanos) / 8;
+        }
+        samples++;
+
+        updateTimeout(srtt + Math.max(GRANULARITY_NS, 4 * rttvar));
+    }
+
+    /**
+     * Double the timeout after a confirmation was missed; call once per
+     * pass that finds any missed, before resending. Resent messages give no
+     * samples, so without this a link slower than the timeout would never
+     * be measured. The next sample replaces the backed off value. The
+     * resend limit is left as the last measurement set it, since the waits
+     * it was worked out from already double.
+     */
+    public void backoff() {
+        rto = clamp(rto * 2);
+    }
+
+    private static long clamp(long timeout) {
+        return Math.min(MAX_RTO_NS, Math.max(MIN_RTO_NS, timeout));
+    }
+
+    private void updateTimeout(long timeout) {
+        rto = clamp(timeout);
+
+        //resend until the doubling waits add up to the give up time
+        long waited = 0;
+        long wait = rto;
+        int resends = 0;
+        while (waited < GIVE_UP_NS && resends <= MAX_RESENDS) {
+            waited += wait;
+            wait = clamp(wait * 2);
+            resends++;
+        }
+        failureLimit = Math.max(Serial.MAX_FAILURES, Math.min(MAX_RESENDS, resends - 1));
+    }
+
+    /**
+     * @return - resends allowed before a message is given up on
+     */
+    public int getFailureLimit() {
+        return failureLimit;
+    }
+
+    /**
+     * @return - how long to wait for a confirmation after a send or resend
+     */
+    public long getTimeoutNanos() {
+        return rto;
+    }
+
+    public long getSmoothedRttNanos() {
+        return srtt;
+    }
+
+    public long getRttVarianceNanos() {
+        return rttvar;
+    }
+
+    public long getSampleCount() {
+        return samples;
+    }
+}
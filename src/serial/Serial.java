@@ -17,6 +17,7 @@ public class Serial {
     public static final int SETTING_DATA = 0x1;
     public static final int SENSOR_DATA = 0x2;
     public static final int INFO_DATA = 0x3;
+    public static final int TELEMETRY_BATCH = 0x4;
 
     //Sensor Types
     public static final int OBJDETECT_SONIC = 0x0;
@@ -35,6 +36,7 @@ public class Serial {
     public static final int SYNC_WORD = 0x1;
     public static final int COMMAND_WORD = 0x2;
     public static final int STATE_WORD = 0x3;
+    public static final int DIGEST_WORD = 0x4;
 
     //String type
     public static final int ERROR_STRING = 0x0;
@@ -116,6 +118,8 @@ public class Serial {
     public static final int MAX_WAYPOINTS = 64;
     public static final int MAX_SETTINGS = 64;
     public static final int MAX_TELEMETRY = 256;
+    //(index, float) pairs in one telemetry batch packet
+    public static final int MAX_TELEMETRY_BATCH = 32;
 
     public static final int BAUD = SerialPort.BAUDRATE_57600;
     public static final int U16_FIXED_POINT = 256;
@@ -127,27 +131,8 @@ public class Serial {
     public static final byte[] FOOTER = {(byte) 0x9A};
 
     public static byte[] fletcher16bytes(byte[] message, int length) {
-        int iterator = 0;
-        int aSum = 0xff;
-        int bSum = 0xff;
-        short tmp;
-
-        while (length > 0) {
-            int tlen = (length > 359) ? 359 : length;
-            length -= tlen;
-
-            do {
-                bSum += aSum += (message[iterator++] & 0xff);
-            } while (--tlen > 0);
-
-            aSum = (aSum & 0xff) + (aSum >> 8);
-            bSum = (bSum & 0xff) + (bSum >> 8);
-        }
-
-        aSum = (aSum & 0xff) + (aSum >> 8);
-        bSum = (bSum & 0xff) + (bSum >> 8);
-
-        return new byte[]{(byte) bSum, (byte) aSum};
+        int sum = Fletcher16.calc(message, 0, length);
+        return new byte[]{(byte) (sum >> 8), (byte) sum};
     }
 
     public static byte[] fletcher16bytes(byte[] message) {
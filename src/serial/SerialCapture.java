@@ -0,0 +1,144 @@
+package com.serial;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only recorder of raw received serial bytes. Every chunk read from
+ * the port is written with the time since the previous chunk, so a session
+ * can be replayed byte for byte, with its original timing, by a
+ * CaptureInputStream.
+ * <p>
+ * File layout: the 4 byte magic "MSC1" and an 8 byte wall clock start time in
+ * milliseconds, then records of [varint microseconds since previous record]
+ * [varint length][length raw bytes]. Further sessions appended to an existing
+ * file skip the file header and start with a session marker instead: a
+ * record of length 0 followed by the session's 8 byte wall clock start time.
+ * Playback places the session at that time, so the gap between sessions is
+ * kept, and its first record's time counts from the marker.
+ */
+public class SerialCapture implements Closeable {
+    static final byte[] MAGIC = {'M', 'S', 'C', '1'};
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NS = 1_000_000_000L;
+
+    private final Logger iolog = LoggerFactory.getLogger("d.io");
+    private final DataOutputStream out;
+    private final LongSupplier nanoTime;
+    private boolean failed;
+    private long lastRecordNs;
+    private long lastFlushNs;
+
+    /**
+     * Open a capture file, creating it if needed and appending to it if it
+     * already holds a capture
+     */
+    public SerialCapture(File file) throws IOException {
+        this(file, System.currentTimeMillis(), System::nanoTime);
+    }
+
+    /**
+     * @param startMillis - wall clock time the session starts at
+     * @param nanoTime    - source of System.nanoTime style record times
+     */
+    SerialCapture(File file, long startMillis, LongSupplier nanoTime) throws IOException {
+        this.nanoTime = nanoTime;
+        boolean fresh = !file.exists() || file.length() == 0;
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, true), BUFFER_SIZE));
+
+        if (fresh) {
+            out.write(MAGIC);
+            out.writeLong(startMillis);
+        }
+        else {
+            writeVarint(out, 0);
+            writeVarint(out, 0);
+            out.writeLong(startMillis);
+        }
+
+        lastRecordNs = nanoTime.getAsLong();
+        lastFlushNs = lastRecordNs;
+    }
+
+    /**
+     * Capture a chunk of received bytes, timestamped now. A write failure is
+     * logged once and ends the capture; it never disturbs the caller's read.
+     */
+    public synchronized void record(byte[] data, int off, int len) {
+        if (len <= 0 || failed) {
+            return;
+        }
+
+        try {
+            long now = nanoTime.getAsLong();
+            writeVarint(out, (now - lastRecordNs) / 1000L);
+            writeVarint(out, len);
+            out.write(data, off, len);
+            lastRecordNs = now;
+
+            //bound how much of a session a crash can lose without flushing
+            //every tiny read
+            if ((now - lastFlushNs) > FLUSH_INTERVAL_NS) {
+                out.flush();
+                lastFlushNs = now;
+            }
+        }
+        catch (IOException e) {
+            failed = true;
+            iolog.error("Serial capture stopped; write failed", e);
+        }
+    }
+
+    /**
+     * Wrap a receive stream so every byte read through it is also recorded
+     * here
+     */
+    public InputStream tee(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int data = in.read();
+                if (data != -1) {
+                    record(new byte[]{(byte) data}, 0, 1);
+                }
+                return data;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = in.read(b, off, len);
+                record(b, off, count);
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -32,6 +32,7 @@ public class SerialConnectPanel extends JPanel {
     private static final String BUTTON_DISCONNECTING = "Disabling ";
     private static final String BUTTON_DISCONNECTED = " Connect  ";
     private final boolean showBaudPanel = false;
+    private boolean showSimulator = false;
     private final SerialEventListener listener;
     private final JButton refreshButton;
     private final JButton connectButton;
@@ -39,7 +40,7 @@ public class SerialConnectPanel extends JPanel {
     private final JComboBox<BaudRate> baudSelect;
     private final Object lock = new Object();
     private int baudRate = Serial.BAUD;
-    private SerialPort connectedPort = null;
+    private Transport connectedPort = null;
     private boolean inProgress = false;
     Action refreshAction = new AbstractAction() {
         {
@@ -60,6 +61,16 @@ public class SerialConnectPanel extends JPanel {
     private final Runnable connectSerial = new Runnable() {
         public void run() {
             String portName = (String) dropDown.getSelectedItem();
+
+            if (showSimulator && SimulatedRover.PORT_NAME.equals(portName)) {
+                SimulatedRover rover = SimulatedRover.fromSystemProperties();
+                connectedPort = rover;
+                listener.connectionEstablished(rover);
+                rover.start();
+                connectDone();
+                return;
+            }
+
             String[] validNames = SerialPortList.getPortNames();
             boolean nameStillExists = false;
 
@@ -98,7 +109,7 @@ public class SerialConnectPanel extends JPanel {
                 return;
             }
 
-            connectedPort = serialPort;
+            connectedPort = new JsscTransport(serialPort);
             listener.connectionEstablished(serialPort);
             connectDone();
         }
@@ -108,7 +119,7 @@ public class SerialConnectPanel extends JPanel {
             listener.disconnectRequest();
 
             try {
-                connectedPort.closePort();
+                connectedPort.close();
             }
             catch (Exception e) {
                 e.printStackTrace();
@@ -167,6 +178,14 @@ public class SerialConnectPanel extends JPanel {
         baudSelect.setVisible(show);
     }
 
+    /**
+     * Offer a simulated rover alongside the real serial ports
+     */
+    public void showSimulator(boolean show) {
+        showSimulator = show;
+        refreshDropDown();
+    }
+
     private void connect() {
         synchronized (lock) {
             if (inProgress) {
@@ -231,6 +250,10 @@ public class SerialConnectPanel extends JPanel {
         for (String portName : portNames) {
             box.addItem(portName);
         }
+
+        if (showSimulator) {
+            box.addItem(SimulatedRover.PORT_NAME);
+        }
     }
 
     public void setEnabled(boolean shouldEnable) {
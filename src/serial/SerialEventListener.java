@@ -10,6 +10,15 @@ public interface SerialEventListener {
      */
     void connectionEstablished(SerialPort newConnection);
 
+    /**
+     * Fired when a link that isn't a serial port, such as the simulated
+     * rover, is connected. Listeners that need a real port can ignore it.
+     *
+     * @param newConnection The new Transport
+     */
+    default void connectionEstablished(Transport newConnection) {
+    }
+
     /**
      * Fired when the user makes a request to disconnect the serial port
      * The SerialPort object will be closed when all disconnect Requests
@@ -23,6 +23,16 @@ public class SerialInputStream extends InputStream {
         }
     }
 
+    @Override
+    public int available() throws IOException {
+        try {
+            return port.getInputBufferBytesCount();
+        }
+        catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
     public int read() throws IOException {
         try {
             if (port.getInputBufferBytesCount() > 0) {
@@ -36,4 +46,30 @@ public class SerialInputStream extends InputStream {
             throw new IOException(e);
         }
     }
+
+    /**
+     * Drain up to len bytes of whatever the OS has buffered in a single
+     * native read. Like read(), returns -1 if no bytes are waiting rather
+     * than blocking.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        try {
+            int count = Math.min(port.getInputBufferBytesCount(), len);
+            if (count <= 0) {
+                return -1;
+            }
+
+            byte[] data = port.readBytes(count);
+            System.arraycopy(data, 0, b, off, data.length);
+            return data.length;
+        }
+        catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
 }
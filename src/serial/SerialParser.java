@@ -5,27 +5,27 @@ import com.data.stateDescription.Description;
 import com.data.stateDescription.StateMap;
 import com.map.WaypointList;
 import com.serial.Messages.Message;
-import jssc.SerialPortEvent;
-import jssc.SerialPortEventListener;
-import jssc.SerialPortException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 import static com.map.WaypointList.WaypointListener;
 
-public class SerialParser implements SerialPortEventListener {
+public class SerialParser {
     private final Context context;
     private final WaypointList waypoints;
     private final CommsMonitor commsMonitor;
+    private final PacketPipeline pipeline = new PacketPipeline();
     private final Logger seriallog = LoggerFactory.getLogger("d.serial");
     private final Logger robotlog = LoggerFactory.getLogger("d.robot");
     private Decoder decoder;
+    private SerialCapture capture;
     private StateMap descriptionMap;
 
     public SerialParser(Context cxt, WaypointList waypoints) {
@@ -34,34 +34,85 @@ public class SerialParser implements SerialPortEventListener {
         commsMonitor = CommsMonitor.getInstance();
     }
 
-    public void serialEvent(SerialPortEvent event) {
+    /**
+     * Runs on the transport's event thread, which acts as the reader stage:
+     * it only frames packets and queues them for the dispatch thread.
+     */
+    public void dataAvailable() {
+        long start = System.nanoTime();
         decoder.update();
+        pipeline.recordRead(System.nanoTime() - start);
+    }
+
+    /**
+     * @return - the receive pipeline, for queue depth/drop/latency statistics
+     */
+    public PacketPipeline getPipeline() {
+        return pipeline;
     }
 
     public void updatePort() {
-        InputStream serial = new SerialInputStream(context.port());
-        Checksum check = new Checksum() {
-            public byte[] calc(byte[] plaintext) {
-                return Serial.fletcher16bytes(plaintext);
-            }
+        Transport transport = context.transport();
+        InputStream input = transport.getInputStream();
+        //a capture being played back is already on disk
+        if (!context.isPlayback()
+                && context.getCaptureSerialProp() && openCapture()) {
+            input = capture.tee(input);
+        }
 
-            public int length() {
-                return 2;
-            }
-        };
-        decoder = new Decoder(serial, Serial.HEADER, Serial.FOOTER, check);
-        decoder.addPacketReader(new DataReader());
-        decoder.addPacketReader(new WordReader());
-        decoder.addPacketReader(new StringReader());
+        decoder = createDecoder(input);
+        pipeline.start();
 
         try {
-            context.port().addEventListener(this);
+            transport.setDataListener(this::dataAvailable);
         }
-        catch (SerialPortException ex) {
+        catch (IOException ex) {
             seriallog.error("Error opening serial port", ex);
         }
     }
 
+    /**
+     * Stop capturing raw serial bytes for the port that is being closed
+     */
+    public void closePort() {
+        if (capture != null) {
+            try {
+                capture.close();
+            }
+            catch (IOException ex) {
+                seriallog.error("Error closing serial capture", ex);
+            }
+            capture = null;
+        }
+    }
+
+    //reconnects within one dashboard instance append to the same capture
+    private boolean openCapture() {
+        File file = new File("log/" + context.getInstanceLogName() + ".scap");
+        try {
+            capture = new SerialCapture(file);
+            return true;
+        }
+        catch (IOException ex) {
+            seriallog.error("Can't open serial capture " + file, ex);
+            capture = null;
+            return false;
+        }
+    }
+
+    /**
+     * Build a decoder for the given stream with this parser's readers
+     * registered through the receive pipeline
+     */
+    Decoder createDecoder(InputStream input) {
+        Decoder dec = new Decoder(input, Serial.HEADER, Serial.FOOTER, new Fletcher16());
+        dec.setMetrics(context.getLinkMetrics());
+        dec.addPacketReader(Serial.DATA_TYPE, pipeline.wrap(new DataReader()));
+        dec.addPacketReader(Serial.WORD_TYPE, pipeline.wrap(new WordReader()));
+        dec.addPacketReader(Serial.STRING_TYPE, pipeline.wrap(new StringReader()));
+        return dec;
+    }
+
 /*    private class WaypointReader implements PacketReader {
         public int claim(byte data) {
             if(Serial.getMsgType(data) == Serial.WAYPOINT_TYPE) return 255;
@@ -94,7 +145,11 @@ public class SerialParser implements SerialPortEventListener {
         }
     }*/
 
-    private class DataReader implements PacketReader {
+    private class DataReader implements PacketViewReader {
+        //reused for every telemetry batch; only the dispatch thread reads
+        private final int[] batchIds = new int[Serial.MAX_TELEMETRY_BATCH];
+        private final float[] batchValues = new float[Serial.MAX_TELEMETRY_BATCH];
+
         public int claim(byte data) {
             if (Serial.getMsgType(data) == Serial.DATA_TYPE) {
                 return 255;
@@ -104,40 +159,36 @@ public class SerialParser implements SerialPortEventListener {
             }
         }
 
-        public void handle(byte[] msg) {
-            int subtype = Serial.getSubtype(msg[0]);
-            int index = msg[1];
+        public void handle(PacketView msg) {
+            int subtype = Serial.getSubtype(msg.get(0));
+            //ids run to MAX_TELEMETRY, so the index byte is unsigned
+            int index = msg.get(1) & 0xff;
 
-            int tempdata;
             float data;
 
             switch (subtype) {
                 case Serial.TELEMETRY_DATA:
-                    tempdata = (((msg[2] & 0xff) << 24) |
-                            ((msg[3] & 0xff) << 16) |
-                            ((msg[4] & 0xff) << 8) |
-                            ((msg[5] & 0xff)));
-                    data = Float.intBitsToFloat(tempdata);
+                    data = msg.getFloat(2);
                     context.setTelemetry(index, data);
                     break;
 
+                case Serial.TELEMETRY_BATCH:
+                    readBatch(msg);
+                    break;
+
                 case Serial.SETTING_DATA:
-                    tempdata = (((msg[2] & 0xff) << 24) |
-                            ((msg[3] & 0xff) << 16) |
-                            ((msg[4] & 0xff) << 8) |
-                            ((msg[5] & 0xff)));
-                    data = Float.intBitsToFloat(tempdata);
+                    data = msg.getFloat(2);
                     context.setSettingQuiet(index, data);
                     break;
 
                 case Serial.SENSOR_DATA:
                     int sensorVal = 0;
-                    int sensorSubtype = msg[1];
-                    int sensorIndex = msg[2];
+                    int sensorSubtype = msg.get(1);
+                    int sensorIndex = msg.get(2);
                     int[] sensorData = new int[2];
 
-                    sensorData[0] = (msg[3] & 0xff);
-                    sensorData[1] = (msg[4] & 0xff);
+                    sensorData[0] = (msg.get(3) & 0xff);
+                    sensorData[1] = (msg.get(4) & 0xff);
                     for (int val : sensorData) {
                         sensorVal = (sensorVal << 8) | val;
                     }
@@ -161,20 +212,20 @@ public class SerialParser implements SerialPortEventListener {
                     }
                     break;
                 case Serial.INFO_DATA:
-                    int infoSubtype = msg[1];
+                    int infoSubtype = msg.get(1);
 
                     switch (infoSubtype) {
                         case Serial.APM_VERSION:
-                            int versionMajor = msg[2];
-                            int versionMinor = msg[3];
-                            int versionRev = msg[4];
+                            int versionMajor = msg.get(2);
+                            int versionMinor = msg.get(3);
+                            int versionRev = msg.get(4);
 
                             context.setAPMVersion(String.format("%d.%d.%d",
                                     versionMajor, versionMinor, versionRev));
                             break;
 
                         case Serial.HEARTBEAT:
-                            int pulse = msg[2];
+                            int pulse = msg.get(2);
 
                             commsMonitor.receiveHeartbeatPulse(pulse);
                             break;
@@ -189,9 +240,26 @@ public class SerialParser implements SerialPortEventListener {
                     break;
             }
         }
+
+        //count, then count (index, float) pairs, applied as one update
+        private void readBatch(PacketView msg) {
+            int count = msg.get(1) & 0xff;
+            if (count > Serial.MAX_TELEMETRY_BATCH || msg.length() != 2 + count * 5) {
+                seriallog.error("SerialParser - Malformed telemetry batch of "
+                        + msg.length() + " bytes");
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int pos = 2 + i * 5;
+                batchIds[i] = msg.get(pos) & 0xff;
+                batchValues[i] = msg.getFloat(pos + 1);
+            }
+            context.setTelemetry(batchIds, batchValues, count);
+        }
     }
 
-    private class WordReader implements PacketReader {
+    private class WordReader implements PacketViewReader {
         public int claim(byte data) {
             if (Serial.getMsgType(data) == Serial.WORD_TYPE) {
                 return 255;
@@ -201,12 +269,18 @@ public class SerialParser implements SerialPortEventListener {
             }
         }
 
-        public void handle(byte[] msg) {
-            int subtype = Serial.getSubtype(msg[0]);
-            byte a = (byte) (msg[1] & 0xff);
-            byte b = (byte) (msg[2] & 0xff);
+        public void handle(PacketView msg) {
+            int subtype = Serial.getSubtype(msg.get(0));
+            byte a = (byte) (msg.get(1) & 0xff);
+            byte b = (byte) (msg.get(2) & 0xff);
             int join = (((a << 8) & 0xFF00) | (b & 0xFF));
 
+            //a recording's requests and confirmations were for the link it
+            //was made on; answering them would act on this one
+            if (context.isPlayback() && answersLink(subtype)) {
+                return;
+            }
+
             switch (subtype) {
                 case Serial.CONFIRMATION:
                     SerialSendManager.getInstance().addConfirmToQueue(join);
@@ -218,16 +292,26 @@ public class SerialParser implements SerialPortEventListener {
                                 Message.syncMessage(Serial.SYNC_RESPOND));
                     }
 
-                    SerialSendManager.getInstance().sendWaypointList(waypoints);
+                    context.getWaypointSync().resync();
                 }
                 break;
 
+                case Serial.DIGEST_WORD:
+                    //a reply too short to hold the digest is malformed
+                    context.getWaypointSync().digestReceived((msg.length() >= 5)
+                            ? msg.getInt(1) & 0xFFFFFFFFL
+                            : MissionModel.NO_DIGEST);
+                    break;
+
                 case Serial.COMMAND_WORD:
                     if (a == Serial.TARGET_CMD) {
                         if (b < 0 || b >= waypoints.size()) {
-                            seriallog.error("Rover transmitted inconsistent target; resyncing");
+                            //a recording can't be resynced
+                            if (!context.isPlayback()) {
+                                seriallog.error("Rover transmitted inconsistent target; resyncing");
 
-                            SerialSendManager.getInstance().sendWaypointList(waypoints);
+                                context.getWaypointSync().resync();
+                            }
                         }
                         else {
                             waypoints.setTarget(b, WaypointListener.Source.REMOTE);
@@ -241,9 +325,16 @@ public class SerialParser implements SerialPortEventListener {
                     break;
             }
         }
+
+        private boolean answersLink(int subtype) {
+            return subtype == Serial.CONFIRMATION
+                    || subtype == Serial.SYNC_WORD
+                    || subtype == Serial.DIGEST_WORD;
+        }
     }
 
-    private class StringReader implements PacketReader {
+    private class StringReader implements PacketViewReader {
+        private final StringBuilder text = new StringBuilder();
         private StateMap sm;
         {
             String dbName = context.getResource("stateDescriptions");
@@ -280,12 +371,15 @@ public class SerialParser implements SerialPortEventListener {
             }
         }
 
-        public void handle(byte[] msg) {
-            int subtype = Serial.getSubtype(msg[0]);
-            byte[] buff = new byte[msg.length - 1];
-            System.arraycopy(msg, 1, buff, 0, msg.length - 1);
-            String data = new String(buff, StandardCharsets.US_ASCII);
-            robotlog.info(format(data));
+        public void handle(PacketView msg) {
+            int subtype = Serial.getSubtype(msg.get(0));
+            text.setLength(0);
+            for (int i = 1; i < msg.length(); i++) {
+                byte c = msg.get(i);
+                //decode as US-ASCII would, without copying the packet
+                text.append((c >= 0) ? (char) c : '\uFFFD');
+            }
+            robotlog.info(format(text.toString()));
         }
     }
 }
@@ -3,12 +3,15 @@ package com.serial;
 import com.Context;
 import com.map.Dot;
 import com.map.WaypointList;
+import com.serial.Messages.FrameWriter;
 import com.serial.Messages.Message;
-import jssc.SerialPortException;
+import com.serial.Messages.Priority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Chris Park @ Infinetix Corp.
@@ -17,31 +20,54 @@ import java.util.*;
  */
 public class SerialSendManager {
     //Constants
-    private static final int SERVICE_TIMER_INIT_MS = 1000;
-    private static final int SERVICE_TIMER_PERIOD_MS = 100;
-    //Timer Task Vars
+    //Delay before the first send after a connection, letting the port settle
+    private static final long STARTUP_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(1000);
+    //Sender Thread Vars
     private static final Object lock = new Object();
     private static SerialSendManager smInstance = null;
     //Reference to the application context
     private final Context context;
-    //Sender tracked Queues/Lists
-    private final Queue<Message> messageQueue;
-    private final LinkedList<Integer> confirmationQueue;
+    //Sender tracked Queues/Lists, one queue lane per Priority
+    private final Lane[] lanes;
+    //Sequence numbers of queued ordered messages, oldest first
+    private final ArrayDeque<Long> orderedSeqs = new ArrayDeque<>();
+    //Queued messages a newer one with the same coalesce key may replace
+    private final HashMap<Integer, Queued> coalescable = new HashMap<>();
+    //Sent messages still waiting for a confirmation, keyed by confirm sum
+    private final LinkedHashMap<Integer, Message> inFlight;
+    //Frames to write at the end of the current service pass
+    private final FrameWriter writer = new FrameWriter();
+    //Confirmation round trips on this connection, setting resend timeouts
+    private final RttEstimator rtt = new RttEstimator();
+    //The mission the rover will hold once everything queued is confirmed
+    private final MissionModel missionShadow = new MissionModel();
     //Logger
     private final Logger seriallog = LoggerFactory.getLogger("d.serial");
-    private Timer serviceTimer;
+    private Thread sender;
+    private boolean running;
+    //Delay before the first send, shortened by tests
+    private long startupDelayNs = STARTUP_DELAY_NS;
+    //Confirm required messages allowed in flight at once; 1 is stop-and-wait
+    private int windowSize = 1;
+    //Ordered messages currently in flight
+    private int orderedInFlight;
+    //Sequence number given to the next queued message
+    private long nextSeq;
 
     //--------------Singleton Construction/Initiation Functions-----------------
 
     /**
-     * Private Constructor
+     * Class Constructor. Outside of tests the one instance is made by init().
      *
      * @param ctx - the application context
      */
-    private SerialSendManager(Context ctx) {
+    SerialSendManager(Context ctx) {
         context = ctx;
-        messageQueue = new LinkedList<>();
-        confirmationQueue = new LinkedList<>();
+        inFlight = new LinkedHashMap<>();
+        lanes = new Lane[Priority.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
     }
 
     /**
@@ -75,129 +101,521 @@ public class SerialSendManager {
         return smInstance;
     }
 
-    //-------------------Timer Task/Queue Service Functions---------------------
+    //----------------------Sender Thread/Queue Service-------------------------
 
     /**
-     * Initialize, define, and start the timer task that services the
-     * serial queue
+     * Body of the sender thread. Runs a service pass whenever a message or
+     * confirmation arrives, or a retransmit deadline passes, and otherwise
+     * sleeps. An interrupt ends it as stop() would, leaving the queues for
+     * the next start().
      */
-    private void initQueueServiceTask() {
-        TimerTask queueTask = new TimerTask() {
+    private void senderLoop() {
+        synchronized (lock) {
+            //messages queued during startup are held until it ends
+            long startAt = System.nanoTime() + startupDelayNs;
+            while (running && (startAt - System.nanoTime()) > 0) {
+                awaitUntil(startAt);
+            }
 
-            @Override
-            public void run() {
-                synchronized (lock) {
+            while (running) {
+                long deadline = serviceQueue(System.nanoTime());
+                flushFrames();
+                awaitUntil(deadline);
+            }
 
-                    //If queue is empty, no service is required.
-                    if (messageQueue.isEmpty()) {
-                        //Clear out any confirmation queue leftovers
-                        confirmationQueue.clear();
-                        return;
-                    }
+            //ended by an interrupt rather than stop(), so start() can run again
+            if (sender == Thread.currentThread()) {
+                sender = null;
+            }
+        }
+    }
 
-                    //peek the front of the queue (do not remove message)
-                    Message headMsg = messageQueue.peek();
+    /**
+     * Wait on lock until the deadline or a notify. Must be called holding
+     * lock.
+     *
+     * @param deadline - System.nanoTime to wake at, Long.MAX_VALUE for never
+     */
+    private void awaitUntil(long deadline) {
+        long wait = deadline - System.nanoTime();
+        if (wait <= 0) {
+            return;
+        }
 
-                    //If has not seen an initial send, send it now.
-                    if (!headMsg.getHasBeenSent()) {
-                        sendMessage(headMsg);
-                    }
+        try {
+            TimeUnit.NANOSECONDS.timedWait(lock, wait);
+        }
+        catch (InterruptedException e) {
+            running = false;
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                    //If message does not require a confirm, remove it
-                    if (!headMsg.needsConfirm()) {
-                        messageQueue.remove();
-                        return;
-                    }
+    /**
+     * Run one service pass: retransmit or give up on messages whose
+     * confirmation is overdue, then send queued messages while the window
+     * has room. How long a confirmation may take, and how many resends are
+     * made, follow the round trips measured on this connection. Up to
+     * windowSize confirm required messages are in flight at once; with a
+     * window of 1 every message waits for the one before it to be
+     * confirmed. Lanes are drained in strict priority order, and SAFETY
+     * messages are sent at once whatever else is queued or in flight, unless
+     * a different message in flight has the same confirm sum.
+     * Messages flagged as ordered wait for everything queued before them to
+     * be sent and confirmed, and hold back everything after them until they
+     * are confirmed themselves. Frames are collected in the frame writer.
+     * Must be called holding lock.
+     *
+     * @param now - the current System.nanoTime
+     * @return - when the next pass is needed if nothing else arrives
+     */
+    private long serviceQueue(long now) {
+        long deadline = Long.MAX_VALUE;
+
+        //Back off once per pass however many confirmations were missed, so
+        //the resends below wait the backed off timeout (RFC 6298 5.5)
+        for (Message msg : inFlight.values()) {
+            if (msg.isPastExpiration(now)) {
+                rtt.backoff();
+                break;
+            }
+        }
 
-                    //Iterate over all confirmations and remove the message
-                    //and its confirmation if found.
-                    Iterator<Integer> confIter = confirmationQueue.iterator();
-                    while (confIter.hasNext()) {
-                        if (headMsg.isConfirmedBy(confIter.next())) {
-                            messageQueue.remove();
-                            confIter.remove();
-                            return;
-                        }
+        //Check if a resend is needed or maximum failed send
+        //attempts have been reached. Report error if necessary.
+        Iterator<Message> flightIter = inFlight.values().iterator();
+        while (flightIter.hasNext()) {
+            Message msg = flightIter.next();
+
+            if (msg.isPastExpiration(now)) {
+                if (msg.numberOfFailures() >= rtt.getFailureLimit()) {
+                    seriallog.error("Connection failed; Rover unware of {}!", msg);
+                    context.getLinkMetrics().recordSendFailure();
+                    flightIter.remove();
+                    if (MissionModel.affectsMission(msg.getLabel())) {
+                        missionShadow.invalidate();
+                    }
+                    if (msg.isOrdered()) {
+                        orderedInFlight--;
                     }
+                    continue;
+                }
 
-                    //Check if a resend is needed or maximum failed send
-                    //attempts have been reached. Report error if necessary.
-                    Date now = new Date();
-                    if (headMsg.isPastExpiration(now)) {
-                        if (headMsg.numberOfFailures() >= Serial.MAX_FAILURES) {
+                //Resend and increment failure count
+                sendMessage(msg, true);
+                deadline = Math.min(deadline, now + msg.getTimeout());
+            }
+            else {
+                deadline = Math.min(deadline, msg.getExpirationTime());
+            }
+        }
 
-                            seriallog.error(
-                                    "Connection failed; Rover unware of {}!", headMsg);
-                            messageQueue.remove();
-                            return;
-                        }
+        //Fill the window from the lanes, highest priority first
+        Lane lane;
+        while ((lane = nextSendable()) != null) {
+            Queued next = lane.queue.remove();
+            Message msg = next.msg;
+            if (msg.isOrdered()) {
+                orderedSeqs.remove();
+            }
+            int key = msg.getCoalesceKey();
+            if (key != Message.NO_COALESCE && coalescable.get(key) == next) {
+                coalescable.remove(key);
+            }
 
-                        //Resend and increment failure count
-                        sendMessage(headMsg, true);
-                    }
+            long waited = now - next.queuedAt;
+            lane.sent++;
+            lane.waitNanos += waited;
+            lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waited);
+
+            //an identical safety message already in flight covers this one
+            Message flying = inFlight.get(confirmKey(msg));
+            if (flying != null && sameFrame(flying, msg)) {
+                continue;
+            }
+
+            sendMessage(msg);
+            if (msg.needsConfirm()) {
+                inFlight.put(confirmKey(msg), msg);
+                if (msg.isOrdered()) {
+                    orderedInFlight++;
+                }
+                deadline = Math.min(deadline, now + msg.getTimeout());
+            }
+        }
+
+        return deadline;
+    }
+
+    /**
+     * @return - the lane whose head message can be sent now, or null
+     */
+    private Lane nextSendable() {
+        for (Priority priority : Priority.values()) {
+            Lane lane = lanes[priority.ordinal()];
+            Queued head = lane.queue.peek();
+
+            if (head == null) {
+                continue;
+            }
+            if ((priority == Priority.SAFETY) ? !collides(head.msg) : canSend(head)) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private boolean canSend(Queued head) {
+        Message msg = head.msg;
+
+        if (inFlight.size() >= windowSize) {
+            return false;
+        }
+
+        boolean blocked = !inFlight.isEmpty()
+                && (msg.isOrdered() || orderedInFlight > 0
+                //confirmations couldn't tell two identical messages apart
+                || inFlight.containsKey(confirmKey(msg)));
+        if (blocked) {
+            return false;
+        }
+
+        //nothing may overtake an ordered message queued before it
+        if (!orderedSeqs.isEmpty() && orderedSeqs.peek() < head.seq) {
+            return false;
+        }
+
+        //an ordered message waits for everything queued before it
+        if (msg.isOrdered()) {
+            for (Lane lane : lanes) {
+                Queued other = lane.queue.peek();
+                if (other != null && other.seq < head.seq) {
+                    return false;
                 }
             }
-        };
+        }
 
-        serviceTimer = new Timer();
-        serviceTimer.scheduleAtFixedRate(
-                queueTask, SERVICE_TIMER_INIT_MS, SERVICE_TIMER_PERIOD_MS);
+        return true;
+    }
+
+    private static Integer confirmKey(Message msg) {
+        return msg.getConfirmSum() & 0xFFFF;
+    }
+
+    //a different message in flight with the same confirm sum would take
+    //this one's confirmation, so this one has to wait for it
+    private boolean collides(Message msg) {
+        Message flying = inFlight.get(confirmKey(msg));
+        return flying != null && !sameFrame(flying, msg);
+    }
+
+    private static boolean sameFrame(Message a, Message b) {
+        return Arrays.equals(a.contentView().toArray(), b.contentView().toArray());
     }
 
     /**
-     * Start the serial queue service timer
+     * Write every frame collected during this service pass in one write.
+     * Must be called holding lock.
+     */
+    private void flushFrames() {
+        if (writer.pending() == 0) {
+            return;
+        }
+
+        if (!context.connected) {
+            writer.clear();
+            return;
+        }
+
+        try {
+            context.getLinkMetrics().recordSent(writer.pending(), writer.pendingBytes());
+            writer.flush(context.transport());
+        }
+        catch (IOException ex) {
+            seriallog.error("Error sending message", ex);
+        }
+    }
+
+    /**
+     * Start the serial sender thread
      */
     public void start() {
-        if (serviceTimer == null) {
-            initQueueServiceTask();
+        synchronized (lock) {
+            if (sender != null) {
+                return;
+            }
+
+            windowSize = Math.max(1, context.getSendWindowProp());
+            rtt.reset();
+            running = true;
+            sender = new Thread(this::senderLoop, "serial-send");
+            sender.setDaemon(true);
+            sender.start();
         }
     }
 
     /**
-     * Stop the serial queue service timer
+     * Stop the serial sender thread
      */
     public void stop() {
-        if (serviceTimer != null) {
-            serviceTimer.purge();
-            serviceTimer.cancel();
-        }
+        Thread stopping;
 
         //Clear out queues to prevent carry over between serial
         //connection events.
         synchronized (lock) {
-            messageQueue.clear();
-            confirmationQueue.clear();
+            stopping = sender;
+            sender = null;
+            running = false;
+            if (missionPending()) {
+                missionShadow.invalidate();
+            }
+            for (Lane lane : lanes) {
+                lane.queue.clear();
+            }
+            orderedSeqs.clear();
+            coalescable.clear();
+            inFlight.clear();
+            orderedInFlight = 0;
+            writer.clear();
+            lock.notifyAll();
+        }
+
+        if (stopping != null && stopping != Thread.currentThread()) {
+            try {
+                stopping.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //whether any unconfirmed message could still change the rover's mission
+    private boolean missionPending() {
+        for (Message msg : inFlight.values()) {
+            if (MissionModel.affectsMission(msg.getLabel())) {
+                return true;
+            }
+        }
+        for (Lane lane : lanes) {
+            for (Queued queued : lane.queue) {
+                if (MissionModel.affectsMission(queued.msg.getLabel())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return - the mission the rover should hold once every queued message
+     * is confirmed. It is invalidated when a mission message is dropped
+     * unconfirmed.
+     */
+    public MissionModel getMissionShadow() {
+        return missionShadow;
+    }
+
+    /**
+     * Select how many confirm required messages may be in flight at once.
+     * A window of 1 keeps stop-and-wait behaviour, where every message waits
+     * for the one before it to be confirmed. Messages already in flight are
+     * left to be confirmed if the window shrinks.
+     *
+     * @param size - the maximum number of unconfirmed messages
+     */
+    public void setWindowSize(int size) {
+        synchronized (lock) {
+            windowSize = Math.max(1, size);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @param nanos - how long start() waits before the first send
+     */
+    void setStartupDelay(long nanos) {
+        synchronized (lock) {
+            startupDelayNs = nanos;
+        }
+    }
+
+    public int getWindowSize() {
+        synchronized (lock) {
+            return windowSize;
+        }
+    }
+
+    /**
+     * @return - the current wait for a confirmation before a first resend
+     */
+    public long getRetransmitTimeoutNanos() {
+        synchronized (lock) {
+            return rtt.getTimeoutNanos();
+        }
+    }
+
+    /**
+     * @return - the smoothed confirmation round trip on this connection
+     */
+    public long getSmoothedRttNanos() {
+        synchronized (lock) {
+            return rtt.getSmoothedRttNanos();
+        }
+    }
+
+    /**
+     * @return - resends allowed before a message is given up on
+     */
+    public int getFailureLimit() {
+        synchronized (lock) {
+            return rtt.getFailureLimit();
+        }
+    }
+
+    /**
+     * @return - messages queued or in flight waiting for a confirmation
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            int count = inFlight.size();
+            for (Lane lane : lanes) {
+                count += lane.queue.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return - messages waiting to be sent in the given lane
+     */
+    public int getQueueDepth(Priority priority) {
+        synchronized (lock) {
+            return lanes[priority.ordinal()].queue.size();
+        }
+    }
+
+    /**
+     * @return - the deepest the given lane has been
+     */
+    public int getMaxQueueDepth(Priority priority) {
+        synchronized (lock) {
+            return lanes[priority.ordinal()].maxDepth;
+        }
+    }
+
+    /**
+     * @return - messages taken off the given lane to be sent
+     */
+    public long getSentCount(Priority priority) {
+        synchronized (lock) {
+            return lanes[priority.ordinal()].sent;
+        }
+    }
+
+    /**
+     * @return - queued messages in the given lane replaced by newer ones
+     */
+    public long getCoalescedCount(Priority priority) {
+        synchronized (lock) {
+            return lanes[priority.ordinal()].coalesced;
+        }
+    }
+
+    /**
+     * @return - mean time messages in the given lane waited to be sent
+     */
+    public long getAverageWaitNanos(Priority priority) {
+        synchronized (lock) {
+            Lane lane = lanes[priority.ordinal()];
+            return (lane.sent == 0) ? 0 : lane.waitNanos / lane.sent;
+        }
+    }
+
+    /**
+     * @return - longest time a message in the given lane waited to be sent
+     */
+    public long getMaxWaitNanos(Priority priority) {
+        synchronized (lock) {
+            return lanes[priority.ordinal()].maxWaitNanos;
         }
-        serviceTimer = null;
     }
 
     //------------------------Send/Queue Functions------------------------------
 
     /**
-     * Adds a message to messageQueue to be handled by the serviceTask.
+     * Adds a message to the lane for its priority and wakes the sender thread
+     * to send it. If a message with the same coalesce key is still waiting
+     * to be sent, the new message takes its place in the queue instead, so
+     * dragging a waypoint or sliding a setting only sends the latest value.
      *
      * @param msg - The message to be added to the queue
      */
     public void addMessageToQueue(Message msg) {
         synchronized (lock) {
-            messageQueue.add(msg);
+            if (MissionModel.affectsMission(msg.getLabel())) {
+                missionShadow.apply(msg.contentView());
+            }
+
+            Lane lane = lanes[msg.getPriority().ordinal()];
+            int key = msg.getCoalesceKey();
+            if (key != Message.NO_COALESCE) {
+                Queued waiting = coalescable.get(key);
+                if (waiting != null) {
+                    waiting.msg = msg;
+                    lane.coalesced++;
+                    return;
+                }
+            }
+            else if (msg.isOrdered() || MissionModel.affectsMission(msg.getLabel())) {
+                //a replacement moving ahead of this could change meaning,
+                //like an alter crossing the add that shifts its index
+                coalescable.clear();
+            }
+
+            Queued queued = new Queued(msg, nextSeq++, System.nanoTime());
+            if (msg.isOrdered()) {
+                orderedSeqs.add(queued.seq);
+            }
+            if (key != Message.NO_COALESCE) {
+                coalescable.put(key, queued);
+            }
+
+            lane.queue.add(queued);
+            lane.maxDepth = Math.max(lane.maxDepth, lane.queue.size());
+            lock.notifyAll();
         }
     }
 
     /**
-     * Adds a confirmation checksum (fletcher16) to a list of currently
-     * confirmed message sums. the service timer will check these against the
-     * message at the head of the queue and remove any matches found.
+     * Accepts a confirmation checksum (fletcher16) from the rover. The
+     * message in flight with that confirm sum, if any, is found by hash
+     * lookup and retired, and the sender is woken to fill its place. The
+     * round trip is recorded, and fed to the retransmit timer, if the
+     * message was only sent once.
+     * Confirmations matching nothing in flight are stale and dropped.
      *
-     * @param confirm - the checksum to add to the queue/list
+     * @param confirm - the checksum received
      */
     public void addConfirmToQueue(Integer confirm) {
         synchronized (lock) {
-            confirmationQueue.add(confirm);
+            Message confirmed = inFlight.remove(confirm & 0xFFFF);
+            if (confirmed != null) {
+                //a resent message's confirm can't be matched to one send
+                if (confirmed.numberOfFailures() == 0) {
+                    long roundTrip = System.nanoTime() - confirmed.getSentTime();
+                    rtt.addSample(roundTrip);
+                    context.getLinkMetrics().recordRoundTrip(roundTrip);
+                }
+                if (confirmed.isOrdered()) {
+                    orderedInFlight--;
+                }
+                lock.notifyAll();
+            }
         }
     }
 
-    //NOTE: SendMessage should never be called outside of the queue timer task
+    //NOTE: SendMessage should never be called outside of the sender thread's
     //		synchronized block!
 
     /**
@@ -211,29 +629,28 @@ public class SerialSendManager {
     }
 
     /**
-     * Send the provided message over available serial connection.
+     * Send the provided message over available serial connection. The frame
+     * is written, together with any others from the same service pass, when
+     * the pass ends.
      *
      * @param msg      - The serial message to be sent
      * @param isResend - whether this is a resend of a previous message or not
      */
     private void sendMessage(Message msg, boolean isResend) {
         if (context.connected) {
-            try {
-                msg.send(context.port());
-
-                if (isResend) { //If resend attempt, log it and add failure
-                    msg.addFailure();
-                    seriallog.debug("{} No response to {} resend #{}", Integer.toHexString(
-                            msg.getConfirmSum()), msg, msg.numberOfFailures());
-                }
-                else { //otherwise just log as a normally sent message
-                    seriallog.debug("{} Sent {}", Integer.toHexString(
-                            msg.getConfirmSum()), msg);
-                }
-
+            writer.add(msg);
+
+            if (isResend) { //If resend attempt, log it and add failure
+                msg.addFailure();
+                msg.setTimeout(rtt.getTimeoutNanos());
+                context.getLinkMetrics().recordRetransmit();
+                seriallog.debug("{} No response to {} resend #{}", Integer.toHexString(
+                        msg.getConfirmSum()), msg, msg.numberOfFailures());
             }
-            catch (SerialPortException ex) {
-                seriallog.error("Error sending message", ex);
+            else { //otherwise just log as a normally sent message
+                msg.setTimeout(rtt.getTimeoutNanos());
+                seriallog.debug("{} Sent {}", Integer.toHexString(
+                        msg.getConfirmSum()), msg);
             }
         }
     }
@@ -324,4 +741,27 @@ public class SerialSendManager {
     public void sendSync() {
         addMessageToQueue(Message.syncMessage(Serial.SYNC_REQUEST));
     }
+
+    //A message waiting in a lane, with its place in overall queue order
+    private static class Queued {
+        Message msg;
+        final long seq;
+        final long queuedAt;
+
+        Queued(Message msg, long seq, long queuedAt) {
+            this.msg = msg;
+            this.seq = seq;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    //One priority class's queue and its statistics
+    private static class Lane {
+        final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        int maxDepth;
+        long sent;
+        long coalesced;
+        long waitNanos;
+        long maxWaitNanos;
+    }
 }
@@ -0,0 +1,657 @@
+package com.serial;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process rover speaking the doc/CommProtocol.txt protocol, for load
+ * testing the dashboard without a radio. It streams telemetry, sensor and
+ * heartbeat packets at configurable rates, and answers commands, settings
+ * and waypoints with confirmations after a tunable latency, optionally
+ * losing a fraction of them.
+ * <p>
+ * Bytes headed to the dashboard sit in a bounded FIFO like a UART receive
+ * buffer. When the dashboard falls behind, bytes that don't fit are dropped
+ * and counted as overrun, so the overrun count marks the receive side's
+ * throughput ceiling.
+ * <p>
+ * Rates and link behaviour can be changed while running. The rover is
+ * configured from system properties by fromSystemProperties, e.g.
+ * -Drover.telemetryChannels=256 -Drover.telemetryHz=50
+ */
+public class SimulatedRover implements Transport {
+    public static final String PORT_NAME = "Simulated Rover";
+    private static final int FIFO_SIZE = 64 * 1024;
+    private static final int MAX_CONTENT = 16;
+    private static final int BATCH_CONTENT = 2 + 5 * Serial.MAX_TELEMETRY_BATCH;
+    //how long to sleep when a stream is turned off before checking its rate
+    private static final long IDLE_NS = 100_000_000L;
+    private static final long EVENT_WAIT_MS = 100;
+    private static final int SONIC_SENSORS = 5;
+    private static final byte[] FIRMWARE_VERSION = {2, 0, 0};
+
+    private final Logger seriallog = LoggerFactory.getLogger("d.serial");
+    private final ByteFifo toDashboard = new ByteFifo(FIFO_SIZE);
+    private final ByteFifo fromDashboard = new ByteFifo(FIFO_SIZE);
+    private final InputStream input = toDashboard.inputStream();
+    private final Decoder decoder;
+    //confirmations waiting out their latency, in due order
+    private final ArrayDeque<PendingConfirm> confirms = new ArrayDeque<>();
+    private final Random random = new Random();
+    private final byte[] content = new byte[BATCH_CONTENT];
+    private final byte[] frame = new byte[Serial.HEADER.length + BATCH_CONTENT + 2 + Serial.FOOTER.length];
+    private final PacketView contentView = new PacketView();
+    private final float[] settings = new float[Serial.MAX_SETTINGS];
+    private final MissionModel mission = new MissionModel();
+
+    private volatile int telemetryChannels = 24;
+    private volatile double telemetryHz = 10;
+    private volatile boolean batchTelemetry;
+    private volatile double sensorHz = 5;
+    private volatile double heartbeatHz = 2;
+    private volatile long confirmLatencyNs = 20_000_000L;
+    private volatile double confirmLoss = 0;
+    private volatile double originLat;
+    private volatile double originLng;
+
+    //statistics, written only by the rover thread
+    private volatile long framesSent;
+    private volatile long bytesSent;
+    private volatile long overrunBytes;
+    private volatile long framesReceived;
+    private volatile long confirmsSent;
+    private volatile long confirmsLost;
+
+    private volatile Runnable listener;
+    private volatile boolean running;
+    private volatile Thread roverThread;
+    private Thread eventThread;
+    private int sensorTick;
+
+    public SimulatedRover() {
+        decoder = new Decoder(fromDashboard.inputStream(), Serial.HEADER,
+                Serial.FOOTER, new Fletcher16());
+        decoder.addPacketReader(new CommandReader());
+    }
+
+    /**
+     * Build a rover configured from rover.* system properties: telemetryChannels,
+     * telemetryHz, batchTelemetry, sensorHz, heartbeatHz, confirmLatencyMs and
+     * confirmLoss
+     */
+    public static SimulatedRover fromSystemProperties() {
+        SimulatedRover rover = new SimulatedRover();
+        rover.setTelemetryRate(
+                Integer.getInteger("rover.telemetryChannels", rover.telemetryChannels),
+                doubleProperty("rover.telemetryHz", rover.telemetryHz));
+        rover.setTelemetryBatching(Boolean.getBoolean("rover.batchTelemetry"));
+        rover.setSensorHz(doubleProperty("rover.sensorHz", rover.sensorHz));
+        rover.setHeartbeatHz(doubleProperty("rover.heartbeatHz", rover.heartbeatHz));
+        rover.setConfirmLatencyMs(Integer.getInteger("rover.confirmLatencyMs",
+                (int) (rover.confirmLatencyNs / 1_000_000L)));
+        rover.setConfirmLoss(doubleProperty("rover.confirmLoss", rover.confirmLoss));
+        return rover;
+    }
+
+    private static double doubleProperty(String key, double otherwise) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return otherwise;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
+
+    /**
+     * @param channels - number of telemetry ids sent, starting at 0
+     * @param hz       - times per second every channel is sent; 0 to stop
+     */
+    public void setTelemetryRate(int channels, double hz) {
+        telemetryChannels = Math.max(0, Math.min(channels, Serial.MAX_TELEMETRY));
+        telemetryHz = hz;
+    }
+
+    /**
+     * @param batch - send telemetry in batch packets rather than one packet
+     *              per value
+     */
+    public void setTelemetryBatching(boolean batch) {
+        batchTelemetry = batch;
+    }
+
+    /**
+     * @param hz - sensor packets per second; 0 to stop
+     */
+    public void setSensorHz(double hz) {
+        sensorHz = hz;
+    }
+
+    /**
+     * @param hz - heartbeat packets per second; 0 to go silent
+     */
+    public void setHeartbeatHz(double hz) {
+        heartbeatHz = hz;
+    }
+
+    /**
+     * @param ms - delay between receiving a message and confirming it
+     */
+    public void setConfirmLatencyMs(int ms) {
+        confirmLatencyNs = Math.max(0, ms) * 1_000_000L;
+    }
+
+    /**
+     * @param fraction - probability, 0 to 1, that a confirmation is lost
+     */
+    public void setConfirmLoss(double fraction) {
+        confirmLoss = fraction;
+    }
+
+    /**
+     * Set the point the simulated rover drives circles around
+     */
+    public void setOrigin(double latitude, double longitude) {
+        originLat = latitude;
+        originLng = longitude;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        roverThread = new Thread(this::roverLoop, "simulated-rover");
+        roverThread.setDaemon(true);
+        roverThread.start();
+        eventThread = new Thread(this::eventLoop, "simulated-rover-events");
+        eventThread.setDaemon(true);
+        eventThread.start();
+    }
+
+    public String getName() {
+        return PORT_NAME;
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public void setDataListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void write(byte[] data, int off, int len) {
+        fromDashboard.write(data, off, len);
+        Thread rover = roverThread;
+        if (rover != null) {
+            LockSupport.unpark(rover);
+        }
+    }
+
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(roverThread);
+        toDashboard.wake();
+        try {
+            roverThread.join();
+            eventThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        roverThread = null;
+        eventThread = null;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return - bytes dropped because the dashboard didn't read them in time
+     */
+    public long getOverrunBytes() {
+        return overrunBytes;
+    }
+
+    /**
+     * @return - valid packets received from the dashboard
+     */
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public long getConfirmsSent() {
+        return confirmsSent;
+    }
+
+    public long getConfirmsLost() {
+        return confirmsLost;
+    }
+
+    /**
+     * @return - the mission the rover holds, built from the waypoint
+     * messages it has received
+     */
+    public MissionModel getMission() {
+        return mission;
+    }
+
+    /**
+     * @return - the value the rover holds for a setting
+     */
+    public float getSetting(int index) {
+        return settings[index];
+    }
+
+    //------------------------------Rover thread--------------------------------
+
+    private void roverLoop() {
+        long start = System.nanoTime();
+        long nextTelemetry = start;
+        long nextSensor = start;
+        long nextHeartbeat = start;
+
+        while (running) {
+            long now = System.nanoTime();
+            decoder.update();
+
+            if (now >= nextTelemetry) {
+                double hz = telemetryHz;
+                if (hz > 0) {
+                    sendTelemetry((now - start) / 1e9);
+                }
+                nextTelemetry = nextDue(nextTelemetry, hz, now);
+            }
+            if (now >= nextSensor) {
+                double hz = sensorHz;
+                if (hz > 0) {
+                    sendSensor((now - start) / 1e9);
+                }
+                nextSensor = nextDue(nextSensor, hz, now);
+            }
+            if (now >= nextHeartbeat) {
+                double hz = heartbeatHz;
+                if (hz > 0) {
+                    sendHeartbeat();
+                }
+                nextHeartbeat = nextDue(nextHeartbeat, hz, now);
+            }
+            sendDueConfirms(now);
+
+            long wake = Math.min(nextTelemetry, Math.min(nextSensor, nextHeartbeat));
+            if (!confirms.isEmpty()) {
+                wake = Math.min(wake, confirms.peek().due);
+            }
+            long sleep = wake - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    //schedule the next send of a periodic stream; a stream that fell behind
+    //resumes from now rather than sending a catch up burst
+    private static long nextDue(long due, double hz, long now) {
+        if (!(hz > 0)) {
+            return now + IDLE_NS;
+        }
+
+        due += (long) (1e9 / hz);
+        return Math.max(due, now);
+    }
+
+    private void sendTelemetry(double t) {
+        int channels = telemetryChannels;
+        if (batchTelemetry) {
+            sendTelemetryBatches(channels, t);
+            return;
+        }
+
+        for (int id = 0; id < channels; id++) {
+            content[0] = Serial.buildMessageLabel(Serial.DATA_TYPE, Serial.TELEMETRY_DATA);
+            content[1] = (byte) id;
+            putFloat(2, telemetryValue(id, t));
+            send(6);
+        }
+    }
+
+    private void sendTelemetryBatches(int channels, double t) {
+        for (int first = 0; first < channels; first += Serial.MAX_TELEMETRY_BATCH) {
+            int count = Math.min(Serial.MAX_TELEMETRY_BATCH, channels - first);
+            content[0] = Serial.buildMessageLabel(Serial.DATA_TYPE, Serial.TELEMETRY_BATCH);
+            content[1] = (byte) count;
+            for (int i = 0; i < count; i++) {
+                int id = first + i;
+                content[2 + i * 5] = (byte) id;
+                putFloat(3 + i * 5, telemetryValue(id, t));
+            }
+            send(2 + count * 5);
+        }
+    }
+
+    private float telemetryValue(int id, double t) {
+        double angle = t * 0.2;
+        switch (id) {
+            case Serial.LATITUDE:
+                return (float) (originLat + 0.0005 * Math.sin(angle));
+            case Serial.LONGITUDE:
+                return (float) (originLng + 0.0005 * Math.cos(angle));
+            case Serial.HEADING:
+                return (float) ((360 - Math.toDegrees(angle) % 360) % 360);
+            case Serial.VOLTAGE:
+                return (float) (12.4 - 0.01 * t % 2.0);
+            case Serial.GPSNUMSAT:
+                return 9;
+            default:
+                return (float) Math.sin(t + id);
+        }
+    }
+
+    private void sendSensor(double t) {
+        int tick = sensorTick++;
+        content[0] = Serial.buildMessageLabel(Serial.DATA_TYPE, Serial.SENSOR_DATA);
+
+        if ((tick % (SONIC_SENSORS + 1)) < SONIC_SENSORS) {
+            int distance = (int) (150 + 100 * Math.sin(t + tick));
+            content[1] = Serial.OBJDETECT_SONIC;
+            content[2] = (byte) (tick % (SONIC_SENSORS + 1));
+            content[3] = (byte) (distance >> 8);
+            content[4] = (byte) distance;
+        }
+        else {
+            content[1] = Serial.OBJDETECT_BUMPER;
+            content[2] = (byte) ((tick / (SONIC_SENSORS + 1)) % 2);
+            content[3] = 0;
+            content[4] = (byte) ((tick / 2) % 2);
+        }
+        content[5] = 0;
+        send(6);
+    }
+
+    private void sendHeartbeat() {
+        content[0] = Serial.buildMessageLabel(Serial.DATA_TYPE, Serial.INFO_DATA);
+        content[1] = Serial.HEARTBEAT;
+        content[2] = 0;
+        content[3] = 0;
+        content[4] = 0;
+        content[5] = 0;
+        send(6);
+    }
+
+    private void sendWord(int subtype, byte a, byte b) {
+        content[0] = Serial.buildMessageLabel(Serial.WORD_TYPE, subtype);
+        content[1] = a;
+        content[2] = b;
+        send(3);
+    }
+
+    private void sendDigest(long digest) {
+        content[0] = Serial.buildMessageLabel(Serial.WORD_TYPE, Serial.DIGEST_WORD);
+        content[1] = (byte) (digest >> 24);
+        content[2] = (byte) (digest >> 16);
+        content[3] = (byte) (digest >> 8);
+        content[4] = (byte) digest;
+        send(5);
+    }
+
+    private void sendDueConfirms(long now) {
+        while (!confirms.isEmpty() && confirms.peek().due <= now) {
+            int sum = confirms.remove().sum;
+            sendWord(Serial.CONFIRMATION, (byte) (sum >> 8), (byte) sum);
+            confirmsSent++;
+        }
+    }
+
+    private void putFloat(int index, float value) {
+        int bits = Float.floatToIntBits(value);
+        content[index] = (byte) (bits >> 24);
+        content[index + 1] = (byte) (bits >> 16);
+        content[index + 2] = (byte) (bits >> 8);
+        content[index + 3] = (byte) bits;
+    }
+
+    //frame the first length bytes of content and queue them for the dashboard
+    private void send(int length) {
+        int pos = 0;
+        System.arraycopy(Serial.HEADER, 0, frame, pos, Serial.HEADER.length);
+        pos += Serial.HEADER.length;
+        System.arraycopy(content, 0, frame, pos, length);
+        pos += length;
+
+        contentView.set(content, 0, length, -1);
+        int sum = Fletcher16.calc(contentView);
+        frame[pos++] = (byte) (sum >> 8);
+        frame[pos++] = (byte) sum;
+        System.arraycopy(Serial.FOOTER, 0, frame, pos, Serial.FOOTER.length);
+        pos += Serial.FOOTER.length;
+
+        int written = toDashboard.write(frame, 0, pos);
+        framesSent++;
+        bytesSent += written;
+        overrunBytes += pos - written;
+    }
+
+    /**
+     * Acts on packets from the dashboard, on the rover thread
+     */
+    private class CommandReader implements PacketViewReader {
+        public int claim(byte data) {
+            return MAX_CONTENT;
+        }
+
+        public void handle(PacketView msg) {
+            framesReceived++;
+            int type = Serial.getMsgType(msg.get(0));
+            int subtype = Serial.getSubtype(msg.get(0));
+
+            switch (type) {
+                case Serial.WAYPOINT_TYPE:
+                    mission.apply(msg);
+                    confirm(msg);
+                    break;
+
+                case Serial.DATA_TYPE:
+                    if (subtype == Serial.SETTING_DATA) {
+                        int index = msg.get(1) & 0xff;
+                        if (index < settings.length) {
+                            settings[index] = msg.getFloat(2);
+                        }
+                        confirm(msg);
+                    }
+                    else if (subtype == Serial.INFO_DATA) {
+                        answerInfo(msg.get(1));
+                    }
+                    break;
+
+                case Serial.WORD_TYPE:
+                    if (subtype == Serial.COMMAND_WORD) {
+                        mission.apply(msg);
+                        confirm(msg);
+                    }
+                    else if (subtype == Serial.SYNC_WORD && msg.get(1) == Serial.SYNC_REQUEST) {
+                        sendWord(Serial.SYNC_WORD, Serial.SYNC_RESPOND, (byte) 0);
+                    }
+                    else if (subtype == Serial.DIGEST_WORD) {
+                        sendDigest(mission.digest());
+                    }
+                    break;
+
+                default:
+                    seriallog.debug("Simulated rover ignored label {}",
+                            Integer.toHexString(msg.get(0) & 0xff));
+                    break;
+            }
+        }
+
+        private void answerInfo(byte request) {
+            if (request == Serial.HEARTBEAT) {
+                sendHeartbeat();
+            }
+            else if (request == Serial.APM_VERSION) {
+                content[0] = Serial.buildMessageLabel(Serial.DATA_TYPE, Serial.INFO_DATA);
+                content[1] = Serial.APM_VERSION;
+                content[2] = FIRMWARE_VERSION[0];
+                content[3] = FIRMWARE_VERSION[1];
+                content[4] = FIRMWARE_VERSION[2];
+                content[5] = 0;
+                send(6);
+            }
+        }
+
+        //queue a confirmation holding the checksum of the full message,
+        //checksum bytes included, as Message.buildChecksum computes it
+        private void confirm(PacketView msg) {
+            if (random.nextDouble() < confirmLoss) {
+                confirmsLost++;
+                return;
+            }
+
+            byte[] whole = new byte[msg.length() + 2];
+            msg.copyTo(whole, 0);
+            int sum = Fletcher16.calc(msg);
+            whole[msg.length()] = (byte) (sum >> 8);
+            whole[msg.length() + 1] = (byte) sum;
+
+            confirms.add(new PendingConfirm(System.nanoTime() + confirmLatencyNs,
+                    Serial.fletcher16(whole) & 0xffff));
+        }
+    }
+
+    //------------------------------Event thread--------------------------------
+
+    //stands in for the serial port's event thread, telling the dashboard
+    //when bytes are waiting
+    private void eventLoop() {
+        while (running) {
+            if (!toDashboard.awaitData(EVENT_WAIT_MS)) {
+                continue;
+            }
+
+            Runnable l = listener;
+            if (l != null) {
+                try {
+                    l.run();
+                }
+                catch (Exception e) {
+                    seriallog.error("Simulated rover data listener failed", e);
+                }
+            }
+            else {
+                LockSupport.parkNanos(this, EVENT_WAIT_MS * 1_000_000L);
+            }
+        }
+    }
+
+    private static class PendingConfirm {
+        final long due;
+        final int sum;
+
+        PendingConfirm(long due, int sum) {
+            this.due = due;
+            this.sum = sum;
+        }
+    }
+
+    /**
+     * Bounded byte queue between the two ends of the simulated link. Writes
+     * that don't fit are truncated, like a UART overrun.
+     */
+    private static class ByteFifo {
+        private final byte[] buffer;
+        private final int mask;
+        private long head;
+        private long tail;
+
+        ByteFifo(int capacity) {
+            buffer = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        synchronized int write(byte[] data, int off, int len) {
+            int count = Math.min(len, buffer.length - (int) (tail - head));
+            for (int i = 0; i < count; i++) {
+                buffer[(int) ((tail + i) & mask)] = data[off + i];
+            }
+            if (head == tail && count > 0) {
+                notifyAll();
+            }
+            tail += count;
+            return count;
+        }
+
+        synchronized int read(byte[] data, int off, int len) {
+            int count = Math.min(len, (int) (tail - head));
+            for (int i = 0; i < count; i++) {
+                data[off + i] = buffer[(int) ((head + i) & mask)];
+            }
+            head += count;
+            return count;
+        }
+
+        synchronized int available() {
+            return (int) (tail - head);
+        }
+
+        synchronized boolean awaitData(long timeoutMs) {
+            if (head == tail) {
+                try {
+                    wait(timeoutMs);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return head != tail;
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+
+        //non blocking reads, returning -1 when empty like SerialInputStream
+        InputStream inputStream() {
+            return new InputStream() {
+                private final byte[] one = new byte[1];
+
+                @Override
+                public int available() {
+                    return ByteFifo.this.available();
+                }
+
+                @Override
+                public int read() {
+                    return (ByteFifo.this.read(one, 0, 1) == 1) ? (one[0] & 0xff) : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    int count = ByteFifo.this.read(b, off, len);
+                    return (count == 0) ? -1 : count;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.serial;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A byte link to a rover. The dashboard only needs to read what has arrived,
+ * be told when more arrives, and write frames; a real serial port, a socket
+ * or an in-process simulator can all provide that.
+ */
+public interface Transport {
+    /**
+     * @return - a name for the link, as shown to the user
+     */
+    String getName();
+
+    /**
+     * Stream of received bytes. Reads must not block: they return -1 when
+     * nothing has been received yet, like SerialInputStream.
+     */
+    InputStream getInputStream();
+
+    /**
+     * Register the callback run, on a transport owned thread, whenever new
+     * bytes can be read. Replaces any previous listener.
+     */
+    void setDataListener(Runnable listener) throws IOException;
+
+    /**
+     * Write bytes to the rover
+     */
+    void write(byte[] data, int off, int len) throws IOException;
+
+    default void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    void close() throws IOException;
+}
@@ -0,0 +1,12 @@
+package com.serial;
+
+/**
+ * Optional Checksum capability: verify a packet in place without copying its
+ * plaintext out of the decoder's buffer.
+ */
+public interface ViewChecksum extends Checksum {
+    /**
+     * return true if sum is the checksum of plaintext
+     */
+    boolean matches(PacketView plaintext, PacketView sum);
+}
@@ -0,0 +1,144 @@
+package com.serial;
+
+import com.map.Dot;
+import com.map.WaypointList;
+import com.serial.Messages.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Brings the rover's mission in line with the dashboard's waypoint list.
+ * Rather than clearing the rover and resending every waypoint on each sync,
+ * the rover is asked for a digest of the mission it holds. If it matches the
+ * send manager's shadow of what the rover was last sent, only the waypoints
+ * that differ from the shadow are sent. A mismatch, an invalid shadow, or no
+ * answer within DIGEST_TIMEOUT_MS falls back to the full clear and resend.
+ */
+public class WaypointSync {
+    private static final long DIGEST_TIMEOUT_MS = 1000;
+
+    private final SerialSendManager sendManager;
+    private final WaypointList waypoints;
+    private final Timer timer = new Timer("waypoint-sync", true);
+    private final Logger seriallog = LoggerFactory.getLogger("d.serial");
+    //Timeout of the digest request being waited on, null if none
+    private TimerTask pending;
+
+    public WaypointSync(SerialSendManager sendManager, WaypointList waypoints) {
+        this.sendManager = sendManager;
+        this.waypoints = waypoints;
+    }
+
+    /**
+     * Ask the rover for its mission digest, and sync once it answers or the
+     * request times out. A resync while one is pending restarts it.
+     */
+    public synchronized void resync() {
+        cancel();
+
+        //nothing the rover could hold would let a delta be used
+        if (!sendManager.getMissionShadow().isValid()) {
+            sendFull();
+            return;
+        }
+
+        pending = new TimerTask() {
+            @Override
+            public void run() {
+                timedOut(this);
+            }
+        };
+        sendManager.addMessageToQueue(Message.requestDigest());
+        timer.schedule(pending, DIGEST_TIMEOUT_MS);
+    }
+
+    /**
+     * Accept the mission digest reported by the rover. Digests arriving
+     * while no request is pending are ignored.
+     *
+     * @param digest - the rover's CRC-32 mission digest, or
+     *               MissionModel.NO_DIGEST for a reply that carries none
+     */
+    public synchronized void digestReceived(long digest) {
+        if (pending == null) {
+            return;
+        }
+        cancel();
+
+        long expected = sendManager.getMissionShadow().digest();
+        if (expected != MissionModel.NO_DIGEST && digest == expected) {
+            sendDelta();
+        }
+        else {
+            seriallog.info("Rover mission digest {} differs from {}; resending all",
+                    Long.toHexString(digest), Long.toHexString(expected));
+            sendFull();
+        }
+    }
+
+    /**
+     * Stop waiting for a digest without syncing
+     */
+    public synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    private synchronized void timedOut(TimerTask task) {
+        //a newer request or its answer got here first
+        if (pending != task) {
+            return;
+        }
+        pending = null;
+
+        seriallog.warn("Rover did not report a mission digest; resending all waypoints");
+        sendFull();
+    }
+
+    private void sendFull() {
+        sendManager.sendWaypointList(waypoints);
+    }
+
+    /**
+     * Queue only the changes that turn the shadow mission into the current
+     * waypoint list. Each queued message updates the shadow as it goes.
+     */
+    private void sendDelta() {
+        MissionModel shadow = sendManager.getMissionShadow();
+        List<Dot> points = waypoints.getPoints();
+        int held = shadow.size();
+        int common = Math.min(held, points.size());
+        int changes = 0;
+
+        for (int i = 0; i < common; i++) {
+            Dot dot = points.get(i);
+            if (!shadow.matches(i, MissionModel.encode(dot))) {
+                sendManager.addMessageToQueue(Message.setWaypoint((byte) i, dot));
+                changes++;
+            }
+        }
+
+        for (int i = common; i < points.size(); i++) {
+            sendManager.addMessageToQueue(Message.addWaypoint((byte) i, points.get(i)));
+            changes++;
+        }
+
+        //delete from the end so the remaining indices don't move
+        for (int i = held - 1; i >= points.size(); i--) {
+            sendManager.addMessageToQueue(Message.deleteWaypoint((byte) i));
+            changes++;
+        }
+
+        //looping isn't covered by the digest, so always restate it
+        sendManager.addMessageToQueue(Message.setLooping(
+                (byte) (waypoints.getIsLooped() ? 1 : 0)));
+
+        seriallog.info("Mission digest matched; synced with {} waypoint changes", changes);
+    }
+}
@@ -104,7 +104,8 @@ public class TableFactory {
             }
 
             public boolean isRowEditable(int row) {
-                return true;
+                //a recording's settings are only for reading
+                return !context.isPlayback();
             }
 
             public void setValueAt(String val, int row) {
@@ -0,0 +1,54 @@
+package com.telemetry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Telemetry listeners by id, kept in copy-on-write arrays so they can be
+ * read without locking or allocating while other threads add and remove
+ * listeners
+ */
+class ListenerTable {
+    private final AtomicReferenceArray<TelemetryListener[]> listeners;
+
+    ListenerTable(int size) {
+        listeners = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @return - the listeners for id, or null if there are none
+     */
+    TelemetryListener[] get(int id) {
+        return listeners.get(id);
+    }
+
+    synchronized void add(int id, TelemetryListener tl) {
+        TelemetryListener[] old = listeners.get(id);
+        if (old == null) {
+            old = new TelemetryListener[0];
+        }
+        TelemetryListener[] added = Arrays.copyOf(old, old.length + 1);
+        added[old.length] = tl;
+        listeners.set(id, added);
+    }
+
+    synchronized void remove(TelemetryListener tl) {
+        for (int id = 0; id < listeners.length(); id++) {
+            TelemetryListener[] old = listeners.get(id);
+            if (old == null) {
+                continue;
+            }
+
+            int keep = 0;
+            TelemetryListener[] kept = new TelemetryListener[old.length];
+            for (TelemetryListener l : old) {
+                if (l != tl) {
+                    kept[keep++] = l;
+                }
+            }
+            if (keep != old.length) {
+                listeners.set(id, (keep == 0) ? null : Arrays.copyOf(kept, keep));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Delivers telemetry to display listeners on the Swing event thread, at
+ * most once per display frame. Updates from the serial thread only record
+ * the latest value and mark its id dirty, so however many packets arrive
+ * for an id within a frame, its listeners see just the newest value once.
+ * Display cost follows the frame rate rather than the packet rate.
+ * <p>
+ * Dirty ids are a bitset of atomic words; each frame takes and clears a
+ * word at a time, so marking and collecting never lock or allocate.
+ */
+public class TelemetryDispatcher {
+    public static final int DEFAULT_FRAME_RATE = 30;
+    private static final int WORDS = (Serial.MAX_TELEMETRY + 63) / 64;
+
+    private final AtomicLongArray latest = new AtomicLongArray(Serial.MAX_TELEMETRY);
+    private final AtomicLongArray dirty = new AtomicLongArray(WORDS);
+    private final ListenerTable listeners = new ListenerTable(Serial.MAX_TELEMETRY);
+    private final Timer frameTimer;
+
+    public TelemetryDispatcher() {
+        frameTimer = new Timer(1000 / DEFAULT_FRAME_RATE, event -> deliver());
+        frameTimer.setCoalesce(true);
+    }
+
+    /**
+     * @param hz - display frames per second
+     */
+    public void setFrameRate(int hz) {
+        int delay = 1000 / Math.max(1, hz);
+        frameTimer.setDelay(delay);
+        frameTimer.setInitialDelay(delay);
+    }
+
+    public int getFrameRate() {
+        return 1000 / frameTimer.getDelay();
+    }
+
+    /**
+     * Record a new value, to be delivered with the next frame. Safe to call
+     * from any thread; ids nobody displays are skipped.
+     */
+    public void offer(int id, double value) {
+        if (listeners.get(id) == null) {
+            return;
+        }
+
+        latest.set(id, Double.doubleToRawLongBits(value));
+
+        int word = id >>> 6;
+        long bit = 1L << (id & 63);
+        long old;
+        do {
+            old = dirty.get(word);
+            if ((old & bit) != 0) {
+                return;
+            }
+        } while (!dirty.compareAndSet(word, old, old | bit));
+    }
+
+    /**
+     * Hand every dirty id's latest value to its listeners. Runs on the event
+     * thread once per frame.
+     */
+    void deliver() {
+        for (int word = 0; word < WORDS; word++) {
+            long bits = dirty.getAndSet(word, 0);
+
+            while (bits != 0) {
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                TelemetryListener[] current = listeners.get(id);
+                if (current == null) {
+                    continue;
+                }
+
+                double value = Double.longBitsToDouble(latest.get(id));
+                for (TelemetryListener tl : current) {
+                    tl.update(value);
+                }
+            }
+        }
+    }
+
+    public void register(int id, TelemetryListener tl) {
+        listeners.add(id, tl);
+
+        SwingUtilities.invokeLater(() -> {
+            if (!frameTimer.isRunning()) {
+                frameTimer.start();
+            }
+        });
+    }
+
+    public void remove(TelemetryListener tl) {
+        listeners.remove(tl);
+    }
+}
@@ -0,0 +1,69 @@
+package com.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+
+/**
+ * Converts a binary telemetry log to the CSV .telem format the dashboard
+ * used to log in, for tools that read it: one line per row, the
+ * milliseconds since the log started, then the value of every channel up
+ * to the highest logged so far, each followed by ", ".
+ * <p>
+ * Usage: TelemetryLogConverter log.tlog [out.telem]
+ * The output defaults to the log's name with a .telem extension.
+ */
+public class TelemetryLogConverter {
+    private final DecimalFormat numberFormat = new DecimalFormat("#.########");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: TelemetryLogConverter log.tlog [out.telem]");
+            System.exit(1);
+        }
+
+        File in = new File(args[0]);
+        File out = (args.length > 1) ? new File(args[1]) : csvFileFor(in);
+        try (Writer writer = new BufferedWriter(new FileWriter(out))) {
+            int rows = new TelemetryLogConverter().toCsv(new TelemetryLogReader(in), writer);
+            System.out.println("Wrote " + rows + " rows to " + out);
+        }
+    }
+
+    private static File csvFileFor(File log) {
+        String name = log.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(log.getParentFile(), name + ".telem");
+    }
+
+    /**
+     * Write every row of the log as a CSV line
+     *
+     * @return - the number of rows written
+     */
+    public int toCsv(TelemetryLogReader log, Writer out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int rows = 0;
+
+        log.rewind();
+        while (log.next()) {
+            line.setLength(0);
+            line.append(log.getMicros() / 1000).append(", ");
+            for (int id = 0; id < log.getWidth(); id++) {
+                line.append(numberFormat.format(log.getValue(id))).append(", ");
+            }
+            line.append(System.lineSeparator());
+            out.write(line.toString());
+            rows++;
+        }
+
+        out.flush();
+        return rows;
+    }
+}
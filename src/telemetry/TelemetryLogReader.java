@@ -0,0 +1,550 @@
+package com.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a binary telemetry log written by a TelemetryLogWriter, one record
+ * at a time. The file is memory mapped rather than read into the heap, in
+ * segments of up to a gigabyte so logs of any length can be read. Each
+ * segment also maps the start of the next, enough to hold any record, so a
+ * record that starts in a segment can be read from it whole.
+ * After next() the reader holds the record's time, which channels it
+ * changed, and the value of every channel as of that record.
+ * <p>
+ * The reader keeps a sparse index of keyframe times and offsets, loaded
+ * from the log's .idx file where it is present and valid, and completed by
+ * scanning only the records after its last entry. seek() starts at the
+ * nearest keyframe, so range() and decimate() read just the records in the
+ * range asked for, however long the log is.
+ * <p>
+ * A record cut short, as by a crash while logging, ends the log.
+ */
+public class TelemetryLogReader {
+    /**
+     * Receives a channel's values in time order
+     */
+    public interface SampleVisitor {
+        /**
+         * @param micros - time the value was set, in microseconds since the
+         *               start of the log
+         */
+        void sample(long micros, float value);
+    }
+
+    static final int SEGMENT_SIZE = 1 << 30;
+    //longer than any record in a log of 65535 channels
+    static final int SEGMENT_OVERLAP = 1 << 20;
+
+    private final ByteBuffer[] segments;
+    private final int segmentSize;
+    private final long size;
+    private final long startMillis;
+    private final String[] names;
+    private final long firstRecord;
+    //the segment holding the current position
+    private ByteBuffer data;
+    private int segment;
+    private final float[] values;
+    private final int[] changed;
+    private int changedCount;
+    private int width;
+    private long micros;
+    private boolean keyframe;
+    //keyframe times and offsets, in log order
+    private long[] keyTimes = new long[64];
+    private long[] keyOffsets = new long[64];
+    private int keyCount;
+    private long endMicros;
+
+    public TelemetryLogReader(File file) throws IOException {
+        this(file, SEGMENT_SIZE, SEGMENT_OVERLAP);
+    }
+
+    /**
+     * @param segmentSize - bytes from the start of one mapped segment to the
+     *                    next
+     * @param overlap     - bytes each segment maps past the start of the next
+     */
+    TelemetryLogReader(File file, int segmentSize, int overlap) throws IOException {
+        this.segmentSize = segmentSize;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            size = channel.size();
+            segments = new ByteBuffer[(int) Math.max(1, (size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i * segmentSize;
+                long length = Math.min(size - start, (long) segmentSize + overlap);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        }
+        data = segments[0];
+
+        try {
+            byte[] magic = new byte[TelemetryLogWriter.MAGIC.length];
+            data.get(magic);
+            if (!Arrays.equals(magic, TelemetryLogWriter.MAGIC)) {
+                throw new IOException("Not a telemetry log: " + file);
+            }
+            startMillis = data.getLong();
+
+            names = new String[data.getShort() & 0xFFFF];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readUTF();
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Telemetry log header cut short: " + file);
+        }
+
+        firstRecord = position();
+        values = new float[names.length];
+        changed = new int[names.length];
+        buildIndex(TelemetryLogWriter.indexFileFor(file));
+    }
+
+    /**
+     * Take what is valid of the index file, then scan the rest of the log
+     * for keyframes and its end time
+     */
+    private void buildIndex(File indexFile) {
+        long scanFrom = firstRecord;
+        if (indexFile.exists()) {
+            try {
+                scanFrom = loadIndex(Files.readAllBytes(indexFile.toPath()));
+            }
+            catch (IOException e) {
+                //the scan below rebuilds it
+            }
+        }
+
+        position(scanFrom);
+        while (true) {
+            long offset = position();
+            if (!next()) {
+                break;
+            }
+            if (keyframe && (keyCount == 0 || offset > keyOffsets[keyCount - 1])) {
+                addKeyframe(micros, offset);
+            }
+            endMicros = micros;
+        }
+        rewind();
+    }
+
+    /**
+     * @return - offset of the last indexed keyframe, where scanning resumes
+     */
+    private long loadIndex(byte[] index) {
+        ByteBuffer in = ByteBuffer.wrap(index);
+        byte[] magic = new byte[TelemetryLogWriter.INDEX_MAGIC.length];
+        if (in.remaining() < magic.length) {
+            return firstRecord;
+        }
+        in.get(magic);
+        if (!Arrays.equals(magic, TelemetryLogWriter.INDEX_MAGIC)) {
+            return firstRecord;
+        }
+
+        while (in.remaining() >= TelemetryLogWriter.INDEX_ENTRY_SIZE) {
+            long time = in.getLong();
+            long offset = in.getLong();
+            //stop at the first entry the log doesn't back up
+            if (offset < firstRecord || offset > size - 9
+                    || (keyCount > 0 && offset <= keyOffsets[keyCount - 1])
+                    || segmentAt(offset).get(offsetIn(offset)) != TelemetryLogWriter.KEYFRAME
+                    || segmentAt(offset).getLong(offsetIn(offset) + 1) != time) {
+                break;
+            }
+            addKeyframe(time, offset);
+        }
+        return (keyCount == 0) ? firstRecord : keyOffsets[keyCount - 1];
+    }
+
+    private void addKeyframe(long time, long offset) {
+        if (keyCount == keyTimes.length) {
+            keyTimes = Arrays.copyOf(keyTimes, keyCount * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, keyCount * 2);
+        }
+        keyTimes[keyCount] = time;
+        keyOffsets[keyCount] = offset;
+        keyCount++;
+    }
+
+    private int segmentIndex(long position) {
+        return (int) Math.min(position / segmentSize, segments.length - 1);
+    }
+
+    private ByteBuffer segmentAt(long position) {
+        return segments[segmentIndex(position)];
+    }
+
+    //offset of a file position within the segment that holds it
+    private int offsetIn(long position) {
+        return (int) (position - (long) segmentIndex(position) * segmentSize);
+    }
+
+    /**
+     * @return - file position of the next byte to read
+     */
+    private long position() {
+        return (long) segment * segmentSize + data.position();
+    }
+
+    private void position(long position) {
+        segment = segmentIndex(position);
+        data = segments[segment];
+        data.position(offsetIn(position));
+    }
+
+    //move on to the next segment once a record starts in it, which keeps a
+    //whole record in the overlap of the segment it starts in
+    private void align() {
+        if (data.position() >= segmentSize && segment + 1 < segments.length) {
+            position(position());
+        }
+    }
+
+    private String readUTF() throws IOException {
+        int length = data.getShort() & 0xFFFF;
+        byte[] utf = new byte[2 + length];
+        utf[0] = (byte) (length >> 8);
+        utf[1] = (byte) length;
+        data.get(utf, 2, length);
+        return new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+    }
+
+    /**
+     * Go back to before the first record
+     */
+    public void rewind() {
+        position(firstRecord);
+        Arrays.fill(values, 0);
+        changedCount = 0;
+        width = 0;
+        micros = 0;
+        keyframe = false;
+    }
+
+    /**
+     * Read the next record
+     *
+     * @return - false at the end of the log
+     */
+    public boolean next() {
+        align();
+        if (!data.hasRemaining()) {
+            return false;
+        }
+
+        try {
+            byte tag = data.get();
+            if (tag == TelemetryLogWriter.KEYFRAME) {
+                readKeyframe();
+            }
+            else if (tag == TelemetryLogWriter.DELTA) {
+                readDelta();
+            }
+            else {
+                throw new BufferUnderflowException();
+            }
+            return true;
+        }
+        catch (BufferUnderflowException e) {
+            //treat a damaged or partial record as the end
+            position(size);
+            changedCount = 0;
+            return false;
+        }
+    }
+
+    private void readKeyframe() {
+        long time = data.getLong();
+        int count = (int) readVarint();
+        if (count > values.length || data.remaining() < 4 * count) {
+            throw new BufferUnderflowException();
+        }
+
+        for (int id = 0; id < count; id++) {
+            values[id] = data.getFloat();
+            changed[id] = id;
+        }
+        changedCount = count;
+        width = count;
+        micros = time;
+        keyframe = true;
+    }
+
+    private void readDelta() {
+        long time = micros + readVarint();
+        int count = (int) readVarint();
+        if (count > values.length) {
+            throw new BufferUnderflowException();
+        }
+
+        for (int i = 0; i < count; i++) {
+            int id = (int) readVarint();
+            if (id >= values.length) {
+                throw new BufferUnderflowException();
+            }
+            values[id] = data.getFloat();
+            changed[i] = id;
+            width = Math.max(width, id + 1);
+        }
+        changedCount = count;
+        micros = time;
+        keyframe = false;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Move to the last record at or before the given time, so the reader
+     * holds every channel's value as of that time. Before the first record
+     * every channel reads 0.
+     *
+     * @param target - microseconds since the start of the log
+     */
+    public void seek(long target) {
+        int lo = 0;
+        int hi = keyCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyTimes[mid] <= target) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+
+        rewind();
+        if (hi >= 0) {
+            position(keyOffsets[hi]);
+        }
+        while (getNextMicros() != -1 && getNextMicros() <= target && next()) {
+            //read up to the target
+        }
+    }
+
+    /**
+     * @return - time of the next record, or -1 at the end of the log
+     */
+    public long getNextMicros() {
+        align();
+        int position = data.position();
+        try {
+            byte tag = data.get();
+            if (tag == TelemetryLogWriter.KEYFRAME) {
+                return data.getLong();
+            }
+            else if (tag == TelemetryLogWriter.DELTA) {
+                return micros + readVarint();
+            }
+            return -1;
+        }
+        catch (BufferUnderflowException e) {
+            return -1;
+        }
+        finally {
+            data.position(position);
+        }
+    }
+
+    /**
+     * Visit a channel's value at the start of a time range, then every
+     * change made to it up to the end of the range. Moves the reader to the
+     * end of the range.
+     *
+     * @param id   - the channel
+     * @param from - start of the range, microseconds since the log's start
+     * @param to   - end of the range, inclusive
+     */
+    public void range(int id, long from, long to, SampleVisitor visitor) {
+        checkId(id);
+        seek(from);
+        float value = values[id];
+        visitor.sample(from, value);
+
+        while (getNextMicros() != -1 && getNextMicros() <= to && next()) {
+            //keyframes restate every channel; only pass on real changes
+            if (keyframe ? Float.floatToIntBits(values[id]) != Float.floatToIntBits(value) : sets(id)) {
+                value = values[id];
+                visitor.sample(micros, value);
+            }
+        }
+    }
+
+    //true if the current delta record set the channel
+    private boolean sets(int id) {
+        for (int i = 0; i < changedCount; i++) {
+            if (changed[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reduce a channel's values over a time range to the lowest and highest
+     * value it held in each of a number of equal time buckets, for plotting.
+     * A value holds until the next change, so each bucket includes the value
+     * held coming into it, and a bucket with no changes gets just that value.
+     * Lines drawn through the buckets then join up.
+     *
+     * @param id      - the channel
+     * @param from    - start of the range, microseconds since the log's start
+     * @param to      - end of the range, after from
+     * @param buckets - how many buckets to divide the range into
+     * @param min     - receives each bucket's lowest value
+     * @param max     - receives each bucket's highest value
+     */
+    public void decimate(int id, long from, long to, int buckets, float[] min, float[] max) {
+        if (buckets <= 0 || to <= from || min.length < buckets || max.length < buckets) {
+            throw new IllegalArgumentException("Bad decimation of " + buckets + " buckets");
+        }
+
+        Decimator decimator = new Decimator(from, (double) (to - from) / buckets, buckets, min, max);
+        range(id, from, to, decimator);
+        decimator.finish();
+    }
+
+    private static class Decimator implements SampleVisitor {
+        private final long from;
+        private final double span;
+        private final int buckets;
+        private final float[] min;
+        private final float[] max;
+        private int bucket = -1;
+        private float held;
+
+        Decimator(long from, double span, int buckets, float[] min, float[] max) {
+            this.from = from;
+            this.span = span;
+            this.buckets = buckets;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public void sample(long micros, float value) {
+            if (bucket < 0) {
+                held = value;
+            }
+            holdUntil(Math.min(buckets - 1, (int) ((micros - from) / span)));
+            min[bucket] = Math.min(min[bucket], value);
+            max[bucket] = Math.max(max[bucket], value);
+            held = value;
+        }
+
+        //carry the held value into every bucket up to b
+        private void holdUntil(int b) {
+            while (bucket < b) {
+                bucket++;
+                min[bucket] = held;
+                max[bucket] = held;
+            }
+        }
+
+        void finish() {
+            holdUntil(buckets - 1);
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= values.length) {
+            throw new IllegalArgumentException("No channel " + id + " in log");
+        }
+    }
+
+    /**
+     * @return - time of the last record, in microseconds since the start
+     */
+    public long getEndMicros() {
+        return endMicros;
+    }
+
+    /**
+     * @return - number of keyframes in the index
+     */
+    public int getKeyframeCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return - wall clock time the log was started, in milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public int getChannelCount() {
+        return names.length;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return - time of the current record, in microseconds since the start
+     */
+    public long getMicros() {
+        return micros;
+    }
+
+    /**
+     * @return - true if the current record holds every channel's value
+     */
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    /**
+     * @return - one past the highest channel logged up to the current record
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return - the channel's value as of the current record
+     */
+    public float getValue(int id) {
+        return values[id];
+    }
+
+    /**
+     * @return - how many channels the current record set
+     */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * @param i - from 0 to getChangedCount() - 1
+     * @return - the i'th channel set by the current record
+     */
+    public int getChangedId(int i) {
+        return changed[i];
+    }
+}
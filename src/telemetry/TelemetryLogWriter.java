@@ -0,0 +1,286 @@
+package com.telemetry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a binary telemetry log. Each row holds only the channels that
+ * changed since the previous row, and rows collect in a large buffer that is
+ * written out, and synced to disk, about once a second rather than per row.
+ * <p>
+ * File layout, big endian: the 4 byte magic "MTL1", an 8 byte wall clock
+ * start time in milliseconds, a 2 byte channel count and each channel's
+ * name as written by DataOutput.writeUTF. Then records, each a tag byte and
+ * <pre>
+ *   keyframe 'K': [8 byte microseconds since start][varint width]
+ *                 [width floats, the value of every channel below width]
+ *   delta    'D': [varint microseconds since previous record][varint count]
+ *                 [count x ([varint id][float value])]
+ * </pre>
+ * where width is one past the highest channel written so far. The first
+ * record is a keyframe, and a row at least KEYFRAME_INTERVAL_US after the
+ * last keyframe is written as a keyframe, so the log can be read from any
+ * keyframe on. Values are stored as floats, the precision telemetry is sent
+ * in.
+ * <p>
+ * Beside the log, [log name].idx indexes its keyframes so a reader can seek
+ * without scanning the log: the 4 byte magic "MTI1", then for each keyframe
+ * its 8 byte time in microseconds and 8 byte offset in the log.
+ */
+public class TelemetryLogWriter implements Closeable {
+    static final byte[] MAGIC = {'M', 'T', 'L', '1'};
+    static final byte KEYFRAME = 'K';
+    static final byte DELTA = 'D';
+    static final byte[] INDEX_MAGIC = {'M', 'T', 'I', '1'};
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final long KEYFRAME_INTERVAL_US = 2_000_000L;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long SYNC_INTERVAL_NS = 1_000_000_000L;
+    //tag, time and count of a delta record at their longest
+    private static final int DELTA_HEADER = 1 + 10 + 5;
+    private static final int ENTRY_SIZE = 5 + 4;
+
+    private final Logger iolog = LoggerFactory.getLogger("d.io");
+    private final FileChannel channel;
+    private final FileChannel index;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(256 * INDEX_ENTRY_SIZE);
+    //bytes of the log already written out of the buffer
+    private long written;
+    //every channel's latest value, for keyframes
+    private final float[] state;
+    private int width;
+    private long lastMicros;
+    private long lastKeyframeMicros;
+    private boolean keyframed;
+    private long lastSyncNs = System.nanoTime();
+    private boolean failed;
+
+    /**
+     * Create a log, replacing any file of the same name
+     *
+     * @param file  - where to write the log
+     * @param names - name of each channel; ids past the last name are ignored
+     */
+    public TelemetryLogWriter(File file, String[] names) throws IOException {
+        this(file, names, System.currentTimeMillis());
+    }
+
+    /**
+     * @param startMillis - wall clock time that row times are counted from
+     */
+    public TelemetryLogWriter(File file, String[] names, long startMillis) throws IOException {
+        if (names.length > 0xFFFF) {
+            throw new IllegalArgumentException("Too many channels for a log");
+        }
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        state = new float[names.length];
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            index = FileChannel.open(indexFileFor(file).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.write(MAGIC);
+        out.writeLong(startMillis);
+        out.writeShort(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        try {
+            writeFully(channel, ByteBuffer.wrap(header.toByteArray()));
+            writeFully(index, ByteBuffer.wrap(INDEX_MAGIC));
+        }
+        catch (IOException e) {
+            channel.close();
+            index.close();
+            throw e;
+        }
+        written = header.size();
+    }
+
+    /**
+     * @return - the keyframe index kept beside the given log
+     */
+    public static File indexFileFor(File log) {
+        return new File(log.getPath() + ".idx");
+    }
+
+    /**
+     * Append a row of changed channel values. Times earlier than the last
+     * row's are logged as the last row's time. A write failure is logged
+     * once and ends the log; it is never thrown to the caller.
+     *
+     * @param micros - time of the row, in microseconds since the start time
+     * @param ids    - distinct changed channels, the first count are used
+     * @param values - new value for the channel at the same position
+     * @param count  - number of changed channels, may be 0
+     */
+    public synchronized void write(long micros, int[] ids, float[] values, int count) {
+        if (failed || !channel.isOpen()) {
+            return;
+        }
+
+        micros = Math.max(micros, lastMicros);
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            if (id < 0 || id >= state.length) {
+                continue;
+            }
+            state[id] = values[i];
+            width = Math.max(width, id + 1);
+            valid++;
+        }
+
+        try {
+            if (!keyframed || (micros - lastKeyframeMicros) >= KEYFRAME_INTERVAL_US) {
+                writeKeyframe(micros);
+            }
+            else {
+                writeDelta(micros, ids, values, count, valid);
+            }
+            lastMicros = micros;
+            syncIfDue();
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeKeyframe(long micros) throws IOException {
+        ensure(1 + 8 + 5 + 4 * width);
+        if (indexBuffer.remaining() < INDEX_ENTRY_SIZE) {
+            drainIndex();
+        }
+        indexBuffer.putLong(micros);
+        indexBuffer.putLong(written + buffer.position());
+
+        buffer.put(KEYFRAME);
+        buffer.putLong(micros);
+        putVarint(width);
+        for (int id = 0; id < width; id++) {
+            buffer.putFloat(state[id]);
+        }
+        keyframed = true;
+        lastKeyframeMicros = micros;
+    }
+
+    private void writeDelta(long micros, int[] ids, float[] values, int count, int valid)
+            throws IOException {
+        ensure(DELTA_HEADER + ENTRY_SIZE * valid);
+        buffer.put(DELTA);
+        putVarint(micros - lastMicros);
+        putVarint(valid);
+        for (int i = 0; i < count; i++) {
+            if (ids[i] < 0 || ids[i] >= state.length) {
+                continue;
+            }
+            putVarint(ids[i]);
+            buffer.putFloat(values[i]);
+        }
+    }
+
+    /**
+     * Write out buffered rows and sync them to disk if that hasn't been done
+     * for a second. Writers with nothing new to log call this to bound how
+     * long their last rows stay in memory.
+     */
+    public synchronized void syncIfDue() {
+        long now = System.nanoTime();
+        if (failed || !channel.isOpen() || (now - lastSyncNs) < SYNC_INTERVAL_NS) {
+            return;
+        }
+        lastSyncNs = now;
+
+        try {
+            sync();
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void sync() throws IOException {
+        drainIndex();
+        channel.force(false);
+        index.force(false);
+    }
+
+    //make room for a record of up to the given size
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        written += buffer.remaining();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    //index entries are written after the log they point into
+    private void drainIndex() throws IOException {
+        drain();
+        indexBuffer.flip();
+        writeFully(index, indexBuffer);
+        indexBuffer.clear();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        iolog.error("Telemetry log stopped; write failed", e);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+
+        try {
+            if (!failed) {
+                sync();
+            }
+        }
+        finally {
+            channel.close();
+            index.close();
+        }
+    }
+}
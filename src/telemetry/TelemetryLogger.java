@@ -1,35 +1,58 @@
 package com.telemetry;
 
 import com.Context;
+import com.serial.Serial;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.util.TimerTask;
 
+/**
+ * Logs the telemetry table to log/[instance].tlog every log period in which
+ * it changed. Only the channels that changed since the last row are
+ * written; see TelemetryLogWriter for the format, and TelemetryLogConverter
+ * to turn a log into the older CSV .telem format.
+ * <p>
+ * In event recording mode the periodic snapshots stop and a
+ * TelemetryRecorder writes every update instead, timestamped as it arrived,
+ * to the same log.
+ */
 public class TelemetryLogger {
-    static final DecimalFormat numberFormat = new DecimalFormat("#.########");
     private final static int DEFAULT_LOG_PERIOD_MS = 250;
+    private final Logger iolog = LoggerFactory.getLogger("d.io");
     private final long startTime;
     private final TelemetryManager telemetry;
-    private BufferedWriter logFile;
+    //values as of the last row, and the changes found for the next one
+    private final float[] logged = new float[Serial.MAX_TELEMETRY];
+    private final int[] changedIds = new int[Serial.MAX_TELEMETRY];
+    private final float[] changedValues = new float[Serial.MAX_TELEMETRY];
+    private int loggedWidth;
+    private TelemetryLogWriter logFile;
+    private TelemetryRecorder recorder;
+    private boolean paused;
     private java.util.Timer logTimer;
     private int logPeriod;
     private int previousTelemetryIndex;
 
     public TelemetryLogger(Context ctx, TelemetryManager tm) {
         telemetry = tm;
+        startTime = System.nanoTime();
+        String[] names = new String[Serial.MAX_TELEMETRY];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = tm.getTelemetryName(i);
+        }
+
+        File file = new File("log/" + ctx.getInstanceLogName() + ".tlog");
         try {
-            String logn = ctx.getInstanceLogName();
-            FileWriter fileWriter = new FileWriter("log/" + logn + ".telem", false);
-            logFile = new BufferedWriter(fileWriter);
+            logFile = new TelemetryLogWriter(file, names);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close, "telemetry-log-close"));
         }
         catch (IOException ex) {
-            System.err.println(ex);
+            iolog.error("Can't open telemetry log " + file, ex);
         }
         setPeriod(DEFAULT_LOG_PERIOD_MS);
-        startTime = System.currentTimeMillis();
     }
 
     public int getPeriod() {
@@ -47,35 +70,111 @@ public class TelemetryLogger {
         logPeriod = period;
     }
 
-    private String formatLog(double t) {
-        return numberFormat.format(t);
+    /**
+     * Switch between logging a snapshot every log period and recording
+     * every update as it is made
+     */
+    public synchronized void setRecordEvents(boolean enabled) {
+        if (logFile == null || enabled == isRecordingEvents()) {
+            return;
+        }
+
+        if (enabled) {
+            recorder = new TelemetryRecorder(logFile, startTime, Serial.MAX_TELEMETRY);
+            recorder.start();
+            if (!paused) {
+                telemetry.setRecorder(recorder);
+            }
+        }
+        else {
+            telemetry.setRecorder(null);
+            recorder.stop();
+            recorder = null;
+            //the next snapshot restates every channel
+            loggedWidth = 0;
+        }
+    }
+
+    /**
+     * Stop logging telemetry changes until unpaused, as while a recorded
+     * session is played back
+     */
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        telemetry.setRecorder(paused ? null : recorder);
+        if (!paused) {
+            //ignore what changed while paused until it changes again
+            previousTelemetryIndex = telemetry.changeIndex();
+        }
+    }
+
+    public synchronized boolean isRecordingEvents() {
+        return recorder != null;
+    }
+
+    /**
+     * @return - updates event recording couldn't keep up with
+     */
+    public synchronized long getDroppedEvents() {
+        return (recorder == null) ? 0 : recorder.getDroppedCount();
+    }
+
+    /**
+     * Write out everything logged so far and stop logging
+     */
+    public void close() {
+        if (logTimer != null) {
+            logTimer.cancel();
+        }
+        setRecordEvents(false);
+        if (logFile != null) {
+            try {
+                logFile.close();
+            }
+            catch (IOException ex) {
+                iolog.error("Error closing telemetry log", ex);
+            }
+        }
     }
 
     private TimerTask makeTimerTask() {
         return new TimerTask() {
             public void run() {
-                try {
+                if (logFile == null) {
+                    return;
+                }
+
+                synchronized (TelemetryLogger.this) {
                     int tmIdx = telemetry.changeIndex();
-                    if (tmIdx == previousTelemetryIndex) {
+                    if (tmIdx == previousTelemetryIndex || recorder != null || paused) {
+                        logFile.syncIfDue();
                         return;
                     }
                     previousTelemetryIndex = tmIdx;
 
-                    long dt = System.currentTimeMillis() - startTime;
-                    logFile.write(dt + ", ");
-
-                    for (int i = 0; i < telemetry.maxIndex(); i++) {
-                        logFile.write(formatLog(telemetry.get(i)));
-                        logFile.write(", ");
-                    }
-
-                    logFile.newLine();
-                    logFile.flush();
-                }
-                catch (IOException ex) {
-                    System.err.println(ex);
+                    long dt = (System.nanoTime() - startTime) / 1000;
+                    logFile.write(dt, changedIds, changedValues, findChanges());
                 }
             }
         };
     }
+
+    //collect the channels that differ from the last row, new ones included
+    private int findChanges() {
+        int width = telemetry.maxIndex();
+        int count = 0;
+
+        for (int i = 0; i < width; i++) {
+            float value = (float) telemetry.get(i);
+            if (i >= loggedWidth
+                    || Float.floatToIntBits(value) != Float.floatToIntBits(logged[i])) {
+                logged[i] = value;
+                changedIds[count] = i;
+                changedValues[count] = value;
+                count++;
+            }
+        }
+        loggedWidth = width;
+        return count;
+    }
 }
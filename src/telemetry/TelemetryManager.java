@@ -2,21 +2,43 @@ package com.telemetry;
 
 import com.Context;
 import com.graph.DataSource;
+import com.serial.Serial;
 import com.ui.SampleSource;
 
-import java.util.*;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Latest value of every telemetry id, and the listeners for each id.
+ * <p>
+ * Values live in a fixed array of Serial.MAX_TELEMETRY doubles held as raw
+ * long bits in an AtomicLongArray, so an update is a constant time,
+ * allocation free volatile write, and readers on any thread see a whole,
+ * current value. Listeners are kept per id in copy-on-write arrays that
+ * updates read without locking. Display listeners are instead called on
+ * the event thread once per display frame by a TelemetryDispatcher. Only
+ * the first update to an id allocates, creating its graph data source. Ids
+ * outside 0 to MAX_TELEMETRY - 1 are ignored.
+ */
 public class TelemetryManager {
-
-    private final List<Double> telemetry = new ArrayList<>();
-    private final Map<Integer, List<TelemetryListener>> listenerMap =
-            new HashMap<>();
-    private final List<DataSource> streams = new ArrayList<>();
+    private final AtomicLongArray telemetry = new AtomicLongArray(Serial.MAX_TELEMETRY);
+    private final ListenerTable listeners = new ListenerTable(Serial.MAX_TELEMETRY);
+    private final TelemetryDispatcher display = new TelemetryDispatcher();
+    private final List<DataSource> streams = new CopyOnWriteArrayList<>();
+    private final AtomicInteger telemetryIndex = new AtomicInteger();
+    private volatile TelemetryRecorder recorder;
+    //time graph histories are kept at
+    private volatile LongSupplier timeSource = System::nanoTime;
+    //one past the highest id updated so far
+    private volatile int size = 0;
 
     private ResourceBundle labels = null;
-    private int telemetryIndex = 0;
 
     /**
      * Class Constructor
@@ -68,18 +90,54 @@ public class TelemetryManager {
     }
 
     public void update(int id, double value) {
-        if (id >= telemetry.size()) {
-            for (int i = telemetry.size(); i <= id; i++) {
-                telemetry.add(0.0);
-                SampleSource newSource = new SampleSource(getTelemetryName(i));
-                this.registerListener(i, newSource);
-                streams.add(newSource);
-            }
+        if (store(id, value)) {
+            telemetryIndex.incrementAndGet();
+        }
+    }
+
+    /**
+     * Apply several values that arrived together, counted as one change
+     *
+     * @param ids    - telemetry ids, the first count are used
+     * @param values - value for the id at the same position
+     * @param count  - number of values
+     */
+    public void update(int[] ids, float[] values, int count) {
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            changed |= store(ids[i], values[i]);
+        }
+        if (changed) {
+            telemetryIndex.incrementAndGet();
+        }
+    }
+
+    private boolean store(int id, double value) {
+        if (id < 0 || id >= Serial.MAX_TELEMETRY) {
+            return false;
+        }
+        if (id >= size) {
+            grow(id + 1);
         }
 
-        telemetry.set(id, value);
+        telemetry.set(id, Double.doubleToRawLongBits(value));
+        TelemetryRecorder rec = recorder;
+        if (rec != null) {
+            rec.record(id, value);
+        }
         updateObservers(id, value);
-        telemetryIndex += 1;
+        display.offer(id, value);
+        return true;
+    }
+
+    //give every new id up to newSize a graph data source
+    private synchronized void grow(int newSize) {
+        for (int i = size; i < newSize; i++) {
+            SampleSource newSource = new SampleSource(getTelemetryName(i), this::now);
+            registerListener(i, newSource);
+            streams.add(newSource);
+        }
+        size = Math.max(size, newSize);
     }
 
     /**
@@ -87,7 +145,7 @@ public class TelemetryManager {
      * telemetry values since the last time it was observed
      */
     public int changeIndex() {
-        return telemetryIndex;
+        return telemetryIndex.get();
     }
 
     public double getTelemetry(int id) {
@@ -95,37 +153,92 @@ public class TelemetryManager {
     }
 
     public double get(int id) {
-        if (id >= telemetry.size()) {
+        if (id < 0 || id >= size) {
             return 0;
         }
 
-        return telemetry.get(id);
+        return Double.longBitsToDouble(telemetry.get(id));
     }
 
     public int maxIndex() {
-        return telemetry.size();
+        return size;
     }
 
+    /**
+     * Register a listener called on the serial thread with every value
+     * received for the id
+     */
     public void registerListener(int id, TelemetryListener tl) {
-        List<TelemetryListener> listeners = listenerMap.computeIfAbsent(id, k -> new LinkedList<>());
+        checkId(id);
+        listeners.add(id, tl);
+    }
 
-        listeners.add(tl);
+    /**
+     * Register a listener that updates the display. It is called on the
+     * Swing event thread, at most once per display frame, with the latest
+     * value received for the id during that frame.
+     */
+    public void registerDisplayListener(int id, TelemetryListener tl) {
+        checkId(id);
+        display.register(id, tl);
     }
 
+    /**
+     * Remove a listener, whether registered for every value or for display
+     */
     public void removeListener(TelemetryListener tl) {
-        for (List<TelemetryListener> ll : listenerMap.values()) {
-            ll.remove(tl);
+        listeners.remove(tl);
+        display.remove(tl);
+    }
+
+    /**
+     * @param rec - recorder to hand every update to, or null for none
+     */
+    public void setRecorder(TelemetryRecorder rec) {
+        recorder = rec;
+    }
+
+    /**
+     * Set the clock graph histories are kept at, such as a recording's
+     * position while it plays. The new clock is offset if need be so the
+     * time never goes back, as histories must be added to in time order.
+     *
+     * @param source - time in nanoseconds, or null for System.nanoTime
+     */
+    public synchronized void setTimeSource(LongSupplier source) {
+        LongSupplier next = (source == null) ? System::nanoTime : source;
+        long offset = Math.max(0, now() - next.getAsLong());
+        timeSource = (offset == 0) ? next : () -> next.getAsLong() + offset;
+    }
+
+    /**
+     * @return - the time graph histories are kept at, in nanoseconds
+     */
+    public long now() {
+        return timeSource.getAsLong();
+    }
+
+    /**
+     * @param hz - how many times a second display listeners are updated
+     */
+    public void setDisplayRate(int hz) {
+        display.setFrameRate(hz);
+    }
+
+    private static void checkId(int id) {
+        if (id < 0 || id >= Serial.MAX_TELEMETRY) {
+            throw new IllegalArgumentException("No telemetry id " + id);
         }
     }
 
     private void updateObservers(int id, double newValue) {
-        List<TelemetryListener> listeners = listenerMap.get(id);
+        TelemetryListener[] current = listeners.get(id);
 
-        if (listeners == null) {
+        if (current == null) {
             return;
         }
 
-        for (TelemetryListener tl : listeners) {
+        for (TelemetryListener tl : current) {
             tl.update(newValue);
         }
     }
@@ -0,0 +1,159 @@
+package com.telemetry;
+
+import com.util.Playback;
+import com.util.PlaybackClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a telemetry log back into a TelemetryManager, as though the rover
+ * were sending it again. Listeners see the recorded values with their
+ * recorded timing, so the map follows the rover's recorded position and
+ * widgets and graphs redraw as they did live. The timing is set by a
+ * PlaybackClock: real time, N times faster, or as fast as possible, paused,
+ * and moved with seek.
+ * <p>
+ * Records are played on a thread of their own, each as one update of
+ * preallocated arrays, so playback allocates nothing per sample. Played as
+ * fast as possible, a log is also a repeatable load for the display.
+ */
+public class TelemetryPlayer implements Playback {
+    //longest wait before checking for a stop or a seek
+    private static final long MAX_WAIT_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final TelemetryLogReader log;
+    private final TelemetryManager telemetry;
+    private final PlaybackClock clock;
+    private final int[] ids;
+    private final float[] values;
+    private long seekTarget = -1;
+    private volatile boolean finished;
+    private volatile boolean running;
+    private Thread player;
+
+    /**
+     * @param log       - the log to play
+     * @param telemetry - where to send the recorded values
+     * @param speed     - initial speed, as for PlaybackClock
+     */
+    public TelemetryPlayer(TelemetryLogReader log, TelemetryManager telemetry, double speed) {
+        this.log = log;
+        this.telemetry = telemetry;
+        clock = new PlaybackClock(speed);
+        ids = new int[log.getChannelCount()];
+        values = new float[log.getChannelCount()];
+        log.rewind();
+    }
+
+    public PlaybackClock getClock() {
+        return clock;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        player = new Thread(this::playLoop, "telemetry-playback");
+        player.setDaemon(true);
+        player.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        player.interrupt();
+        try {
+            player.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        player = null;
+    }
+
+    /**
+     * Jump to a time in the log. Every channel is set to its value at that
+     * time before playback continues from there.
+     *
+     * @param micros - microseconds since the start of the log
+     */
+    public void seek(long micros) {
+        synchronized (this) {
+            seekTarget = Math.max(0, micros);
+            finished = false;
+        }
+        clock.seek(micros);
+    }
+
+    public long getPositionMicros() {
+        return Math.min(clock.getPosition(), getLengthMicros());
+    }
+
+    public long getLengthMicros() {
+        return log.getEndMicros();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private synchronized long takeSeek() {
+        long target = seekTarget;
+        seekTarget = -1;
+        return target;
+    }
+
+    private void playLoop() {
+        try {
+            while (running) {
+                long target = takeSeek();
+                if (target >= 0) {
+                    log.seek(target);
+                    playAll();
+                    finished = false;
+                    continue;
+                }
+
+                long next = log.getNextMicros();
+                if (next < 0) {
+                    finished = true;
+                    clock.awaitChange(MAX_WAIT_NS);
+                    continue;
+                }
+
+                if (clock.awaitDue(next, MAX_WAIT_NS) && log.next()) {
+                    playChanges();
+                    clock.played(log.getMicros());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            //stopped
+        }
+    }
+
+    //set every channel logged so far to its current value
+    private void playAll() {
+        int count = log.getWidth();
+        for (int id = 0; id < count; id++) {
+            ids[id] = id;
+            values[id] = log.getValue(id);
+        }
+        telemetry.update(ids, values, count);
+    }
+
+    private void playChanges() {
+        int count = log.getChangedCount();
+        for (int i = 0; i < count; i++) {
+            int id = log.getChangedId(i);
+            ids[i] = id;
+            values[i] = log.getValue(id);
+        }
+        telemetry.update(ids, values, count);
+    }
+}
@@ -0,0 +1,244 @@
+package com.telemetry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every telemetry update, rather than periodic snapshots of the
+ * table, to a TelemetryLogWriter. Each update becomes a (nanoTime, id,
+ * value) event appended to a ring owned by the updating thread, so the
+ * serial thread never locks, allocates or waits on the disk to record. A
+ * background thread drains the rings in time order into log rows; events
+ * from the same microsecond with different ids share a row.
+ * <p>
+ * A thread that gets RING_SIZE events ahead of the writer has its further
+ * events dropped and counted, rather than being held up. A ring is let go
+ * once its thread has ended and it has been drained, and every ring is let
+ * go when the recorder stops.
+ */
+public class TelemetryRecorder {
+    static final int RING_SIZE = 16384;
+    private static final long IDLE_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final TelemetryLogWriter log;
+    private final long startNanos;
+    //each producing thread's ring, and the same rings in a list to drain
+    private final Map<Thread, EventRing> ringOf = new ConcurrentHashMap<>();
+    private final List<EventRing> rings = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int[] rowIds;
+    private final float[] rowValues;
+    //row each id was last added to, to keep a row's ids distinct
+    private final long[] rowOf;
+    private long rowNumber;
+    private volatile boolean running;
+    private Thread drainer;
+
+    /**
+     * @param log        - where to write rows
+     * @param startNanos - System.nanoTime that row times are counted from
+     * @param channels   - number of telemetry ids that can be recorded
+     */
+    public TelemetryRecorder(TelemetryLogWriter log, long startNanos, int channels) {
+        this.log = log;
+        this.startNanos = startNanos;
+        rowIds = new int[channels];
+        rowValues = new float[channels];
+        rowOf = new long[channels];
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        drainer = new Thread(this::drainLoop, "telemetry-recorder");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stop accepting events and write out every event already recorded
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainer = null;
+        ringOf.clear();
+        rings.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Record an update made now by the calling thread
+     */
+    public void record(int id, double value) {
+        if (!running || id < 0 || id >= rowIds.length) {
+            return;
+        }
+
+        Thread thread = Thread.currentThread();
+        EventRing ring = ringOf.get(thread);
+        if (ring == null) {
+            ring = new EventRing(thread);
+            ringOf.put(thread, ring);
+            rings.add(ring);
+        }
+        if (!ring.offer(System.nanoTime(), id, (float) value)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return - rings held for producing threads
+     */
+    int getRingCount() {
+        return rings.size();
+    }
+
+    /**
+     * @return - events lost because a ring was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drain() == 0) {
+                log.syncIfDue();
+                LockSupport.parkNanos(IDLE_NS);
+            }
+        }
+        //events recorded before running was cleared
+        drain();
+    }
+
+    /**
+     * Write out every event waiting in the rings, oldest first
+     *
+     * @return - the number of events written
+     */
+    int drain() {
+        int written = 0;
+        int count = 0;
+        long rowMicros = 0;
+        rowNumber++;
+
+        while (true) {
+            EventRing next = null;
+            for (EventRing ring : rings) {
+                if (ring.hasNext() && (next == null || ring.nextTime() < next.nextTime())) {
+                    next = ring;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+
+            long micros = Math.max(0, (next.nextTime() - startNanos) / 1000);
+            int id = next.nextId();
+            if (count > 0 && (micros != rowMicros || rowOf[id] == rowNumber)) {
+                log.write(rowMicros, rowIds, rowValues, count);
+                count = 0;
+                rowNumber++;
+            }
+
+            rowMicros = micros;
+            rowOf[id] = rowNumber;
+            rowIds[count] = id;
+            rowValues[count] = next.nextValue();
+            count++;
+            next.advance();
+            written++;
+        }
+
+        if (count > 0) {
+            log.write(rowMicros, rowIds, rowValues, count);
+        }
+
+        //an ended thread can't offer again, so its emptied ring is done
+        for (EventRing ring : rings) {
+            if (!ring.owner.isAlive() && !ring.hasNext()) {
+                rings.remove(ring);
+                ringOf.remove(ring.owner);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Single producer, single consumer ring of events. The owning thread
+     * offers; the drain thread reads and advances.
+     */
+    private static class EventRing {
+        final Thread owner;
+        private final long[] times = new long[RING_SIZE];
+        private final int[] ids = new int[RING_SIZE];
+        private final float[] values = new float[RING_SIZE];
+        //next slot to write, and next slot to read
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        EventRing(Thread owner) {
+            this.owner = owner;
+        }
+
+        boolean offer(long time, int id, float value) {
+            long h = head.get();
+            if (h - tail.get() >= RING_SIZE) {
+                return false;
+            }
+
+            int slot = (int) (h & (RING_SIZE - 1));
+            times[slot] = time;
+            ids[slot] = id;
+            values[slot] = value;
+            head.lazySet(h + 1);
+            return true;
+        }
+
+        boolean hasNext() {
+            return tail.get() != head.get();
+        }
+
+        private int slot() {
+            return (int) (tail.get() & (RING_SIZE - 1));
+        }
+
+        long nextTime() {
+            return times[slot()];
+        }
+
+        int nextId() {
+            return ids[slot()];
+        }
+
+        float nextValue() {
+            return values[slot()];
+        }
+
+        void advance() {
+            tail.lazySet(tail.get() + 1);
+        }
+    }
+}
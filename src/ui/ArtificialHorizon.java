@@ -106,7 +106,6 @@ public class ArtificialHorizon extends JPanel {
             this.pitch = pitch;
             this.roll = roll;
             repainter.repaint();
-            Toolkit.getDefaultToolkit().sync();
         }
     }
 
@@ -166,7 +166,8 @@ public class DataWindow implements ActionListener {
             }
 
             public boolean isRowEditable(int row) {
-                return true;
+                //a recording's settings are only for reading
+                return !context.isPlayback();
             }
 
             public void setValueAt(String val, int row) {
@@ -283,7 +284,7 @@ public class DataWindow implements ActionListener {
                 if (setModel == null) {
                     return;
                 }
-                if (context.connected) {
+                if (context.connected || context.isPlayback()) {
                     telModel.fireTableRowsUpdated(0, Serial.MAX_TELEMETRY);
                     setModel.fireTableRowsUpdated(0, Serial.MAX_SETTINGS);
                     telTable.invalidate();
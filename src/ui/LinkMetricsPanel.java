@@ -0,0 +1,69 @@
+package com.ui;
+
+import com.Context;
+import com.serial.LinkMetrics;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Shows the serial link metrics, refreshed once a second while the panel is
+ * on screen, with a button to append them to a file in the log directory.
+ */
+public class LinkMetricsPanel extends JPanel {
+    private static final int REFRESH_MS = 1000;
+
+    private final Context context;
+    private final LinkMetrics metrics;
+    private final JTextArea text = new JTextArea(12, 48);
+    private final JLabel dumpStatus = new JLabel(" ");
+    private final Timer refresh = new Timer(REFRESH_MS, event -> update());
+
+    public LinkMetricsPanel(Context ctx) {
+        this.context = ctx;
+        this.metrics = ctx.getLinkMetrics();
+
+        setLayout(new BorderLayout());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        add(new JScrollPane(text), BorderLayout.CENTER);
+
+        JButton dumpButton = new JButton("Dump to File");
+        dumpButton.addActionListener(event -> dump());
+        JPanel buttons = new JPanel();
+        buttons.add(dumpButton);
+        buttons.add(dumpStatus);
+        add(buttons, BorderLayout.SOUTH);
+
+        update();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refresh.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refresh.stop();
+        super.removeNotify();
+    }
+
+    private void update() {
+        StringWriter report = new StringWriter();
+        metrics.dump(new PrintWriter(report));
+        text.setText(report.toString());
+        text.setCaretPosition(0);
+    }
+
+    private void dump() {
+        File file = new File("log/" + context.getInstanceLogName() + ".link.txt");
+        dumpStatus.setText(metrics.dump(file)
+                ? "Wrote " + file.getPath()
+                : "Can't write " + file.getPath());
+    }
+}
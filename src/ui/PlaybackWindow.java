@@ -0,0 +1,248 @@
+package com.ui;
+
+import com.Context;
+import com.serial.CaptureTransport;
+import com.telemetry.TelemetryLogReader;
+import com.telemetry.TelemetryPlayer;
+import com.util.Playback;
+import com.util.PlaybackClock;
+import com.util.PlaybackTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a recorded session back through the dashboard. A telemetry log
+ * (.tlog) drives the telemetry table, so the map, widgets and graphs follow
+ * it; a serial capture (.scap) is replayed through the serial parser, so
+ * state and sensor displays follow as well. Session logging is paused while
+ * a recording plays.
+ */
+public class PlaybackWindow {
+    private static final int REFRESH_MS = 200;
+    private static final int SLIDER_STEPS = 1000;
+    private static final String[] SPEED_NAMES = {"1x", "2x", "5x", "10x", "Max"};
+    private static final double[] SPEEDS =
+            {1.0, 2.0, 5.0, 10.0, PlaybackClock.AS_FAST_AS_POSSIBLE};
+
+    private final Logger ioerr = LoggerFactory.getLogger("d.io");
+    private final Context context;
+    private final JFrame frame;
+    private final JLabel fileLabel = new JLabel("No recording open");
+    private final JButton playButton = new JButton("Pause");
+    private final JComboBox<String> speedBox = new JComboBox<>(SPEED_NAMES);
+    private final JSlider slider = new JSlider(0, SLIDER_STEPS, 0);
+    private final JLabel timeLabel = new JLabel(formatTime(0) + " / " + formatTime(0));
+    private final Timer refresh = new Timer(REFRESH_MS, event -> update());
+    private Playback playback;
+    private TelemetryPlayer player;
+    private CaptureTransport capture;
+
+    public PlaybackWindow(Context cxt) {
+        this.context = cxt;
+
+        frame = new JFrame("Log Playback");
+        JPanel container = new JPanel();
+        container.setLayout(new BoxLayout(container, BoxLayout.Y_AXIS));
+
+        JPanel filePanel = new JPanel();
+        JButton openButton = new JButton("Open...");
+        openButton.addActionListener(event -> chooseFile());
+        filePanel.add(openButton);
+        filePanel.add(fileLabel);
+        container.add(filePanel);
+
+        JPanel controls = new JPanel();
+        playButton.addActionListener(event -> togglePaused());
+        speedBox.addActionListener(event -> updateSpeed());
+        controls.add(playButton);
+        controls.add(new JLabel("Speed:"));
+        controls.add(speedBox);
+        controls.add(timeLabel);
+        container.add(controls);
+
+        //seek once the slider is let go, rather than on every step of a drag
+        slider.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                seekToSlider();
+            }
+        });
+        container.add(slider);
+        setControlsEnabled(false);
+
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refresh.stop();
+                closePlayback();
+            }
+        });
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.add(container);
+        frame.pack();
+        frame.setVisible(true);
+        refresh.start();
+    }
+
+    private static String formatTime(long micros) {
+        long seconds = TimeUnit.MICROSECONDS.toSeconds(micros);
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    public void toFront() {
+        frame.toFront();
+    }
+
+    public boolean getVisible() {
+        return frame.isVisible();
+    }
+
+    private void chooseFile() {
+        JFileChooser chooser = new JFileChooser(new File("log"));
+        chooser.setDialogTitle("Choose a recording to play");
+        chooser.setFileFilter(new FileNameExtensionFilter(
+                "Telemetry logs and serial captures", "tlog", "scap"));
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = chooser.getSelectedFile();
+        if (playback == null && context.connected) {
+            JOptionPane.showMessageDialog(frame,
+                    "Disconnect from the rover before playing a recording");
+            return;
+        }
+
+        closePlayback();
+        try {
+            open(file);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(frame,
+                    "Can't play " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+        fileLabel.setText(file.getName());
+        setControlsEnabled(true);
+        playButton.setText("Pause");
+        updateSpeed();
+        update();
+    }
+
+    private void open(File file) throws IOException {
+        double speed = SPEEDS[speedBox.getSelectedIndex()];
+        context.telemLog.setPaused(true);
+        try {
+            if (file.getName().endsWith(".scap")) {
+                capture = new CaptureTransport(file, speed);
+                context.playTransport(capture);
+                playback = capture;
+            }
+            else {
+                player = new TelemetryPlayer(new TelemetryLogReader(file), context.telemetry, speed);
+                player.start();
+                playback = player;
+            }
+            //graph the recording on its own time scale, whatever the speed
+            context.telemetry.setTimeSource(new PlaybackTimeline(playback.getClock()));
+        }
+        catch (IOException | IllegalArgumentException e) {
+            context.telemLog.setPaused(false);
+            throw e;
+        }
+    }
+
+    private void closePlayback() {
+        if (playback == null) {
+            return;
+        }
+
+        if (player != null) {
+            player.stop();
+            player = null;
+        }
+        else {
+            if (context.transport() == capture) {
+                context.closePort();
+            }
+            //already closed if the link was replaced, but make sure
+            try {
+                capture.close();
+            }
+            catch (IOException e) {
+                ioerr.error("Error closing " + capture.getName(), e);
+            }
+            capture = null;
+        }
+        playback = null;
+        context.telemetry.setTimeSource(null);
+        context.telemLog.setPaused(false);
+        fileLabel.setText("No recording open");
+        setControlsEnabled(false);
+    }
+
+    private void setControlsEnabled(boolean enabled) {
+        playButton.setEnabled(enabled);
+        slider.setEnabled(enabled);
+    }
+
+    private void togglePaused() {
+        if (playback == null) {
+            return;
+        }
+
+        PlaybackClock clock = playback.getClock();
+        boolean paused = !clock.isPaused();
+        //play a finished recording again from the start
+        if (!paused && playback.isFinished()) {
+            playback.seek(0);
+        }
+        clock.setPaused(paused);
+        playButton.setText(paused ? "Play" : "Pause");
+    }
+
+    private void updateSpeed() {
+        if (playback != null) {
+            playback.getClock().setSpeed(SPEEDS[speedBox.getSelectedIndex()]);
+        }
+    }
+
+    private void seekToSlider() {
+        if (playback == null) {
+            return;
+        }
+
+        long length = playback.getLengthMicros();
+        playback.seek(length * slider.getValue() / SLIDER_STEPS);
+        update();
+    }
+
+    private void update() {
+        if (playback == null) {
+            return;
+        }
+        //a capture's link can be closed from the connection controls
+        if (capture != null && context.transport() != capture) {
+            closePlayback();
+            return;
+        }
+
+        long length = playback.getLengthMicros();
+        long position = playback.getPositionMicros();
+        if (!slider.getValueIsAdjusting() && length > 0) {
+            slider.setValue((int) (position * SLIDER_STEPS / length));
+        }
+        timeLabel.setText(formatTime(position) + " / " + formatTime(length));
+    }
+}
@@ -21,8 +21,10 @@ public class RadioWidget {
 
         for (int i = 0; i < channels.length; i++) {
             final int idx = i;
-            ctx.telemetry.registerListener(channels[i],
-                    (double d) -> b.data[idx] = (float) d / 180f);
+            ctx.telemetry.registerDisplayListener(channels[i], (double d) -> {
+                b.data[idx] = (float) d / 180f;
+                b.repaint();
+            });
         }
 
         JPanel container = new TransparentPanel(ctx, size);
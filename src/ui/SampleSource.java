@@ -1,42 +1,85 @@
 package com.ui;
 
-import com.graph.DataSource;
+import com.graph.HistorySource;
+import com.graph.SampleHistory;
 import com.telemetry.TelemetryListener;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
-public class SampleSource implements DataSource, TelemetryListener {
-    static final int SAMPLES = 1000;
+/**
+ * Graph data source for one telemetry id. Every value received is kept
+ * with its time in a SampleHistory, so graphs show channels that update at
+ * different rates on the same time scale. The history is only made once a
+ * value arrives, so ids that are never sent cost nothing. Times come from
+ * the source's clock, which follows the recording during playback.
+ */
+public class SampleSource implements HistorySource, TelemetryListener {
+    //time covered by get, from x = 0.0 up to now at x = 1.0
+    static final long GET_SPAN_NANOS = TimeUnit.MINUTES.toNanos(1);
     static final float SAT = 0.90f;
     static final float BRIGHT = 0.5f;
-    private final List<Double> data;
     private final String name;
-    private int oldestPosition;
+    private final LongSupplier clock;
+    private volatile SampleHistory history;
 
     public SampleSource(String name) {
+        this(name, System::nanoTime);
+    }
+
+    /**
+     * @param clock - time samples are kept at, in nanoseconds; it must not
+     *              run backwards
+     */
+    public SampleSource(String name, LongSupplier clock) {
         this.name = name;
-        data = new ArrayList<>(SAMPLES);
-        for (int i = 0; i < SAMPLES; i++) {
-            data.add(0.0d);
-        }
+        this.clock = clock;
     }
 
     public void update(double d) {
-        data.set(oldestPosition, d);
-        oldestPosition = (oldestPosition + 1) % SAMPLES;
+        SampleHistory h = history;
+        if (h == null) {
+            synchronized (this) {
+                if (history == null) {
+                    history = new SampleHistory();
+                }
+                h = history;
+            }
+        }
+        h.add(clock.getAsLong(), (float) d);
+    }
+
+    /**
+     * @return - true once a value has been received
+     */
+    boolean hasHistory() {
+        return history != null;
     }
 
     public double get(double x) {
-        if (x > 1.0 || x < 0.0) {
+        SampleHistory h = history;
+        if (x > 1.0 || x < 0.0 || h == null) {
             return 0.0;
         }
-        double xPoint = (x * ((double) SAMPLES - 1));
-        int dataPos = ((int) Math.ceil(xPoint) + oldestPosition) % SAMPLES;
-        int dataPrv = ((int) Math.floor(xPoint) + oldestPosition) % SAMPLES;
-        double ratio = xPoint - Math.floor(xPoint);
-        return data.get(dataPos) * ratio
-                + data.get(dataPrv) * (1.0d - ratio);
+        long time = clock.getAsLong() - (long) ((1.0 - x) * GET_SPAN_NANOS);
+        float value = h.valueAt(time);
+        return Float.isNaN(value) ? 0.0 : value;
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public void read(long from, long to, int columns, float[] min, float[] max, float[] mean) {
+        SampleHistory h = history;
+        if (h == null) {
+            Arrays.fill(min, 0, columns, Float.NaN);
+            Arrays.fill(max, 0, columns, Float.NaN);
+            Arrays.fill(mean, 0, columns, Float.NaN);
+            return;
+        }
+        h.read(from, to, columns, min, max, mean);
     }
 
     public String getName() {
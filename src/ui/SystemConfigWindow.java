@@ -45,6 +45,50 @@ public class SystemConfigWindow {
         lpanel.add(new JLabel("---- Radio Configuration ----"));
         container.add(lpanel);
         container.add(new RadioConfigScreen());
+
+        // Raw serial capture takes effect on the next connection
+        JCheckBox captureCheckBox = new JCheckBox("Capture Raw Serial (next connection)");
+        captureCheckBox.setSelected(context.getCaptureSerialProp());
+        captureCheckBox.addItemListener(itemEvent ->
+                context.setCaptureSerialProp(captureCheckBox.isSelected()));
+        JPanel capturePanel = new JPanel();
+        capturePanel.add(captureCheckBox);
+        container.add(capturePanel);
+
+        // Log every telemetry update rather than periodic snapshots
+        JCheckBox recordCheckBox = new JCheckBox("Log Every Telemetry Update");
+        recordCheckBox.setSelected(context.getRecordTelemetryEventsProp());
+        recordCheckBox.addItemListener(itemEvent ->
+                context.setRecordTelemetryEventsProp(recordCheckBox.isSelected()));
+        JPanel recordPanel = new JPanel();
+        recordPanel.add(recordCheckBox);
+        container.add(recordPanel);
+
+        // Unconfirmed messages allowed in flight; 1 sends stop-and-wait
+        JSpinner windowSpinner = new JSpinner(new SpinnerNumberModel(
+                context.getSendWindowProp(), 1, 16, 1));
+        windowSpinner.addChangeListener(changeEvent ->
+                context.setSendWindowProp((Integer) windowSpinner.getValue()));
+        JPanel windowPanel = new JPanel();
+        windowPanel.add(new JLabel("Send Window (next connection)"));
+        windowPanel.add(windowSpinner);
+        container.add(windowPanel);
+
+        // Telemetry widgets show the latest value this many times a second
+        JSpinner rateSpinner = new JSpinner(new SpinnerNumberModel(
+                context.getDisplayRateProp(), 1, 60, 1));
+        rateSpinner.addChangeListener(changeEvent ->
+                context.setDisplayRateProp((Integer) rateSpinner.getValue()));
+        JPanel ratePanel = new JPanel();
+        ratePanel.add(new JLabel("Display Rate (Hz)"));
+        ratePanel.add(rateSpinner);
+        container.add(ratePanel);
+
+        // Add serial link metrics
+        JPanel linkTitlePanel = new JPanel();
+        linkTitlePanel.add(new JLabel("---- Link Metrics ----"));
+        container.add(linkTitlePanel);
+        container.add(new LinkMetricsPanel(this.context));
         container.add(Box.createRigidArea(new Dimension(0, 10)));
 
         // Add version numbers
@@ -129,7 +129,7 @@ public class SliderEditor extends JSlider implements TableCellEditor {
      */
     @Override
     public boolean isCellEditable(EventObject eventObj) {
-        return true;
+        return !context.isPlayback();
     }
 
     /**
@@ -306,7 +306,7 @@ public class TelemetryDataWindow implements ActionListener {
                     return;
                 }
 
-                if (context.connected) {
+                if (context.connected || context.isPlayback()) {
                     AbstractTableModel telemetryModel =
                             (AbstractTableModel) TBL_Telemetry.getModel();
                     AbstractTableModel settingsModel =
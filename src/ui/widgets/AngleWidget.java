@@ -54,7 +54,7 @@ public class AngleWidget extends JPanel implements TelemetryListener {
 
         AngleWidget aw = new AngleWidget(
                 indicator, ctx.theme.gaugeBackground, ctx.theme.gaugeGlare);
-        ctx.telemetry.registerListener(telemetryID, aw);
+        ctx.telemetry.registerDisplayListener(telemetryID, aw);
         return aw;
     }
 
@@ -66,7 +66,7 @@ public class TelemetryDataWidget extends UIWidget {
             l.setBackground(i.getBackgroundColor());
             l.setOpaque(true);
             if (i.getTelemetryID() != -1) {
-                ctx.telemetry.registerListener(i.getTelemetryID(), l);
+                ctx.telemetry.registerDisplayListener(i.getTelemetryID(), l);
             }
 
             lines.add(l);
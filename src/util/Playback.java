@@ -0,0 +1,33 @@
+package com.util;
+
+/**
+ * A recording being played back on a PlaybackClock
+ */
+public interface Playback {
+    /**
+     * @return - the clock to pause or change the speed of playback with
+     */
+    PlaybackClock getClock();
+
+    /**
+     * Jump to a time in the recording
+     *
+     * @param micros - microseconds since the start of the recording
+     */
+    void seek(long micros);
+
+    /**
+     * @return - how far playback has got, in microseconds
+     */
+    long getPositionMicros();
+
+    /**
+     * @return - length of the recording, in microseconds
+     */
+    long getLengthMicros();
+
+    /**
+     * @return - true once the whole recording has been played
+     */
+    boolean isFinished();
+}
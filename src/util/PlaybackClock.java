@@ -0,0 +1,151 @@
+package com.util;
+
+/**
+ * Maps wall clock time to a position in a recording, so a recording can be
+ * played at real time, N times faster, or as fast as it can be read, and be
+ * paused and moved about in. Positions are microseconds from the start of
+ * the recording.
+ * <p>
+ * Players ask when a recorded time is due and report the times they have
+ * played. At a fixed speed the position follows the wall clock; as fast as
+ * possible, everything is due and the position is what was last played.
+ * Every change wakes threads waiting in awaitDue.
+ */
+public class PlaybackClock {
+    /**
+     * Playback speed at which every recorded time is due immediately
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private double speed;
+    private boolean paused;
+    //position at anchorNanos, from which the position moves with the speed
+    private long anchorMicros;
+    private long anchorNanos = System.nanoTime();
+    private long played;
+
+    /**
+     * Start a clock running from the start of the recording
+     *
+     * @param speed - rate relative to real time; 1.0 for real time, 10.0 for
+     *              ten times faster, or AS_FAST_AS_POSSIBLE
+     */
+    public PlaybackClock(double speed) {
+        checkSpeed(speed);
+        this.speed = speed;
+    }
+
+    private static void checkSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Playback speed must be positive");
+        }
+    }
+
+    /**
+     * @return - the latest recorded time that is due to be played now
+     */
+    public synchronized long now() {
+        if (paused) {
+            return anchorMicros;
+        }
+        if (speed == AS_FAST_AS_POSSIBLE) {
+            return Long.MAX_VALUE;
+        }
+        double elapsedUs = (System.nanoTime() - anchorNanos) / 1000.0;
+        return anchorMicros + (long) (elapsedUs * speed);
+    }
+
+    /**
+     * @return - how far playback has got, in microseconds
+     */
+    public synchronized long getPosition() {
+        if (paused) {
+            return anchorMicros;
+        }
+        return (speed == AS_FAST_AS_POSSIBLE) ? played : now();
+    }
+
+    /**
+     * Note how far a player has got, which is the position while playing
+     * as fast as possible
+     */
+    public synchronized void played(long micros) {
+        played = micros;
+    }
+
+    /**
+     * @return - nanoseconds until the recorded time is due, 0 if it is due,
+     * or Long.MAX_VALUE while paused
+     */
+    public synchronized long nanosUntil(long micros) {
+        long now = now();
+        if (micros <= now) {
+            return 0;
+        }
+        if (paused) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((micros - now) * 1000.0 / speed);
+    }
+
+    /**
+     * Wait until the recorded time is due, the clock is changed, or the
+     * timeout passes
+     *
+     * @return - true if the time is due
+     */
+    public synchronized boolean awaitDue(long micros, long timeoutNanos) throws InterruptedException {
+        long wait = Math.min(nanosUntil(micros), timeoutNanos);
+        if (wait > 0) {
+            wait(wait / 1_000_000L, (int) (wait % 1_000_000L));
+        }
+        return nanosUntil(micros) == 0;
+    }
+
+    /**
+     * Wait until the clock is changed or the timeout passes
+     */
+    public synchronized void awaitChange(long timeoutNanos) throws InterruptedException {
+        wait(timeoutNanos / 1_000_000L, (int) (timeoutNanos % 1_000_000L));
+    }
+
+    /**
+     * Move to a position. Play continues from there unless paused.
+     */
+    public synchronized void seek(long micros) {
+        anchorMicros = Math.max(0, micros);
+        anchorNanos = System.nanoTime();
+        played = anchorMicros;
+        notifyAll();
+    }
+
+    public synchronized void setSpeed(double speed) {
+        checkSpeed(speed);
+        reanchor();
+        this.speed = speed;
+        notifyAll();
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    public synchronized void setPaused(boolean paused) {
+        if (paused == this.paused) {
+            return;
+        }
+        reanchor();
+        this.paused = paused;
+        notifyAll();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    //restart the position's movement from where it is now
+    private void reanchor() {
+        anchorMicros = getPosition();
+        anchorNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,32 @@
+package com.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A clock for keeping graph histories while a recording plays. Time moves
+ * with the playback position rather than the wall clock, so samples are
+ * spaced by their recorded times at any speed, and stops while playback is
+ * paused. Seeking back moves the time on by nothing rather than back, so
+ * histories stay in time order.
+ */
+public class PlaybackTimeline implements LongSupplier {
+    private final PlaybackClock clock;
+    //nanoseconds at playback position 0
+    private long base = System.nanoTime();
+    private long last;
+
+    public PlaybackTimeline(PlaybackClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized long getAsLong() {
+        long time = base + clock.getPosition() * 1000L;
+        if (time < last) {
+            base += last - time;
+            time = last;
+        }
+        last = time;
+        return time;
+    }
+}
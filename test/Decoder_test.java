@@ -1,4 +1,5 @@
 import com.serial.*;
+import com.serial.Serial;
 
 import java.io.*;
 import java.util.*;
@@ -188,6 +189,41 @@ public class Decoder_test {
         verify(mRead, times(30)).handle(data);
     }
 
+    @Test
+    public void smallRingWraps() throws IOException {
+        byte[] data         = "wrapMe".getBytes();
+        ByteArrayOutputStream concat = new ByteArrayOutputStream();
+        for(int i=0; i<30; i++){
+            concat.write(testHeader);
+            concat.write(data);
+            concat.write(testChecksum);
+            concat.write(testFooter);
+        }
+        InputStream stream = new ByteArrayInputStream(concat.toByteArray());
+        PacketReader mRead  = mock(PacketReader.class);
+        Decoder decoder     = new Decoder(stream, testHeader, testFooter, mockChecksum, 16);
+
+        decoder.addPacketReader(mRead);
+        when(mRead.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(mRead, times(30)).handle(data);
+    }
+
+    @Test
+    public void packetLargerThanRing() throws IOException {
+        byte[] data        = new byte[64];
+        Arrays.fill(data, (byte) 'a');
+        PacketReader mRead = mock(PacketReader.class);
+        Decoder decoder    = new Decoder(input(data), testHeader, testFooter, mockChecksum, 16);
+
+        decoder.addPacketReader(mRead);
+        when(mRead.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(mRead, never()).handle(any(byte[].class));
+    }
+
     @Test
     public void multiplePacketTypes() throws IOException {
         byte[][] data = {
@@ -217,6 +253,130 @@ public class Decoder_test {
         verify(aRead).handle(data[0]);
     }
 
+    @Test
+    public void typeRegisteredReader() throws IOException {
+        byte[] data        = { 0x12, 1, 2, 3 };
+        PacketReader mRead = mock(PacketReader.class);
+        Decoder decoder    = new Decoder(input(data), testHeader, testFooter, mockChecksum);
+
+        decoder.addPacketReader(Serial.WORD_TYPE, mRead);
+        when(mRead.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(mRead).handle(data);
+    }
+
+    @Test
+    public void subtypeReaderOverridesType() throws IOException {
+        byte[] data         = { 0x12, 1, 2, 3 };
+        PacketReader byType = mock(PacketReader.class);
+        PacketReader bySub  = mock(PacketReader.class);
+        Decoder decoder     = new Decoder(input(data), testHeader, testFooter, mockChecksum);
+
+        decoder.addPacketReader(Serial.WORD_TYPE, Serial.SYNC_WORD, bySub);
+        decoder.addPacketReader(Serial.WORD_TYPE, byType);
+        when(byType.claim(data[0])).thenReturn(data.length);
+        when(bySub.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(bySub).handle(data);
+        verify(byType, never()).handle(any(byte[].class));
+    }
+
+    @Test
+    public void unclaimedLabelFallsBackToLegacy() throws IOException {
+        byte[] data          = { 0x12, 1, 2, 3 };
+        PacketReader byType  = mock(PacketReader.class);
+        PacketReader legacy  = mock(PacketReader.class);
+        Decoder decoder      = new Decoder(input(data), testHeader, testFooter, mockChecksum);
+
+        decoder.addPacketReader(Serial.WORD_TYPE, byType);
+        decoder.addPacketReader(legacy);
+        when(byType.claim(any(byte.class))).thenReturn(-1);
+        when(legacy.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(legacy).handle(data);
+        verify(byType, never()).handle(any(byte[].class));
+    }
+
+    @Test
+    public void removedTypeReader() throws IOException {
+        byte[] data        = { 0x12, 1, 2, 3 };
+        PacketReader mRead = mock(PacketReader.class);
+        Decoder decoder    = new Decoder(input(data), testHeader, testFooter, mockChecksum);
+
+        decoder.addPacketReader(Serial.WORD_TYPE, mRead);
+        when(mRead.claim(data[0])).thenReturn(data.length);
+        decoder.removePacketReader(mRead);
+        decoder.update();
+
+        verify(mRead, never()).handle(any(byte[].class));
+    }
+
+    @Test
+    public void viewReaderWithInPlaceChecksum() throws IOException {
+        byte[] data           = "in place".getBytes();
+        InputStream stream    = input(testHeader, data, Serial.fletcher16bytes(data), testFooter);
+        Decoder decoder       = new Decoder(stream, testHeader, testFooter, new Fletcher16());
+        final byte[][] seen   = new byte[1][];
+
+        decoder.addPacketReader(new PacketViewReader() {
+            public int claim(byte sig) {
+                return 255;
+            }
+
+            public void handle(PacketView packet) {
+                seen[0] = packet.toArray();
+            }
+        });
+        decoder.update();
+
+        assertArrayEquals(data, seen[0]);
+    }
+
+    @Test
+    public void plainReaderWithInPlaceChecksum() throws IOException {
+        byte[] data        = "copied".getBytes();
+        InputStream stream = input(testHeader, data, Serial.fletcher16bytes(data), testFooter);
+        PacketReader mRead = mock(PacketReader.class);
+        Decoder decoder    = new Decoder(stream, testHeader, testFooter, new Fletcher16());
+
+        decoder.addPacketReader(mRead);
+        when(mRead.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(mRead).handle(data);
+    }
+
+    @Test
+    public void badInPlaceChecksum() throws IOException {
+        byte[] data        = "corrupt".getBytes();
+        InputStream stream = input(testHeader, data, new byte[]{ 0, 0 }, testFooter);
+        PacketReader mRead = mock(PacketReader.class);
+        Decoder decoder    = new Decoder(stream, testHeader, testFooter, new Fletcher16());
+
+        decoder.addPacketReader(mRead);
+        when(mRead.claim(data[0])).thenReturn(data.length);
+        decoder.update();
+
+        verify(mRead, never()).handle(any(byte[].class));
+    }
+
+    @Test
+    public void runningChecksumWithDecoyFooters() throws IOException {
+        byte[] data        = { 'd', 'F', 'x', 'F', 'F', 'y', 'H', 'z', 'F' };
+        InputStream stream = input(testHeader, data, Serial.fletcher16bytes(data), testFooter);
+        PacketReader mRead = mock(PacketReader.class);
+        Decoder decoder    = new Decoder(stream, testHeader, testFooter, new Fletcher16());
+
+        decoder.addPacketReader(mRead);
+        when(mRead.claim(anyByte())).thenReturn(255);
+        decoder.update();
+
+        verify(mRead).handle(data);
+    }
+
     @Test
     public void decoyHeaderInData() throws IOException {
         byte[] data        = testHeader;
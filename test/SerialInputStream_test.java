@@ -31,6 +31,51 @@ public class SerialInputStream_test {
         assertEquals(12, sis.read());
     }
 
+    @Test
+    public void testBulkRead() throws IOException, SerialPortException {
+        SerialPort sp = mock(SerialPort.class);
+        SerialInputStream sis = new SerialInputStream(sp);
+        byte[] buf = new byte[8];
+
+        when(sp.getInputBufferBytesCount()).thenReturn(3);
+        when(sp.readBytes(3)).thenReturn(new byte[]{ 1, 2, 3 });
+
+        assertEquals(3, sis.read(buf, 2, 6));
+        assertArrayEquals(new byte[]{ 0, 0, 1, 2, 3, 0, 0, 0 }, buf);
+    }
+
+    @Test
+    public void testBulkReadLimitedByLength() throws IOException, SerialPortException {
+        SerialPort sp = mock(SerialPort.class);
+        SerialInputStream sis = new SerialInputStream(sp);
+        byte[] buf = new byte[2];
+
+        when(sp.getInputBufferBytesCount()).thenReturn(10);
+        when(sp.readBytes(2)).thenReturn(new byte[]{ 7, 8 });
+
+        assertEquals(2, sis.read(buf, 0, 2));
+        assertArrayEquals(new byte[]{ 7, 8 }, buf);
+    }
+
+    @Test
+    public void testBulkReadEmpty() throws IOException, SerialPortException {
+        SerialPort sp = mock(SerialPort.class);
+        SerialInputStream sis = new SerialInputStream(sp);
+
+        assertEquals(-1, sis.read(new byte[4], 0, 4));
+        verify(sp, never()).readBytes(anyInt());
+    }
+
+    @Test
+    public void testAvailable() throws IOException, SerialPortException {
+        SerialPort sp = mock(SerialPort.class);
+        SerialInputStream sis = new SerialInputStream(sp);
+
+        when(sp.getInputBufferBytesCount()).thenReturn(42);
+
+        assertEquals(42, sis.available());
+    }
+
     @Test
     public void testClose() throws IOException, SerialPortException {
         SerialPort sp = mock(SerialPort.class);
@@ -0,0 +1,75 @@
+package com.graph;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+public class SampleHistory_test {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+    //a nanoTime origin on a minute, so rollup buckets line up with columns
+    private static final long START = 7 * MINUTE;
+
+    @Test public void readsRawSamples() {
+        SampleHistory history = new SampleHistory();
+        for (int i = 0; i < 100; i++) {
+            history.add(START + i * MS, i);
+        }
+
+        float[] min = new float[100];
+        float[] max = new float[100];
+        float[] mean = new float[100];
+        history.read(START, START + 100 * MS, 100, min, max, mean);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, mean[i], 0);
+            assertEquals(i, max[i], 0);
+            //joined to the previous column's value
+            assertEquals(Math.max(0, i - 1), min[i], 0);
+        }
+    }
+
+    @Test public void holdsValuesBetweenSamples() {
+        SampleHistory history = new SampleHistory();
+        history.add(START + 50 * MS, 5);
+
+        float[] min = new float[10];
+        float[] max = new float[10];
+        float[] mean = new float[10];
+        history.read(START, START + 100 * MS, 10, min, max, mean);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(Float.isNaN(mean[i]));
+        }
+        for (int i = 5; i < 10; i++) {
+            assertEquals(5, mean[i], 0);
+            assertEquals(5, min[i], 0);
+        }
+        assertTrue(Float.isNaN(history.valueAt(START)));
+        assertEquals(5, history.valueAt(START + 60 * MS), 0);
+    }
+
+    @Test public void rollsUpLongHistory() {
+        SampleHistory history = new SampleHistory();
+        //two hours at 10 per second, counting 0 to 9 over and over, plus
+        //the minute number
+        for (int i = 0; i < 72_000; i++) {
+            history.add(START + i * 100 * MS, (i / 600) * 100 + i % 10);
+        }
+
+        float[] min = new float[60];
+        float[] max = new float[60];
+        float[] mean = new float[60];
+        long end = START + 120 * MINUTE;
+        history.read(end - 60 * MINUTE, end, 60, min, max, mean);
+        for (int i = 0; i < 60; i++) {
+            float minute = (60 + i) * 100;
+            assertEquals(minute + 4.5f, mean[i], 0.01);
+            assertEquals(minute + 9, max[i], 0);
+            //joined to the end of the previous minute
+            assertEquals(minute - 100 + 9, min[i], 0);
+        }
+
+        //long gone from the raw samples
+        assertEquals(6009, history.valueAt(START + 61 * MINUTE - 1), 0);
+    }
+}
@@ -0,0 +1,146 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class CaptureInputStream_test {
+    private File file;
+
+    @Before public void createFile() throws IOException {
+        file = File.createTempFile("capture", ".scap");
+        file.delete();
+    }
+
+    @After public void deleteFile(){
+        file.delete();
+    }
+
+    private byte[] replayAll(CaptureInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[3];
+        int count;
+        while ((count = in.read(buf, 0, buf.length)) != -1) {
+            out.write(buf, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    @Test public void roundTrip() throws IOException {
+        try (SerialCapture cap = new SerialCapture(file)) {
+            cap.record("abc".getBytes(), 0, 3);
+            cap.record("xdefx".getBytes(), 1, 3);
+        }
+
+        CaptureInputStream in = new CaptureInputStream(file,
+                CaptureInputStream.AS_FAST_AS_POSSIBLE);
+        assertArrayEquals("abcdef".getBytes(), replayAll(in));
+        assertTrue(in.isFinished());
+        assertEquals(-1, in.nanosUntilNext());
+    }
+
+    @Test public void appendedSessionsContinue() throws IOException {
+        try (SerialCapture cap = new SerialCapture(file)) {
+            cap.record("one".getBytes(), 0, 3);
+        }
+        try (SerialCapture cap = new SerialCapture(file)) {
+            cap.record("two".getBytes(), 0, 3);
+        }
+
+        CaptureInputStream in = new CaptureInputStream(file,
+                CaptureInputStream.AS_FAST_AS_POSSIBLE);
+        assertArrayEquals("onetwo".getBytes(), replayAll(in));
+    }
+
+    @Test public void appendedSessionKeepsGap() throws IOException {
+        long[] nanos = {0};
+        try (SerialCapture cap = new SerialCapture(file, 1000, () -> nanos[0])) {
+            nanos[0] += 2_000_000;
+            cap.record("one".getBytes(), 0, 3);
+        }
+        //reconnected an hour later, on a clock with another origin
+        nanos[0] = 777_000_000;
+        try (SerialCapture cap = new SerialCapture(file, 1000 + 3_600_000, () -> nanos[0])) {
+            nanos[0] += 5_000_000;
+            cap.record("two".getBytes(), 0, 3);
+        }
+
+        assertEquals(3_600_005_000L, CaptureTransport.measure(file));
+        CaptureInputStream in = new CaptureInputStream(file,
+                CaptureInputStream.AS_FAST_AS_POSSIBLE);
+        assertArrayEquals("onetwo".getBytes(), replayAll(in));
+    }
+
+    @Test public void sessionMarkerSetsTime() throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        out.write(SerialCapture.MAGIC);
+        out.writeLong(1000);
+        SerialCapture.writeVarint(out, 0);
+        SerialCapture.writeVarint(out, 1);
+        out.write('a');
+        //a session started an hour after the capture
+        SerialCapture.writeVarint(out, 0);
+        SerialCapture.writeVarint(out, 0);
+        out.writeLong(1000 + 3_600_000);
+        SerialCapture.writeVarint(out, 5);
+        SerialCapture.writeVarint(out, 1);
+        out.write('b');
+
+        CaptureInputStream in = new CaptureInputStream(
+                new ByteArrayInputStream(raw.toByteArray()), 1.0);
+        assertEquals('a', in.read());
+        assertEquals(-1, in.read());
+        assertFalse(in.isFinished());
+        assertTrue(in.nanosUntilNext() > 3_000_000_000_000L);
+
+        in = new CaptureInputStream(new ByteArrayInputStream(raw.toByteArray()),
+                CaptureInputStream.AS_FAST_AS_POSSIBLE);
+        assertArrayEquals("ab".getBytes(), replayAll(in));
+
+        Files.write(file.toPath(), raw.toByteArray());
+        assertEquals(3_600_000_005L, CaptureTransport.measure(file));
+    }
+
+    @Test public void holdsBytesUntilDue() throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(SerialCapture.MAGIC);
+        raw.write(new byte[8]);
+        //one byte recorded an hour into the session
+        SerialCapture.writeVarint(new DataOutputStream(raw), 3_600_000_000L);
+        raw.write(1);
+        raw.write('z');
+
+        CaptureInputStream in = new CaptureInputStream(
+                new ByteArrayInputStream(raw.toByteArray()), 1.0);
+        assertEquals(-1, in.read());
+        assertEquals(0, in.available());
+        assertFalse(in.isFinished());
+        assertTrue(in.nanosUntilNext() > 0);
+    }
+
+    @Test public void truncatedRecordEndsReplay() throws IOException {
+        try (SerialCapture cap = new SerialCapture(file)) {
+            cap.record("abc".getBytes(), 0, 3);
+        }
+        byte[] whole = Files.readAllBytes(file.toPath());
+        byte[] cut = Arrays.copyOf(whole, whole.length - 1);
+
+        CaptureInputStream in = new CaptureInputStream(new ByteArrayInputStream(cut),
+                CaptureInputStream.AS_FAST_AS_POSSIBLE);
+        assertEquals(-1, in.read());
+        assertTrue(in.isFinished());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new CaptureInputStream(new ByteArrayInputStream(new byte[12]), 1.0);
+    }
+}
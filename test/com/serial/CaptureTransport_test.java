@@ -0,0 +1,69 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CaptureTransport_test {
+    private static final long TIMEOUT_MS = 5000;
+    private File file;
+
+    @Before public void createFile() throws IOException {
+        file = File.createTempFile("capture", ".scap");
+        file.delete();
+    }
+
+    @After public void deleteFile(){
+        file.delete();
+    }
+
+    private static boolean replayThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("capture-playback") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test public void closeStopsReplay() throws Exception {
+        try (SerialCapture cap = new SerialCapture(file)) {
+            for (int i = 0; i < 20; i++) {
+                cap.record(new byte[]{(byte) i}, 0, 1);
+                Thread.sleep(5);
+            }
+        }
+
+        //slow enough to still be playing when closed
+        CaptureTransport link = new CaptureTransport(file, 0.1);
+        AtomicInteger received = new AtomicInteger();
+        InputStream input = link.getInputStream();
+        link.setDataListener(() -> {
+            try {
+                while (input.read() != -1) {
+                    received.incrementAndGet();
+                }
+            }
+            catch (IOException e) {
+                fail(e.getMessage());
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (received.get() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        link.close();
+        assertFalse(replayThreadAlive());
+
+        int closedAt = received.get();
+        assertTrue(closedAt < 20);
+        Thread.sleep(100);
+        assertEquals(closedAt, received.get());
+    }
+}
@@ -0,0 +1,104 @@
+package com.serial;
+
+import com.serial.Messages.Message;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+public class LinkMetrics_test {
+    private LinkMetrics metrics;
+
+    @Before public void setup(){
+        metrics = new LinkMetrics();
+    }
+
+    private static byte[] frame(Message msg){
+        byte[] data = new byte[msg.encodedLength()];
+        msg.encode(data, 0);
+        return data;
+    }
+
+    private void decode(byte[] stream){
+        Decoder decoder = new Decoder(new ByteArrayInputStream(stream),
+                Serial.HEADER, Serial.FOOTER, new Fletcher16());
+        decoder.setMetrics(metrics);
+        decoder.addPacketReader(new PacketReader() {
+            public int claim(byte data) {
+                return 16;
+            }
+
+            public void handle(byte[] data) {
+            }
+        });
+        decoder.update();
+    }
+
+    @Test public void countsPacketsByType(){
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] telemetry = frame(Message.telemetry((byte) 1, 2f));
+        byte[] word = frame(Message.syncMessage(Serial.SYNC_RESPOND));
+        stream.write(telemetry, 0, telemetry.length);
+        stream.write(telemetry, 0, telemetry.length);
+        stream.write(word, 0, word.length);
+        decode(stream.toByteArray());
+
+        assertEquals(2, metrics.getPacketCount(Serial.DATA_TYPE));
+        assertEquals(1, metrics.getPacketCount(Serial.WORD_TYPE));
+        assertEquals(stream.size(), metrics.getBytesRead());
+        assertEquals(0, metrics.getDiscardedBytes());
+        assertEquals(0, metrics.getChecksumFailures());
+    }
+
+    @Test public void countsCorruptionAndNoise(){
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] good = frame(Message.telemetry((byte) 1, 2f));
+        byte[] bad = frame(Message.telemetry((byte) 1, 2f));
+        bad[4] ^= 0x01;
+        stream.write(new byte[]{1, 2, 3}, 0, 3);
+        stream.write(bad, 0, bad.length);
+        stream.write(good, 0, good.length);
+        decode(stream.toByteArray());
+
+        assertEquals(1, metrics.getPacketCount(Serial.DATA_TYPE));
+        assertEquals(1, metrics.getChecksumFailures());
+        assertEquals(3 + bad.length, metrics.getDiscardedBytes());
+    }
+
+    @Test public void ratesComeFromSamples(){
+        long start = System.nanoTime();
+        metrics.sample(start);
+        metrics.recordBytesRead(500);
+        metrics.recordPacket(Serial.buildMessageLabel(Serial.DATA_TYPE, 0), 10);
+        metrics.recordPacket(Serial.buildMessageLabel(Serial.DATA_TYPE, 0), 10);
+        metrics.sample(start + TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(1000, metrics.getReadRate(), 0.001);
+        assertEquals(4, metrics.getPacketRate(Serial.DATA_TYPE), 0.001);
+        assertEquals(40, metrics.getPacketByteRate(Serial.DATA_TYPE), 0.001);
+    }
+
+    @Test public void bucketsRoundTrips(){
+        metrics.recordRoundTrip(TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordRoundTrip(TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordRoundTrip(TimeUnit.SECONDS.toNanos(10));
+
+        long[] histogram = metrics.getRoundTripHistogram();
+        assertEquals(LinkMetrics.getRoundTripBounds().length + 1, histogram.length);
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[3]);
+        assertEquals(1, histogram[histogram.length - 1]);
+        assertEquals(TimeUnit.SECONDS.toNanos(10), metrics.getMaxRoundTripNanos());
+    }
+
+    @Test public void dumpsGauges(){
+        metrics.registerGauge("send queue depth", () -> 7);
+        StringWriter out = new StringWriter();
+        metrics.dump(new PrintWriter(out));
+        assertTrue(out.toString().contains("send queue depth 7"));
+    }
+}
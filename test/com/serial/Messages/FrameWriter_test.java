@@ -0,0 +1,105 @@
+package com.serial.Messages;
+
+import com.map.Dot;
+import com.serial.Serial;
+import com.serial.Transport;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameWriter_test {
+    //records each write separately
+    private static class RecordingTransport implements Transport {
+        final List<byte[]> writes = new ArrayList<>();
+
+        public String getName() { return "recording"; }
+        public InputStream getInputStream() { return null; }
+        public void setDataListener(Runnable listener) { }
+        public void close() { }
+
+        public void write(byte[] data, int off, int len) {
+            byte[] copy = new byte[len];
+            System.arraycopy(data, off, copy, 0, len);
+            writes.add(copy);
+        }
+    }
+
+    //the frame as the protocol spells it out, section by section
+    private static byte[] legacyFrame(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Serial.HEADER, 0, Serial.HEADER.length);
+        out.write(content, 0, content.length);
+        byte[] sum = Serial.fletcher16bytes(content);
+        out.write(sum, 0, sum.length);
+        out.write(Serial.FOOTER, 0, Serial.FOOTER.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] contentOf(byte[] frame) {
+        byte[] content = new byte[frame.length - Serial.HEADER.length - 2 - Serial.FOOTER.length];
+        System.arraycopy(frame, Serial.HEADER.length, content, 0, content.length);
+        return content;
+    }
+
+    @Test public void singleWritePerSend() throws Exception {
+        RecordingTransport port = new RecordingTransport();
+        Message msg = Message.addWaypoint((byte) 3, new Dot(1.5, -2.25, (short) 7));
+        msg.send(port);
+
+        assertEquals(1, port.writes.size());
+        byte[] frame = port.writes.get(0);
+        assertArrayEquals(legacyFrame(contentOf(frame)), frame);
+        assertTrue(msg.getHasBeenSent());
+    }
+
+    @Test public void confirmSumMatchesFullMessage() throws Exception {
+        RecordingTransport port = new RecordingTransport();
+        Message msg = Message.stateString("driving");
+        msg.send(port);
+
+        byte[] frame = port.writes.get(0);
+        byte[] content = contentOf(frame);
+        byte[] summed = new byte[content.length + 2];
+        System.arraycopy(frame, Serial.HEADER.length, summed, 0, summed.length);
+
+        assertEquals(Serial.fletcher16(summed) & 0xffff, msg.getConfirmSum());
+    }
+
+    @Test public void coalescesFrames() throws Exception {
+        RecordingTransport port = new RecordingTransport();
+        FrameWriter writer = new FrameWriter();
+        Message a = Message.estop();
+        Message b = Message.setSetting((byte) 2, 4.5f);
+
+        writer.add(a);
+        writer.add(b);
+        assertEquals(2, writer.pending());
+        assertFalse(a.getHasBeenSent());
+
+        writer.flush(port);
+        assertEquals(1, port.writes.size());
+        assertEquals(a.encodedLength() + b.encodedLength(), port.writes.get(0).length);
+        assertTrue(a.getHasBeenSent());
+        assertTrue(b.getHasBeenSent());
+        assertEquals(0, writer.pending());
+    }
+
+    @Test public void flushEmptyDoesNotWrite() throws Exception {
+        RecordingTransport port = new RecordingTransport();
+        new FrameWriter().flush(port);
+        assertEquals(0, port.writes.size());
+    }
+
+    @Test public void expiryUsesNanoTime(){
+        Message msg = Message.estop();
+        long now = System.nanoTime();
+        msg.markSent(now);
+
+        assertFalse(msg.isPastExpiration(now + 1_000_000L * Serial.MAX_CONFIRM_WAIT_MS));
+        assertTrue(msg.isPastExpiration(now + 1_000_000L * (Serial.MAX_CONFIRM_WAIT_MS + 1)));
+    }
+}
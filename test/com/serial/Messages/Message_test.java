@@ -0,0 +1,59 @@
+package com.serial.Messages;
+
+import com.map.Dot;
+import com.serial.Serial;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class Message_test {
+    @Test public void stopsAreSafety(){
+        assertEquals(Priority.SAFETY, Message.estop().getPriority());
+        assertEquals(Priority.SAFETY, Message.stopDriving().getPriority());
+    }
+
+    @Test public void drivingCommandsAreControl(){
+        assertEquals(Priority.CONTROL, Message.setTarget((byte) 1).getPriority());
+        assertEquals(Priority.CONTROL, Message.setLooping((byte) 1).getPriority());
+        assertEquals(Priority.CONTROL, Message.startDriving().getPriority());
+        assertEquals(Priority.CONTROL, Message.syncMessage(Serial.SYNC_REQUEST).getPriority());
+    }
+
+    @Test public void transfersAreBulk(){
+        assertEquals(Priority.BULK, Message.addWaypoint((byte) 0, new Dot()).getPriority());
+        assertEquals(Priority.BULK, Message.clearWaypoints().getPriority());
+        assertEquals(Priority.BULK, Message.setSetting((byte) 0, 1f).getPriority());
+    }
+
+    @Test public void housekeepingIsBackground(){
+        assertEquals(Priority.BACKGROUND, Message.sendHeartbeatPulse().getPriority());
+        assertEquals(Priority.BACKGROUND, Message.requestAPMVersion().getPriority());
+    }
+
+    @Test public void listCommandsAreOrdered(){
+        assertTrue(Message.clearWaypoints().isOrdered());
+        assertTrue(Message.deleteWaypoint((byte) 2).isOrdered());
+        assertTrue(Message.setTarget((byte) 2).isOrdered());
+        assertFalse(Message.estop().isOrdered());
+        assertTrue(Message.addWaypoint((byte) 0, new Dot()).isOrdered());
+        assertFalse(Message.setWaypoint((byte) 0, new Dot()).isOrdered());
+    }
+
+    @Test public void valueUpdatesCoalesce(){
+        Dot a = new Dot(40.0, -105.0, (short) 0);
+        Dot b = new Dot(41.0, -104.0, (short) 0);
+        assertEquals(Message.setWaypoint((byte) 3, a).getCoalesceKey(),
+                Message.setWaypoint((byte) 3, b).getCoalesceKey());
+        assertTrue(Message.setWaypoint((byte) 3, a).getCoalesceKey()
+                != Message.setWaypoint((byte) 4, a).getCoalesceKey());
+        assertEquals(Message.setSetting((byte) 7, 1f).getCoalesceKey(),
+                Message.setSetting((byte) 7, 2f).getCoalesceKey());
+        assertTrue(Message.setSetting((byte) 3, 1f).getCoalesceKey()
+                != Message.setWaypoint((byte) 3, a).getCoalesceKey());
+    }
+
+    @Test public void structuralMessagesDontCoalesce(){
+        assertEquals(Message.NO_COALESCE, Message.addWaypoint((byte) 0, new Dot()).getCoalesceKey());
+        assertEquals(Message.NO_COALESCE, Message.deleteWaypoint((byte) 0).getCoalesceKey());
+        assertEquals(Message.NO_COALESCE, Message.estop().getCoalesceKey());
+    }
+}
@@ -0,0 +1,91 @@
+package com.serial;
+
+import com.map.Dot;
+import com.serial.Messages.Message;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class MissionModel_test {
+    private static final Dot A = new Dot(40.0, -105.0, (short) 3);
+    private static final Dot B = new Dot(41.5, -104.25, (short) 0);
+    private static final Dot C = new Dot(39.75, -106.5, (short) 12);
+
+    private MissionModel model;
+
+    @Before public void setup(){
+        model = new MissionModel();
+    }
+
+    private void apply(Message msg){
+        model.apply(msg.contentView());
+    }
+
+    @Test public void addAlterDelete(){
+        apply(Message.addWaypoint((byte) 0, A));
+        apply(Message.addWaypoint((byte) 1, C));
+        apply(Message.addWaypoint((byte) 1, B));
+        assertEquals(3, model.size());
+        assertTrue(model.matches(1, MissionModel.encode(B)));
+        assertTrue(model.matches(2, MissionModel.encode(C)));
+
+        apply(Message.setWaypoint((byte) 0, C));
+        assertTrue(model.matches(0, MissionModel.encode(C)));
+
+        apply(Message.deleteWaypoint((byte) 1));
+        assertEquals(2, model.size());
+        assertTrue(model.matches(1, MissionModel.encode(C)));
+    }
+
+    @Test public void ignoresRejectedIndices(){
+        apply(Message.addWaypoint((byte) 2, A));
+        apply(Message.setWaypoint((byte) 0, A));
+        apply(Message.deleteWaypoint((byte) 0));
+        assertEquals(0, model.size());
+    }
+
+    @Test public void digestFollowsContentAndOrder(){
+        MissionModel other = new MissionModel();
+        assertEquals(other.digest(), model.digest());
+
+        apply(Message.addWaypoint((byte) 0, A));
+        apply(Message.addWaypoint((byte) 1, B));
+        other.apply(Message.addWaypoint((byte) 0, B).contentView());
+        other.apply(Message.addWaypoint((byte) 0, A).contentView());
+        assertEquals(model.digest(), other.digest());
+
+        other.apply(Message.setWaypoint((byte) 1, C).contentView());
+        assertTrue(model.digest() != other.digest());
+    }
+
+    @Test public void digestTellsZeroFromFFBytes(){
+        //fletcher16 works mod 255, so these two collided
+        apply(Message.addWaypoint((byte) 0, new Dot(40.0, -105.0, (short) 0)));
+        MissionModel other = new MissionModel();
+        other.apply(Message.addWaypoint((byte) 0, new Dot(40.0, -105.0, (short) -1)).contentView());
+        assertTrue(model.digest() != other.digest());
+    }
+
+    @Test public void digestCoversCount(){
+        MissionModel empty = new MissionModel();
+        apply(Message.addWaypoint((byte) 0, new Dot(0, 0, (short) 0)));
+        assertTrue(model.digest() != empty.digest());
+    }
+
+    @Test public void clearRevalidates(){
+        apply(Message.addWaypoint((byte) 0, A));
+        model.invalidate();
+        assertEquals(-1, model.digest());
+
+        apply(Message.clearWaypoints());
+        assertTrue(model.isValid());
+        assertEquals(0, model.size());
+        assertEquals(new MissionModel().digest(), model.digest());
+    }
+
+    @Test public void tracksLooping(){
+        apply(Message.setLooping((byte) 1));
+        assertTrue(model.isLooped());
+        apply(Message.setLooping((byte) 0));
+        assertFalse(model.isLooped());
+    }
+}
@@ -0,0 +1,62 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PacketPipeline_test {
+    private static final byte[] DATA = "packet".getBytes();
+
+    @Test public void claimStaysOnCaller(){
+        PacketPipeline pipe = new PacketPipeline(4);
+        PacketReader reader = mock(PacketReader.class);
+        when(reader.claim((byte) 1)).thenReturn(10);
+
+        assertEquals(10, pipe.wrap(reader).claim((byte) 1));
+    }
+
+    @Test public void handleIsDeferred(){
+        PacketPipeline pipe = new PacketPipeline(4);
+        PacketReader reader = mock(PacketReader.class);
+
+        pipe.wrap(reader).handle(DATA);
+        verify(reader, never()).handle(any(byte[].class));
+        assertEquals(1, pipe.getQueueDepth());
+
+        assertTrue(pipe.drain());
+        verify(reader).handle(DATA);
+        assertEquals(0, pipe.getQueueDepth());
+        assertEquals(1, pipe.getDispatchCount());
+    }
+
+    @Test public void dropsWhenFull(){
+        PacketPipeline pipe = new PacketPipeline(2);
+        PacketReader reader = mock(PacketReader.class);
+        PacketReader wrapped = pipe.wrap(reader);
+
+        wrapped.handle(DATA);
+        wrapped.handle(DATA);
+        wrapped.handle(DATA);
+
+        assertEquals(2, pipe.getQueueDepth());
+        assertEquals(1, pipe.getDropCount());
+
+        pipe.drain();
+        verify(reader, times(2)).handle(DATA);
+        assertFalse(pipe.drain());
+    }
+
+    @Test public void dispatchThreadDrains() throws InterruptedException {
+        PacketPipeline pipe = new PacketPipeline(8);
+        PacketReader reader = mock(PacketReader.class);
+        pipe.start();
+
+        pipe.wrap(reader).handle(DATA);
+        for (int i = 0; i < 200 && pipe.getDispatchCount() == 0; i++) {
+            Thread.sleep(5);
+        }
+        pipe.stop();
+
+        verify(reader).handle(DATA);
+    }
+}
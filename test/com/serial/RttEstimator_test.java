@@ -0,0 +1,102 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+public class RttEstimator_test {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private RttEstimator rtt;
+
+    @Before public void setup(){
+        rtt = new RttEstimator();
+    }
+
+    @Test public void startsAtFixedTimeout(){
+        assertEquals(Serial.MAX_CONFIRM_WAIT_MS * MS, rtt.getTimeoutNanos());
+        assertEquals(Serial.MAX_FAILURES, rtt.getFailureLimit());
+    }
+
+    @Test public void firstSampleSetsTimeout(){
+        rtt.addSample(100 * MS);
+        assertEquals(100 * MS, rtt.getSmoothedRttNanos());
+        //srtt + 4 * (srtt / 2)
+        assertEquals(300 * MS, rtt.getTimeoutNanos());
+    }
+
+    @Test public void steadyLinkConverges(){
+        for (int i = 0; i < 100; i++) {
+            rtt.addSample(20 * MS);
+        }
+        assertEquals(20 * MS, rtt.getSmoothedRttNanos(), MS);
+        assertEquals(RttEstimator.MIN_RTO_NS, rtt.getTimeoutNanos());
+        //a fast link gets more, shorter tries
+        assertTrue(rtt.getFailureLimit() > Serial.MAX_FAILURES);
+    }
+
+    @Test public void slowLinkWaitsLonger(){
+        for (int i = 0; i < 100; i++) {
+            rtt.addSample((900 + (i % 2) * 200) * MS);
+        }
+        assertTrue(rtt.getTimeoutNanos() > 1000 * MS);
+        assertEquals(Serial.MAX_FAILURES, rtt.getFailureLimit());
+    }
+
+    @Test public void repeatedMissesDoubleOnce(){
+        //as the send manager does on a dead link: a pass backs off once,
+        //then the message is resent with the current timeout
+        long waited = rtt.getTimeoutNanos();
+        int resends = 0;
+        long expected = RttEstimator.INITIAL_RTO_NS;
+        while (resends < rtt.getFailureLimit()) {
+            rtt.backoff();
+            expected *= 2;
+            assertEquals(expected, rtt.getTimeoutNanos());
+            waited += rtt.getTimeoutNanos();
+            resends++;
+        }
+        assertEquals(Serial.MAX_FAILURES, resends);
+        //400 + 800 + 1600 ms
+        assertEquals(2800 * MS, waited);
+    }
+
+    @Test public void backoffIsCapped(){
+        for (int i = 0; i < 20; i++) {
+            rtt.backoff();
+        }
+        assertEquals(RttEstimator.MAX_RTO_NS, rtt.getTimeoutNanos());
+        //a measurement ends the backoff
+        rtt.addSample(100 * MS);
+        assertEquals(300 * MS, rtt.getTimeoutNanos());
+    }
+
+    @Test public void fastLinkRetriesForGiveUpTime(){
+        for (int i = 0; i < 100; i++) {
+            rtt.addSample(20 * MS);
+        }
+        long waited = rtt.getTimeoutNanos();
+        for (int i = 0; i < rtt.getFailureLimit(); i++) {
+            rtt.backoff();
+            waited += rtt.getTimeoutNanos();
+        }
+        assertTrue(waited >= RttEstimator.GIVE_UP_NS);
+        //one try fewer would have given up too soon
+        assertTrue(waited - rtt.getTimeoutNanos() < RttEstimator.GIVE_UP_NS);
+    }
+
+    @Test public void missedConfirmsBackOffUntilMeasured(){
+        rtt.backoff();
+        assertEquals(2 * RttEstimator.INITIAL_RTO_NS, rtt.getTimeoutNanos());
+        rtt.addSample(700 * MS);
+        assertEquals(2100 * MS, rtt.getTimeoutNanos());
+    }
+
+    @Test public void resetForgetsSamples(){
+        rtt.addSample(2000 * MS);
+        rtt.reset();
+        assertEquals(RttEstimator.INITIAL_RTO_NS, rtt.getTimeoutNanos());
+        assertEquals(0, rtt.getSampleCount());
+    }
+}
@@ -0,0 +1,165 @@
+package com.serial;
+
+import com.Context;
+import com.map.WaypointList;
+import com.serial.Messages.Message;
+import com.telemetry.TelemetryManager;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+public class SerialParser_test {
+    private static final long TIMEOUT_MS = 5000;
+    private TelemetryManager telemetry;
+    private Context context;
+    private SerialParser parser;
+
+    @Before public void createParser(){
+        telemetry = new TelemetryManager();
+        context = mock(Context.class);
+        doAnswer(call -> {
+            telemetry.update((int[]) call.getArguments()[0],
+                    (float[]) call.getArguments()[1], (int) call.getArguments()[2]);
+            return null;
+        }).when(context).setTelemetry(any(int[].class), any(float[].class), anyInt());
+        parser = new SerialParser(context, new WaypointList());
+    }
+
+    @Test public void batchIsOneChange(){
+        int before = telemetry.changeIndex();
+        receive(batch(3, 3, 10, 200));
+
+        assertEquals(before + 1, telemetry.changeIndex());
+        assertEquals(10, telemetry.get(3), 0);
+        assertEquals(11, telemetry.get(10), 0);
+        assertEquals(12, telemetry.get(200), 0);
+    }
+
+    @Test public void fullBatchIsApplied(){
+        int[] ids = new int[Serial.MAX_TELEMETRY_BATCH];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        receive(batch(ids.length, ids));
+
+        assertEquals(1, telemetry.changeIndex());
+        assertEquals(10 + ids.length - 1, telemetry.get(ids.length - 1), 0);
+    }
+
+    @Test public void oversizedBatchIsRejected(){
+        int[] ids = new int[Serial.MAX_TELEMETRY_BATCH + 1];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        receive(batch(ids.length, ids));
+
+        assertEquals(0, telemetry.changeIndex());
+        assertEquals(0, telemetry.get(0), 0);
+    }
+
+    @Test public void shortBatchIsRejected(){
+        //claims three pairs but carries two
+        receive(batch(3, 1, 2));
+
+        assertEquals(0, telemetry.changeIndex());
+        assertEquals(0, telemetry.get(1), 0);
+    }
+
+    @Test public void longBatchIsRejected(){
+        //claims two pairs but carries three
+        receive(batch(2, 1, 2, 3));
+
+        assertEquals(0, telemetry.changeIndex());
+        assertEquals(0, telemetry.get(1), 0);
+    }
+
+    @Test public void playbackLeavesRequestsUnanswered() throws Exception {
+        SerialSendManager manager;
+        try {
+            manager = SerialSendManager.getInstance();
+        }
+        catch (AssertionError e) {
+            manager = SerialSendManager.init(mock(Context.class));
+        }
+        manager.stop();
+        WaypointSync sync = mock(WaypointSync.class);
+        when(context.getWaypointSync()).thenReturn(sync);
+
+        File file = File.createTempFile("playback", ".scap");
+        try (SerialCapture cap = new SerialCapture(file)) {
+            byte[][] contents = {
+                    Message.syncMessage(Serial.SYNC_REQUEST).contentView().toArray(),
+                    word(Serial.CONFIRMATION, 0x12, 0x34),
+                    word(Serial.DIGEST_WORD, 0, 0, 0, 1),
+                    word(Serial.COMMAND_WORD, Serial.TARGET_CMD, 5),
+                    //handled last, so everything before it has been too
+                    batch(1, 7)};
+            for (byte[] content : contents) {
+                byte[] frame = frame(content);
+                cap.record(frame, 0, frame.length);
+            }
+        }
+
+        CaptureTransport link = new CaptureTransport(file, 1.0);
+        when(context.transport()).thenReturn(link);
+        when(context.isPlayback()).thenReturn(true);
+        try {
+            parser.updatePort();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (telemetry.get(7) != 10) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+        finally {
+            link.close();
+            parser.getPipeline().stop();
+            file.delete();
+        }
+
+        assertEquals(0, manager.getPendingCount());
+        verify(sync, never()).resync();
+        verify(sync, never()).digestReceived(anyLong());
+    }
+
+    private static byte[] word(int subtype, int... data) {
+        byte[] content = new byte[1 + data.length];
+        content[0] = Serial.buildMessageLabel(Serial.WORD_TYPE, subtype);
+        for (int i = 0; i < data.length; i++) {
+            content[i + 1] = (byte) data[i];
+        }
+        return content;
+    }
+
+    //a batch message with the given count byte, setting each id to 10 plus
+    //its position in the batch
+    private static byte[] batch(int count, int... ids) {
+        ByteBuffer content = ByteBuffer.allocate(2 + ids.length * 5);
+        content.put(Serial.buildMessageLabel(Serial.DATA_TYPE, Serial.TELEMETRY_BATCH));
+        content.put((byte) count);
+        for (int i = 0; i < ids.length; i++) {
+            content.put((byte) ids[i]);
+            content.putFloat(10 + i);
+        }
+        return content.array();
+    }
+
+    private static byte[] frame(byte[] content) {
+        Message msg = new Message(content);
+        byte[] frame = new byte[msg.encodedLength()];
+        msg.encode(frame, 0);
+        return frame;
+    }
+
+    //decode the framed content, then run the dispatch stage
+    private void receive(byte[] content) {
+        parser.createDecoder(new ByteArrayInputStream(frame(content))).update();
+        while (parser.getPipeline().drain()) {
+            //handle every queued packet
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.serial;
+
+import com.Context;
+import com.map.Dot;
+import com.map.WaypointList;
+import com.serial.Messages.Message;
+import com.serial.Messages.Priority;
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SerialSendManager_test {
+    private static final long TIMEOUT_MS = 5000;
+    private static final Dot P = new Dot(40.0, -105.0, (short) 0);
+    private static final Dot Q = new Dot(40.1, -105.0, (short) 0);
+    private static final Dot R = new Dot(40.2, -105.0, (short) 0);
+    private static final Dot X1 = new Dot(41.0, -105.0, (short) 0);
+    private static final Dot X2 = new Dot(42.0, -105.0, (short) 0);
+    private static final Dot Y = new Dot(43.0, -105.0, (short) 0);
+
+    private SimulatedRover rover;
+    private Context context;
+    private SerialSendManager manager;
+
+    @Before public void connect(){
+        rover = new SimulatedRover();
+        rover.setTelemetryRate(0, 0);
+        rover.setSensorHz(0);
+        rover.setHeartbeatHz(0);
+        rover.setConfirmLatencyMs(0);
+
+        context = mock(Context.class);
+        context.connected = true;
+        when(context.transport()).thenReturn(rover);
+        when(context.getLinkMetrics()).thenReturn(new LinkMetrics());
+        manager = new SerialSendManager(context);
+
+        //hand the rover's confirmations back to the manager
+        Decoder decoder = new Decoder(rover.getInputStream(), Serial.HEADER,
+                Serial.FOOTER, new Fletcher16());
+        decoder.addPacketReader(new PacketReader() {
+            public int claim(byte data) {
+                return 255;
+            }
+
+            public void handle(byte[] data) {
+                if (Serial.getSubtype(data[0]) == Serial.CONFIRMATION) {
+                    manager.addConfirmToQueue(((data[1] & 0xff) << 8) | (data[2] & 0xff));
+                }
+            }
+        });
+        rover.setDataListener(decoder::update);
+        rover.start();
+    }
+
+    @After public void disconnect(){
+        manager.stop();
+        rover.close();
+    }
+
+    @Test public void finalValueWins() throws InterruptedException {
+        //queued inside the startup delay, so none are sent yet
+        manager.start();
+        for (int i = 1; i <= 5; i++) {
+            manager.addMessageToQueue(Message.setSetting((byte) 3, i));
+        }
+        awaitConfirmed();
+
+        assertEquals(1, rover.getFramesReceived());
+        assertEquals(5, rover.getSetting(3), 0);
+        assertEquals(4, manager.getCoalescedCount(Message.setSetting((byte) 3, 0).getPriority()));
+    }
+
+    @Test public void alterNotMergedAcrossAdd() throws InterruptedException {
+        manager.start();
+        manager.addMessageToQueue(Message.addWaypoint((byte) 0, P));
+        manager.addMessageToQueue(Message.setWaypoint((byte) 0, X1));
+        //moves X1 to index 1, so the next alter is a different waypoint
+        manager.addMessageToQueue(Message.addWaypoint((byte) 0, Y));
+        manager.addMessageToQueue(Message.setWaypoint((byte) 0, X2));
+        awaitConfirmed();
+
+        assertEquals(4, rover.getFramesReceived());
+        assertMission(X2, X1);
+    }
+
+    @Test public void alterNotMergedAcrossDelete() throws InterruptedException {
+        manager.start();
+        manager.addMessageToQueue(Message.addWaypoint((byte) 0, P));
+        manager.addMessageToQueue(Message.addWaypoint((byte) 1, Q));
+        manager.addMessageToQueue(Message.addWaypoint((byte) 2, R));
+        manager.addMessageToQueue(Message.setWaypoint((byte) 1, X1));
+        //moves X1 to index 0 and R to index 1
+        manager.addMessageToQueue(Message.deleteWaypoint((byte) 0));
+        manager.addMessageToQueue(Message.setWaypoint((byte) 1, X2));
+        awaitConfirmed();
+
+        assertEquals(6, rover.getFramesReceived());
+        assertMission(X1, X2);
+    }
+
+    @Test public void alterMergesBetweenBarriers() throws InterruptedException {
+        manager.start();
+        manager.addMessageToQueue(Message.addWaypoint((byte) 0, P));
+        manager.addMessageToQueue(Message.setWaypoint((byte) 0, X1));
+        manager.addMessageToQueue(Message.setWaypoint((byte) 0, X2));
+        awaitConfirmed();
+
+        assertEquals(2, rover.getFramesReceived());
+        assertMission(X2);
+    }
+
+    @Test public void sentMessageNotReplaced() throws InterruptedException {
+        //hold the first setting in flight, waiting for its confirmation
+        rover.setConfirmLatencyMs(300);
+        manager.start();
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (rover.getFramesReceived() == 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, manager.getPendingCount());
+
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 2));
+        awaitConfirmed();
+
+        assertEquals(2, rover.getFramesReceived());
+        assertEquals(2, rover.getSetting(3), 0);
+        assertEquals(0, manager.getCoalescedCount(Message.setSetting((byte) 3, 0).getPriority()));
+    }
+
+    @Test public void windowOverlapsMessages() throws InterruptedException {
+        //no confirm comes back while the window is filled, nor before the
+        //first retransmit timeout
+        rover.setConfirmLatencyMs(300);
+        when(context.getSendWindowProp()).thenReturn(4);
+        manager.start();
+        for (int i = 0; i < 6; i++) {
+            manager.addMessageToQueue(Message.setSetting((byte) i, i + 1));
+        }
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (rover.getFramesReceived() < 4 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        assertEquals(4, rover.getFramesReceived());
+        assertEquals(6, manager.getPendingCount());
+        awaitConfirmed();
+        assertEquals(6, rover.getFramesReceived());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i + 1, rover.getSetting(i), 0);
+        }
+    }
+
+    @Test public void windowedUploadSurvivesDroppedAdd() throws InterruptedException {
+        WaypointList list = new WaypointList();
+        for (int i = 0; i < 64; i++) {
+            list.add(new Dot(40.0 + i / 1000.0, -105.0, (short) 0), i);
+        }
+        Dot lost = list.getPoints().get(10);
+        when(context.transport()).thenReturn(
+                new LossyLink(rover, Message.addWaypoint((byte) 10, lost)));
+        when(context.getSendWindowProp()).thenReturn(8);
+
+        manager.start();
+        manager.sendWaypointList(list);
+        awaitConfirmed();
+
+        //the lost add was sent again, and nothing overtook it
+        assertEquals(1, ((LossyLink) context.transport()).dropped);
+        assertMission(list.getPoints().toArray(new Dot[0]));
+    }
+
+    @Test public void wakesWhenMessageQueued() throws InterruptedException {
+        manager.setStartupDelay(0);
+        manager.start();
+        //with nothing queued or in flight the sender waits without a deadline
+        Thread.sleep(50);
+
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        awaitConfirmed();
+        assertEquals(1, rover.getSetting(3), 0);
+    }
+
+    @Test public void wakesWhenConfirmed() throws InterruptedException {
+        manager.setStartupDelay(0);
+        manager.start();
+        long start = System.nanoTime();
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        manager.addMessageToQueue(Message.setSetting((byte) 4, 2));
+        awaitConfirmed();
+
+        //the second went out on the first's confirm, not at its deadline
+        assertTrue(System.nanoTime() - start < RttEstimator.INITIAL_RTO_NS / 2);
+        assertEquals(2, rover.getFramesReceived());
+        assertEquals(0, context.getLinkMetrics().getRetransmits());
+    }
+
+    @Test public void resendsAtDeadline() throws InterruptedException {
+        rover.setConfirmLoss(1.0);
+        manager.setStartupDelay(0);
+        manager.start();
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (rover.getFramesReceived() < 2 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, rover.getFramesReceived());
+        assertEquals(1, context.getLinkMetrics().getRetransmits());
+
+        rover.setConfirmLoss(0);
+        awaitConfirmed();
+        assertEquals(0, context.getLinkMetrics().getSendFailures());
+    }
+
+    @Test public void confirmsFoundBySum() throws InterruptedException {
+        Transport link = mock(Transport.class);
+        when(context.transport()).thenReturn(link);
+        when(context.getSendWindowProp()).thenReturn(3);
+        Message[] sent = new Message[3];
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = Message.setSetting((byte) i, i);
+            manager.addMessageToQueue(sent[i]);
+        }
+        manager.setStartupDelay(0);
+        manager.start();
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!sent[2].getHasBeenSent() && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        //a confirm matching nothing in flight is stale
+        manager.addConfirmToQueue(sent[0].getConfirmSum() ^ 0x5555);
+        assertEquals(3, manager.getPendingCount());
+        manager.addConfirmToQueue(sent[1].getConfirmSum());
+        assertEquals(2, manager.getPendingCount());
+        manager.addConfirmToQueue(sent[1].getConfirmSum());
+        assertEquals(2, manager.getPendingCount());
+        manager.addConfirmToQueue(sent[2].getConfirmSum());
+        manager.addConfirmToQueue(sent[0].getConfirmSum());
+        assertEquals(0, manager.getPendingCount());
+    }
+
+    @Test public void restartAfterStopWithMessagesInFlight() throws InterruptedException {
+        rover.setConfirmLoss(1.0);
+        manager.setStartupDelay(0);
+        manager.start();
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        manager.addMessageToQueue(Message.setSetting((byte) 4, 1));
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (rover.getFramesReceived() == 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        manager.stop();
+        assertEquals(0, manager.getPendingCount());
+        long received = rover.getFramesReceived();
+        Thread.sleep(100);
+        assertEquals(received, rover.getFramesReceived());
+
+        rover.setConfirmLoss(0);
+        manager.start();
+        manager.addMessageToQueue(Message.setSetting((byte) 5, 2));
+        awaitConfirmed();
+        assertEquals(2, rover.getSetting(5), 0);
+        assertEquals(0, rover.getSetting(4), 0);
+    }
+
+    @Test public void restartAfterInterrupt() throws InterruptedException {
+        manager.setStartupDelay(0);
+        manager.start();
+        Thread sender = senderThread();
+        sender.interrupt();
+        sender.join(TIMEOUT_MS);
+        assertFalse(sender.isAlive());
+
+        manager.start();
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        awaitConfirmed();
+        assertEquals(1, rover.getSetting(3), 0);
+    }
+
+    @Test public void lanesDrainInPriorityOrder() throws Exception {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        Transport link = mock(Transport.class);
+        doAnswer(call -> {
+            written.write((byte[]) call.getArguments()[0], (int) call.getArguments()[1],
+                    (int) call.getArguments()[2]);
+            return null;
+        }).when(link).write(any(byte[].class), anyInt(), anyInt());
+        when(context.transport()).thenReturn(link);
+        when(context.getSendWindowProp()).thenReturn(8);
+
+        //queued lowest priority first, before the sender starts
+        Message[] queued = {Message.requestAPMVersion(), Message.setSetting((byte) 3, 1),
+                Message.syncMessage(Serial.SYNC_REQUEST), Message.estop()};
+        for (Message msg : queued) {
+            manager.addMessageToQueue(msg);
+        }
+        manager.setStartupDelay(TimeUnit.MILLISECONDS.toNanos(100));
+        manager.start();
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (manager.getSentCount(Priority.BACKGROUND) == 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        List<Byte> labels = new ArrayList<>();
+        Decoder decoder = new Decoder(new ByteArrayInputStream(written.toByteArray()),
+                Serial.HEADER, Serial.FOOTER, new Fletcher16());
+        decoder.addPacketReader(new PacketReader() {
+            public int claim(byte data) {
+                return 255;
+            }
+
+            public void handle(byte[] data) {
+                labels.add(data[0]);
+            }
+        });
+        decoder.update();
+        assertEquals(4, labels.size());
+        for (int i = 0; i < 4; i++) {
+            Message msg = queued[3 - i];
+            assertEquals(msg.getLabel(), (byte) labels.get(i));
+            assertEquals(Priority.values()[i], msg.getPriority());
+            assertEquals(1, manager.getSentCount(msg.getPriority()));
+            assertEquals(1, manager.getMaxQueueDepth(msg.getPriority()));
+            assertTrue(manager.getAverageWaitNanos(msg.getPriority())
+                    >= TimeUnit.MILLISECONDS.toNanos(100));
+            assertTrue(manager.getMaxWaitNanos(msg.getPriority())
+                    >= manager.getAverageWaitNanos(msg.getPriority()));
+        }
+    }
+
+    @Test public void safetyPassesFullWindowAndOrderedMessage() throws InterruptedException {
+        rover.setConfirmLoss(1.0);
+        manager.setStartupDelay(0);
+        manager.start();
+        //ordered, and fills the window until it is confirmed
+        manager.addMessageToQueue(Message.clearWaypoints());
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (rover.getFramesReceived() < 1 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        manager.addMessageToQueue(Message.setSetting((byte) 3, 1));
+        manager.addMessageToQueue(Message.estop());
+        while (rover.getFramesReceived() < 2 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        //the estop beside the clear, the setting still queued behind it
+        assertEquals(2, rover.getFramesReceived());
+        assertEquals(1, manager.getSentCount(Priority.SAFETY));
+        assertEquals(1, manager.getQueueDepth(Priority.BULK));
+        assertEquals(3, manager.getPendingCount());
+    }
+
+    @Test public void estopOvertakesUpload() throws InterruptedException {
+        rover.setConfirmLatencyMs(20);
+        manager.setStartupDelay(0);
+        WaypointList list = new WaypointList();
+        for (int i = 0; i < 64; i++) {
+            list.add(new Dot(40.0 + i / 1000.0, -105.0, (short) 0), i);
+        }
+        manager.start();
+        manager.sendWaypointList(list);
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (rover.getFramesReceived() < 5 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        manager.addMessageToQueue(Message.estop());
+        while (manager.getSentCount(Priority.SAFETY) == 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, manager.getSentCount(Priority.SAFETY));
+        assertTrue(manager.getQueueDepth(Priority.BULK) > 40);
+        //sent on the pass it was queued for, not after a confirm; the
+        //bound leaves room for a slow scheduler
+        assertTrue(manager.getMaxWaitNanos(Priority.SAFETY) < TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test public void safetyWaitsForDifferentMessageWithItsSum() throws InterruptedException {
+        Transport link = mock(Transport.class);
+        when(context.transport()).thenReturn(link);
+        Message estop = Message.estop();
+        Message twin = null;
+        for (int i = 0; twin == null; i++) {
+            Message msg = Message.setSetting((byte) 3, i);
+            if ((msg.getConfirmSum() & 0xFFFF) == (estop.getConfirmSum() & 0xFFFF)) {
+                twin = msg;
+            }
+        }
+        manager.setStartupDelay(0);
+        manager.start();
+        manager.addMessageToQueue(twin);
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!twin.getHasBeenSent() && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+
+        //held rather than taken for a copy of the setting
+        manager.addMessageToQueue(estop);
+        Thread.sleep(50);
+        assertFalse(estop.getHasBeenSent());
+        assertEquals(1, manager.getQueueDepth(Priority.SAFETY));
+
+        manager.addConfirmToQueue(twin.getConfirmSum());
+        while (!estop.getHasBeenSent() && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        assertTrue(estop.getHasBeenSent());
+        assertEquals(1, manager.getPendingCount());
+
+        //a true copy of an estop in flight is covered by it
+        manager.addMessageToQueue(Message.estop());
+        while (manager.getSentCount(Priority.SAFETY) < 2 && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, manager.getPendingCount());
+    }
+
+    private static Thread senderThread() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("serial-send")) {
+                return thread;
+            }
+        }
+        throw new AssertionError("No sender thread");
+    }
+
+    private void awaitConfirmed() throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (manager.getPendingCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, manager.getPendingCount());
+    }
+
+    private void assertMission(Dot... dots) {
+        MissionModel mission = rover.getMission();
+        assertEquals(dots.length, mission.size());
+        for (int i = 0; i < dots.length; i++) {
+            assertTrue("waypoint " + i, mission.matches(i, MissionModel.encode(dots[i])));
+        }
+        assertEquals(mission.digest(), manager.getMissionShadow().digest());
+    }
+
+    //passes writes on to the rover, except for the first copy of one frame
+    private static class LossyLink implements Transport {
+        private final SimulatedRover rover;
+        private byte[] lost;
+        int dropped;
+
+        LossyLink(SimulatedRover rover, Message lost) {
+            this.rover = rover;
+            this.lost = new byte[lost.encodedLength()];
+            lost.encode(this.lost, 0);
+        }
+
+        public String getName() {
+            return rover.getName();
+        }
+
+        public InputStream getInputStream() {
+            return rover.getInputStream();
+        }
+
+        public void setDataListener(Runnable listener) {
+            rover.setDataListener(listener);
+        }
+
+        public synchronized void write(byte[] data, int off, int len) {
+            int at = (lost == null) ? -1 : find(data, off, len);
+            if (at < 0) {
+                rover.write(data, off, len);
+                return;
+            }
+            rover.write(data, off, at - off);
+            rover.write(data, at + lost.length, off + len - at - lost.length);
+            lost = null;
+            dropped++;
+        }
+
+        private int find(byte[] data, int off, int len) {
+            for (int i = off; i + lost.length <= off + len; i++) {
+                int j = 0;
+                while (j < lost.length && data[i + j] == lost[j]) {
+                    j++;
+                }
+                if (j == lost.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public void close() throws IOException {
+            rover.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.serial;
+
+import com.map.Dot;
+import com.serial.Messages.Message;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SimulatedRover_test {
+    private static final long TIMEOUT_MS = 2000;
+
+    private SimulatedRover rover;
+    private Decoder decoder;
+    private final List<byte[]> packets = new ArrayList<>();
+
+    @Before public void connect(){
+        rover = new SimulatedRover();
+        rover.setTelemetryRate(0, 0);
+        rover.setSensorHz(0);
+        rover.setHeartbeatHz(0);
+        rover.setConfirmLatencyMs(0);
+
+        decoder = new Decoder(rover.getInputStream(), Serial.HEADER, Serial.FOOTER,
+                new Fletcher16());
+        decoder.addPacketReader(new PacketReader() {
+            public int claim(byte data) {
+                return 255;
+            }
+
+            public void handle(byte[] data) {
+                packets.add(data);
+            }
+        });
+        rover.start();
+    }
+
+    @After public void disconnect(){
+        rover.close();
+    }
+
+    private void awaitPackets(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MS;
+        while (packets.size() < count && System.currentTimeMillis() < end) {
+            decoder.update();
+            Thread.sleep(1);
+        }
+    }
+
+    @Test public void confirmsCommands() throws IOException, InterruptedException {
+        Message estop = Message.estop();
+        estop.send(rover);
+
+        awaitPackets(1);
+        assertEquals(1, packets.size());
+        byte[] confirm = packets.get(0);
+        assertEquals(Serial.WORD_TYPE, Serial.getMsgType(confirm[0]));
+        assertEquals(Serial.CONFIRMATION, Serial.getSubtype(confirm[0]));
+        assertTrue(estop.isConfirmedBy(((confirm[1] & 0xff) << 8) | (confirm[2] & 0xff)));
+    }
+
+    @Test public void answersSync() throws IOException, InterruptedException {
+        Message.syncMessage(Serial.SYNC_REQUEST).send(rover);
+
+        awaitPackets(1);
+        assertEquals(1, packets.size());
+        assertEquals(Serial.SYNC_WORD, Serial.getSubtype(packets.get(0)[0]));
+        assertEquals(Serial.SYNC_RESPOND, packets.get(0)[1]);
+    }
+
+    @Test public void reportsMissionDigest() throws IOException, InterruptedException {
+        Message.addWaypoint((byte) 0, new Dot(40.0, -105.0, (short) 0)).send(rover);
+        Message.requestDigest().send(rover);
+
+        //the waypoint's confirm may arrive before or after the digest
+        awaitPackets(2);
+        assertEquals(2, packets.size());
+        byte[] digest = packets.get(0);
+        if (Serial.getSubtype(digest[0]) != Serial.DIGEST_WORD) {
+            digest = packets.get(1);
+        }
+        assertEquals(Serial.DIGEST_WORD, Serial.getSubtype(digest[0]));
+        assertEquals(rover.getMission().digest(),
+                PacketView.wrap(digest).getInt(1) & 0xFFFFFFFFL);
+        assertEquals(1, rover.getMission().size());
+    }
+
+    @Test public void losesConfirms() throws IOException, InterruptedException {
+        rover.setConfirmLoss(1.0);
+        Message.estop().send(rover);
+        Message.syncMessage(Serial.SYNC_REQUEST).send(rover);
+
+        //the sync answer shows the command was seen before it
+        awaitPackets(1);
+        assertEquals(1, packets.size());
+        assertEquals(Serial.SYNC_WORD, Serial.getSubtype(packets.get(0)[0]));
+        assertEquals(1, rover.getConfirmsLost());
+    }
+
+    @Test public void streamsTelemetry() throws InterruptedException {
+        rover.setTelemetryRate(4, 100);
+
+        awaitPackets(8);
+        assertTrue(packets.size() >= 8);
+        assertEquals(Serial.DATA_TYPE, Serial.getMsgType(packets.get(0)[0]));
+        assertEquals(0, packets.get(0)[1]);
+        assertEquals(3, packets.get(3)[1]);
+    }
+
+    @Test public void batchesTelemetry() throws InterruptedException {
+        rover.setTelemetryBatching(true);
+        rover.setTelemetryRate(40, 100);
+
+        awaitPackets(2);
+        byte[] first = packets.get(0);
+        byte[] second = packets.get(1);
+        assertEquals(Serial.TELEMETRY_BATCH, Serial.getSubtype(first[0]));
+        assertEquals(Serial.MAX_TELEMETRY_BATCH, first[1]);
+        assertEquals(2 + 5 * Serial.MAX_TELEMETRY_BATCH, first.length);
+        assertEquals(8, second[1]);
+        assertEquals(Serial.MAX_TELEMETRY_BATCH, second[2]);
+    }
+}
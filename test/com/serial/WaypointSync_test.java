@@ -0,0 +1,124 @@
+package com.serial;
+
+import com.map.Dot;
+import com.map.WaypointList;
+import com.serial.Messages.Message;
+import org.junit.*;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class WaypointSync_test {
+    private static final Dot A = new Dot(40.0, -105.0, (short) 3);
+    private static final Dot B = new Dot(41.5, -104.25, (short) 0);
+    private static final Dot C = new Dot(39.75, -106.5, (short) 12);
+
+    private SerialSendManager sendManager;
+    private MissionModel shadow;
+    private WaypointList waypoints;
+    private WaypointSync sync;
+
+    @Before public void setup(){
+        sendManager = mock(SerialSendManager.class);
+        shadow = new MissionModel();
+        when(sendManager.getMissionShadow()).thenReturn(shadow);
+        waypoints = new WaypointList();
+        sync = new WaypointSync(sendManager, waypoints);
+    }
+
+    @After public void teardown(){
+        sync.cancel();
+    }
+
+    private void rover(Dot... dots){
+        for (int i = 0; i < dots.length; i++) {
+            shadow.apply(Message.addWaypoint((byte) i, dots[i]).contentView());
+        }
+    }
+
+    private void dashboard(Dot... dots){
+        for (int i = 0; i < dots.length; i++) {
+            waypoints.add(dots[i], i);
+        }
+    }
+
+    //every message queued after the digest request
+    private List<Message> queuedAfterRequest(){
+        ArgumentCaptor<Message> queued = ArgumentCaptor.forClass(Message.class);
+        verify(sendManager, atLeastOnce()).addMessageToQueue(queued.capture());
+        List<Message> all = queued.getAllValues();
+        assertEquals(Serial.DIGEST_WORD, Serial.getSubtype(all.get(0).getLabel()));
+        return all.subList(1, all.size());
+    }
+
+    private static void assertSameContent(Message expected, Message actual){
+        assertTrue(expected + " != " + actual, Arrays.equals(
+                expected.contentView().toArray(), actual.contentView().toArray()));
+    }
+
+    @Test public void matchSendsDelta(){
+        rover(A, B);
+        dashboard(A, C);
+        sync.resync();
+        sync.digestReceived(shadow.digest());
+
+        List<Message> sent = queuedAfterRequest();
+        assertEquals(2, sent.size());
+        assertSameContent(Message.setWaypoint((byte) 1, C), sent.get(0));
+        assertSameContent(Message.setLooping((byte) 0), sent.get(1));
+        verify(sendManager, never()).sendWaypointList(any(WaypointList.class));
+    }
+
+    @Test public void shrinkDeletesFromTheEnd(){
+        rover(A, B, C);
+        dashboard(A);
+        sync.resync();
+        sync.digestReceived(shadow.digest());
+
+        List<Message> sent = queuedAfterRequest();
+        assertEquals(3, sent.size());
+        assertSameContent(Message.deleteWaypoint((byte) 2), sent.get(0));
+        assertSameContent(Message.deleteWaypoint((byte) 1), sent.get(1));
+        verify(sendManager, never()).sendWaypointList(any(WaypointList.class));
+    }
+
+    @Test public void mismatchResendsAll(){
+        rover(A);
+        dashboard(A);
+        sync.resync();
+        sync.digestReceived(shadow.digest() ^ 1);
+        verify(sendManager).sendWaypointList(waypoints);
+    }
+
+    @Test public void replyWithoutDigestResendsAll(){
+        rover(A);
+        dashboard(A);
+        sync.resync();
+        sync.digestReceived(MissionModel.NO_DIGEST);
+        verify(sendManager).sendWaypointList(waypoints);
+    }
+
+    @Test public void invalidShadowResendsAll(){
+        rover(A);
+        dashboard(A);
+        shadow.invalidate();
+        sync.resync();
+        verify(sendManager).sendWaypointList(waypoints);
+        verify(sendManager, never()).addMessageToQueue(any(Message.class));
+    }
+
+    @Test public void timeoutResendsAll(){
+        rover(A);
+        dashboard(A);
+        sync.resync();
+        verify(sendManager, timeout(3000)).sendWaypointList(waypoints);
+
+        //a late answer is ignored
+        sync.digestReceived(shadow.digest());
+        verify(sendManager, times(1)).sendWaypointList(waypoints);
+        assertTrue(queuedAfterRequest().isEmpty());
+    }
+}
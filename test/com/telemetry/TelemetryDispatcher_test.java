@@ -0,0 +1,55 @@
+package com.telemetry;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TelemetryDispatcher_test {
+    private TelemetryDispatcher dispatcher;
+
+    @Before public void setup(){
+        dispatcher = new TelemetryDispatcher();
+        //keep the frame timer from delivering while the test does
+        dispatcher.setFrameRate(1);
+    }
+
+    @Test public void deliversLatestOncePerFrame(){
+        TelemetryListener tl = mock(TelemetryListener.class);
+        dispatcher.register(4, tl);
+
+        dispatcher.offer(4, 1.0);
+        dispatcher.offer(4, 2.0);
+        dispatcher.offer(4, 3.0);
+        dispatcher.deliver();
+        dispatcher.deliver();
+
+        verify(tl, times(1)).update(anyDouble());
+        verify(tl).update(3.0);
+    }
+
+    @Test public void deliversEveryDirtyId(){
+        TelemetryListener low = mock(TelemetryListener.class);
+        TelemetryListener high = mock(TelemetryListener.class);
+        dispatcher.register(1, low);
+        dispatcher.register(200, high);
+
+        dispatcher.offer(200, 5.0);
+        dispatcher.offer(1, 6.0);
+        dispatcher.offer(2, 7.0);
+        dispatcher.deliver();
+
+        verify(low).update(6.0);
+        verify(high).update(5.0);
+    }
+
+    @Test public void removedListenersStopUpdating(){
+        TelemetryListener tl = mock(TelemetryListener.class);
+        dispatcher.register(4, tl);
+        dispatcher.remove(tl);
+
+        dispatcher.offer(4, 1.0);
+        dispatcher.deliver();
+
+        verify(tl, never()).update(anyDouble());
+    }
+}
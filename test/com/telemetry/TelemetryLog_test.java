@@ -0,0 +1,211 @@
+package com.telemetry;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+
+public class TelemetryLog_test {
+    private static final String[] NAMES = {"a", "b", "c", "d"};
+    private File file;
+
+    @Before public void createFile() throws IOException {
+        file = File.createTempFile("telemetry", ".tlog");
+    }
+
+    @After public void deleteFile(){
+        file.delete();
+        TelemetryLogWriter.indexFileFor(file).delete();
+    }
+
+    //channel 2 set to the second, every 100ms, for ten seconds
+    private void writeSeconds() throws IOException {
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES)) {
+            for (int i = 0; i <= 100; i++) {
+                log.write(i * 100_000L, new int[]{2}, new float[]{i / 10}, 1);
+            }
+        }
+    }
+
+    private void writeRows() throws IOException {
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES, 1234)) {
+            log.write(0, new int[]{0, 1}, new float[]{1.5f, 2f}, 2);
+            log.write(250_000, new int[]{1}, new float[]{3f}, 1);
+            log.write(500_000, new int[]{3}, new float[]{-0.25f}, 1);
+            log.write(750_000, new int[0], new float[0], 0);
+        }
+    }
+
+    @Test public void roundTrip() throws IOException {
+        writeRows();
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        assertEquals(1234, log.getStartMillis());
+        assertEquals(4, log.getChannelCount());
+        assertEquals("c", log.getName(2));
+
+        assertTrue(log.next());
+        assertTrue(log.isKeyframe());
+        assertEquals(2, log.getWidth());
+        assertEquals(1.5f, log.getValue(0), 0);
+
+        assertTrue(log.next());
+        assertFalse(log.isKeyframe());
+        assertEquals(250_000, log.getMicros());
+        assertEquals(1, log.getChangedCount());
+        assertEquals(1, log.getChangedId(0));
+        assertEquals(3f, log.getValue(1), 0);
+        assertEquals(1.5f, log.getValue(0), 0);
+
+        assertTrue(log.next());
+        assertEquals(4, log.getWidth());
+        assertEquals(-0.25f, log.getValue(3), 0);
+
+        assertTrue(log.next());
+        assertEquals(0, log.getChangedCount());
+        assertEquals(750_000, log.getMicros());
+        assertFalse(log.next());
+    }
+
+    @Test public void writesKeyframesPeriodically() throws IOException {
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES)) {
+            for (int i = 0; i < 10; i++) {
+                log.write(i * TelemetryLogWriter.KEYFRAME_INTERVAL_US / 4,
+                        new int[]{2}, new float[]{i}, 1);
+            }
+        }
+
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        int keyframes = 0;
+        while (log.next()) {
+            if (log.isKeyframe()) {
+                keyframes++;
+                assertEquals(3, log.getWidth());
+            }
+        }
+        assertEquals(3, keyframes);
+        assertEquals(9f, log.getValue(2), 0);
+    }
+
+    @Test public void cutShortRecordEndsLog() throws IOException {
+        writeRows();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 6);
+        }
+
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        int rows = 0;
+        while (log.next()) {
+            rows++;
+        }
+        assertEquals(2, rows);
+    }
+
+    @Test public void convertsToCsv() throws IOException {
+        writeRows();
+        StringWriter csv = new StringWriter();
+        int rows = new TelemetryLogConverter().toCsv(new TelemetryLogReader(file), csv);
+
+        String nl = System.lineSeparator();
+        assertEquals(4, rows);
+        assertEquals("0, 1.5, 2, " + nl
+                + "250, 1.5, 3, " + nl
+                + "500, 1.5, 3, 0, -0.25, " + nl
+                + "750, 1.5, 3, 0, -0.25, " + nl, csv.toString());
+    }
+
+    @Test public void seeksToTime() throws IOException {
+        writeSeconds();
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        assertEquals(10_000_000, log.getEndMicros());
+        assertEquals(6, log.getKeyframeCount());
+
+        log.seek(4_550_000);
+        assertEquals(4_500_000, log.getMicros());
+        assertEquals(4f, log.getValue(2), 0);
+        log.seek(1_000_000);
+        assertEquals(1f, log.getValue(2), 0);
+        log.seek(20_000_000);
+        assertEquals(10f, log.getValue(2), 0);
+    }
+
+    @Test public void rangeVisitsChanges() throws IOException {
+        writeSeconds();
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        StringBuilder seen = new StringBuilder();
+        log.range(2, 2_500_000, 5_000_000, (micros, value) ->
+                seen.append(micros / 100_000).append('=').append((int) value).append(' '));
+
+        assertEquals("25=2 26=2 27=2 28=2 29=2 30=3 31=3 32=3 33=3 34=3 35=3 "
+                + "36=3 37=3 38=3 39=3 40=4 41=4 42=4 43=4 44=4 45=4 46=4 47=4 "
+                + "48=4 49=4 50=5 ", seen.toString());
+    }
+
+    @Test public void decimatesToMinMax() throws IOException {
+        writeSeconds();
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        float[] min = new float[4];
+        float[] max = new float[4];
+        log.decimate(2, 0, 8_000_000, 4, min, max);
+
+        //each bucket includes the value held coming into it, and the last
+        //the value set at the end of the range
+        float[] lows = {0, 1, 3, 5};
+        float[] highs = {1, 3, 5, 8};
+        for (int b = 0; b < 4; b++) {
+            assertEquals(lows[b], min[b], 0);
+            assertEquals(highs[b], max[b], 0);
+        }
+    }
+
+    @Test public void readsAcrossSegments() throws IOException {
+        writeSeconds();
+        TelemetryLogReader whole = new TelemetryLogReader(file);
+        //segments far smaller than the log, overlapping by one keyframe
+        TelemetryLogReader split = new TelemetryLogReader(file, 32, 32);
+        TelemetryLogWriter.indexFileFor(file).delete();
+        TelemetryLogReader scanned = new TelemetryLogReader(file, 32, 32);
+
+        assertEquals(whole.getKeyframeCount(), split.getKeyframeCount());
+        assertEquals(whole.getKeyframeCount(), scanned.getKeyframeCount());
+        assertEquals(whole.getEndMicros(), scanned.getEndMicros());
+        int rows = 0;
+        while (whole.next()) {
+            assertTrue(split.next());
+            assertEquals(whole.getMicros(), split.getMicros());
+            assertEquals(whole.isKeyframe(), split.isKeyframe());
+            assertEquals(whole.getValue(2), split.getValue(2), 0);
+            rows++;
+        }
+        assertFalse(split.next());
+        assertEquals(101, rows);
+
+        for (long t = 0; t <= 10_000_000; t += 350_000) {
+            scanned.seek(t);
+            assertEquals(t / 1_000_000, scanned.getValue(2), 0);
+        }
+    }
+
+    @Test public void indexFileMatchesScan() throws IOException {
+        writeSeconds();
+        assertTrue(TelemetryLogWriter.indexFileFor(file).length() > 4);
+        TelemetryLogReader indexed = new TelemetryLogReader(file);
+
+        //a stale index only covering the start is completed by a scan
+        try (RandomAccessFile raf = new RandomAccessFile(
+                TelemetryLogWriter.indexFileFor(file), "rw")) {
+            raf.setLength(4 + 2 * TelemetryLogWriter.INDEX_ENTRY_SIZE);
+        }
+        TelemetryLogReader partial = new TelemetryLogReader(file);
+        TelemetryLogWriter.indexFileFor(file).delete();
+        TelemetryLogReader scanned = new TelemetryLogReader(file);
+
+        assertEquals(indexed.getKeyframeCount(), partial.getKeyframeCount());
+        assertEquals(indexed.getKeyframeCount(), scanned.getKeyframeCount());
+        assertEquals(indexed.getEndMicros(), scanned.getEndMicros());
+        scanned.seek(7_000_000);
+        assertEquals(7f, scanned.getValue(2), 0);
+    }
+}
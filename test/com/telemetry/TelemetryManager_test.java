@@ -1,5 +1,6 @@
 package com.telemetry;
 
+import com.serial.Serial;
 import org.junit.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -23,6 +24,18 @@ public class TelemetryManager_test {
         assertThat(tm.get(10), is(10.0));
     }
 
+    @Test public void batchIsOneChange(){
+        TelemetryManager tm = new TelemetryManager();
+        int before = tm.changeIndex();
+
+        tm.update(new int[]{3, 7, 0}, new float[]{1.5f, 2.5f, 3.5f, 9f}, 3);
+
+        assertThat(tm.get(3), is(1.5));
+        assertThat(tm.get(7), is(2.5));
+        assertThat(tm.get(0), is(3.5));
+        assertThat(tm.changeIndex(), is(before + 1));
+    }
+
     @Test public void registerListener(){
         TelemetryManager tm = new TelemetryManager();
         TelemetryListener tl = mock(TelemetryListener.class);
@@ -64,4 +77,26 @@ public class TelemetryManager_test {
         newIndex = tm.changeIndex();
         assertThat(newIndex, greaterThan(index));
     }
+
+    @Test public void ignoresIdsOutOfRange(){
+        TelemetryManager tm = new TelemetryManager();
+        int index = tm.changeIndex();
+        tm.update(-1, 2.0);
+        tm.update(Serial.MAX_TELEMETRY, 2.0);
+        assertThat(tm.maxIndex(), is(0));
+        assertThat(tm.changeIndex(), is(index));
+    }
+
+    @Test public void timeSourceNeverGoesBack(){
+        TelemetryManager tm = new TelemetryManager();
+        long[] now = {System.nanoTime() + 3_600_000_000_000L};
+        tm.setTimeSource(() -> now[0]);
+        assertEquals(now[0], tm.now());
+
+        //back to the system clock, which is an hour behind
+        tm.setTimeSource(null);
+        long back = tm.now();
+        assertTrue(back >= now[0]);
+        assertTrue(tm.now() >= back);
+    }
 }
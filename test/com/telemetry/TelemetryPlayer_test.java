@@ -0,0 +1,74 @@
+package com.telemetry;
+
+import com.util.PlaybackClock;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TelemetryPlayer_test {
+    private static final String[] NAMES = {"a", "b", "c", "d"};
+    private static final long TIMEOUT_MS = 5000;
+    private File file;
+
+    @Before public void createFile() throws IOException {
+        file = File.createTempFile("telemetry", ".tlog");
+        //channel 2 set to the second, every 100ms, for ten seconds
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES)) {
+            for (int i = 0; i <= 100; i++) {
+                log.write(i * 100_000L, new int[]{2, 3}, new float[]{i / 10, i}, 2);
+            }
+        }
+    }
+
+    @After public void deleteFile(){
+        file.delete();
+        TelemetryLogWriter.indexFileFor(file).delete();
+    }
+
+    private static void awaitFinished(TelemetryPlayer player) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!player.isFinished()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test public void playsToTheEnd() throws Exception {
+        TelemetryManager manager = new TelemetryManager();
+        TelemetryPlayer player = new TelemetryPlayer(new TelemetryLogReader(file),
+                manager, PlaybackClock.AS_FAST_AS_POSSIBLE);
+        player.start();
+        awaitFinished(player);
+        player.stop();
+
+        assertEquals(10, manager.get(2), 0);
+        assertEquals(100, manager.get(3), 0);
+        assertEquals(10_000_000L, player.getLengthMicros());
+        assertEquals(10_000_000L, player.getPositionMicros());
+    }
+
+    @Test public void seekRestoresState() throws Exception {
+        TelemetryManager manager = new TelemetryManager();
+        TelemetryPlayer player = new TelemetryPlayer(new TelemetryLogReader(file),
+                manager, PlaybackClock.AS_FAST_AS_POSSIBLE);
+        player.start();
+        awaitFinished(player);
+
+        player.getClock().setPaused(true);
+        player.seek(4_250_000L);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (manager.get(3) != 42) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        //held while paused
+        Thread.sleep(50);
+        player.stop();
+        assertEquals(42, manager.get(3), 0);
+        assertEquals(4, manager.get(2), 0);
+        assertEquals(4_250_000L, player.getPositionMicros());
+        assertFalse(player.isFinished());
+    }
+}
@@ -0,0 +1,111 @@
+package com.telemetry;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TelemetryRecorder_test {
+    private static final String[] NAMES = {"a", "b", "c", "d"};
+    private File file;
+
+    @Before public void createFile() throws IOException {
+        file = File.createTempFile("telemetry", ".tlog");
+    }
+
+    @After public void deleteFile(){
+        file.delete();
+        TelemetryLogWriter.indexFileFor(file).delete();
+    }
+
+    @Test public void recordsEveryUpdate() throws IOException {
+        TelemetryManager manager = new TelemetryManager();
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES)) {
+            TelemetryRecorder recorder = new TelemetryRecorder(log, System.nanoTime(), NAMES.length);
+            recorder.start();
+            manager.setRecorder(recorder);
+            for (int i = 1; i <= 50; i++) {
+                manager.update(2, i);
+            }
+            //beyond the channels the recorder was made for
+            manager.update(7, 1);
+            recorder.stop();
+            assertEquals(0, recorder.getDroppedCount());
+        }
+
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        float expected = 1;
+        long lastMicros = 0;
+        while (log.next()) {
+            if (!log.isKeyframe()) {
+                assertEquals(1, log.getChangedCount());
+                assertEquals(2, log.getChangedId(0));
+            }
+            assertEquals(expected++, log.getValue(2), 0);
+            assertTrue(log.getMicros() >= lastMicros);
+            lastMicros = log.getMicros();
+        }
+        assertEquals(51f, expected, 0);
+    }
+
+    @Test public void mergesThreads() throws Exception {
+        final int perThread = 1000;
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES)) {
+            TelemetryRecorder recorder = new TelemetryRecorder(log, System.nanoTime(), NAMES.length);
+            recorder.start();
+            Thread[] threads = new Thread[3];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        recorder.record(id, i + 1);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            recorder.stop();
+        }
+
+        //each thread's values count up from 1, so every change is one more
+        TelemetryLogReader log = new TelemetryLogReader(file);
+        float[] last = new float[NAMES.length];
+        while (log.next()) {
+            for (int i = 0; i < log.getChangedCount(); i++) {
+                int id = log.getChangedId(i);
+                if (!log.isKeyframe()) {
+                    assertEquals(last[id] + 1, log.getValue(id), 0);
+                }
+                last[id] = log.getValue(id);
+            }
+        }
+        for (int t = 0; t < 3; t++) {
+            assertEquals(perThread, last[t], 0);
+        }
+    }
+
+    @Test public void releasesRingsOfEndedThreads() throws Exception {
+        try (TelemetryLogWriter log = new TelemetryLogWriter(file, NAMES)) {
+            TelemetryRecorder recorder = new TelemetryRecorder(log, System.nanoTime(), NAMES.length);
+            recorder.start();
+            for (int t = 0; t < 3; t++) {
+                Thread thread = new Thread(() -> recorder.record(1, 1));
+                thread.start();
+                thread.join();
+            }
+            recorder.record(2, 1);
+
+            //only this thread's ring is left once the others are drained
+            for (int i = 0; i < 200 && recorder.getRingCount() > 1; i++) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, recorder.getRingCount());
+
+            recorder.stop();
+            assertEquals(0, recorder.getRingCount());
+        }
+    }
+}
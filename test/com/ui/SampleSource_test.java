@@ -0,0 +1,49 @@
+package com.ui;
+
+import com.telemetry.TelemetryManager;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SampleSource_test {
+    @Test public void historyMadeOnFirstValue(){
+        SampleSource source = new SampleSource("a", () -> 1000);
+        assertFalse(source.hasHistory());
+        float[] min = new float[2];
+        float[] max = new float[2];
+        float[] mean = new float[2];
+        source.read(0, 2000, 2, min, max, mean);
+        assertTrue(Float.isNaN(mean[0]));
+        assertEquals(0.0, source.get(1.0), 0);
+
+        source.update(5);
+        assertTrue(source.hasHistory());
+        assertEquals(5.0, source.get(1.0), 0);
+    }
+
+    @Test public void keepsTimesFromItsClock(){
+        long[] now = {0};
+        SampleSource source = new SampleSource("a", () -> now[0]);
+        source.update(1);
+        now[0] = 10_000_000_000L;
+        source.update(2);
+
+        assertEquals(10_000_000_000L, source.now());
+        float[] min = new float[2];
+        float[] max = new float[2];
+        float[] mean = new float[2];
+        source.read(0, 10_000_000_000L, 2, min, max, mean);
+        assertEquals(1, mean[0], 0);
+        assertEquals(2, mean[1], 0);
+    }
+
+    @Test public void unusedIdsHaveNoHistory(){
+        TelemetryManager tm = new TelemetryManager();
+        tm.update(255, 1.0);
+
+        assertEquals(256, tm.getDataSources().size());
+        for (int i = 0; i < 255; i++) {
+            assertFalse(((SampleSource) tm.getDataSources().get(i)).hasHistory());
+        }
+        assertTrue(((SampleSource) tm.getDataSources().get(255)).hasHistory());
+    }
+}
@@ -0,0 +1,28 @@
+package com.util;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class PlaybackTimeline_test {
+    @Test public void followsPlaybackPosition(){
+        PlaybackClock clock = new PlaybackClock(PlaybackClock.AS_FAST_AS_POSSIBLE);
+        PlaybackTimeline timeline = new PlaybackTimeline(clock);
+        long start = timeline.getAsLong();
+
+        //an hour of recording played at once is an hour on the timeline
+        clock.played(3_600_000_000L);
+        assertEquals(start + 3_600_000_000_000L, timeline.getAsLong());
+    }
+
+    @Test public void seekingBackDoesNotGoBack(){
+        PlaybackClock clock = new PlaybackClock(PlaybackClock.AS_FAST_AS_POSSIBLE);
+        PlaybackTimeline timeline = new PlaybackTimeline(clock);
+        clock.played(5_000_000);
+        long before = timeline.getAsLong();
+
+        clock.seek(1_000_000);
+        assertEquals(before, timeline.getAsLong());
+        clock.played(2_000_000);
+        assertEquals(before + 1_000_000_000L, timeline.getAsLong());
+    }
+}
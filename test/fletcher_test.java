@@ -1,4 +1,5 @@
 import com.serial.*;
+import com.serial.Serial;
 
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -84,4 +85,55 @@ public class fletcher_test {
 
         assertArrayEquals(new byte[]{(byte)0x04, (byte)0x01}, sum);
     }
+
+    @Test
+    public void viewMatchesArray(){
+        byte[] data = "Robot Message".getBytes();
+        int sum = Fletcher16.calc(PacketView.wrap(data));
+
+        assertEquals(Serial.fletcher16(data), sum);
+    }
+
+    @Test
+    public void viewMatchesArrayLong(){
+        byte[] data = new byte[1000];
+        for(int i=0; i<data.length; i++) data[i] = (byte) (i * 31);
+        int sum = Fletcher16.calc(PacketView.wrap(data));
+
+        assertEquals(Serial.fletcher16(data), sum);
+    }
+
+    @Test
+    public void checksumMatchesView(){
+        byte[] data = "Hello World!".getBytes();
+        Fletcher16 check = new Fletcher16();
+
+        assertTrue(check.matches(PacketView.wrap(data),
+                PacketView.wrap(new byte[]{(byte)0x59, (byte)0x41})));
+        assertFalse(check.matches(PacketView.wrap(data),
+                PacketView.wrap(new byte[]{(byte)0x41, (byte)0x59})));
+    }
+
+    @Test
+    public void accumulatorMatchesArray(){
+        IncrementalChecksum.Accumulator acc = new Fletcher16().newAccumulator();
+        byte[] data = new byte[1000];
+        for(int i=0; i<data.length; i++) data[i] = (byte) (i * 37 + 11);
+
+        for(int len=0; len<data.length; len++){
+            acc.reset();
+            for(int i=0; i<len; i++) acc.update(data[i]);
+
+            byte[] sum = Serial.fletcher16bytes(data, len);
+            assertTrue("length " + len, acc.matches(PacketView.wrap(sum)));
+        }
+    }
+
+    @Test
+    public void accumulatorEmpty(){
+        IncrementalChecksum.Accumulator acc = new Fletcher16().newAccumulator();
+
+        assertTrue(acc.matches(PacketView.wrap(new byte[]{(byte)0xff, (byte)0xff})));
+        assertFalse(acc.matches(PacketView.wrap(new byte[]{(byte)0x00, (byte)0x00})));
+    }
 }